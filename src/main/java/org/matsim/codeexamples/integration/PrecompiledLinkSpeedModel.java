@@ -0,0 +1,80 @@
+package org.matsim.codeexamples.integration;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.Vehicles;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Speed model for mixed traffic where the max speed depends on a (small) number of link classes and on the vehicle type.
+ * <p></p>
+ * Link attributes and vehicle types are resolved once, at construction: every link gets a <code>byte</code> link class, every
+ * vehicle type a small integer, and the max speeds go into a dense <code>double[linkClass][vehicleType]</code> table.  The
+ * per-move computation in the qsim, and the per-link computation in the router, are then array reads (plus the time-dependent
+ * link freespeed), instead of attribute lookups and string comparisons.
+ * <p></p>
+ * Links and vehicle types are addressed via {@link Id#index()}.  Vehicle types that were not known at construction fall back to
+ * their maximum velocity.
+ */
+final class PrecompiledLinkSpeedModel{
+
+	interface SpeedRule{
+		/**
+		 * @return the max speed of the given vehicle type on links of the given class, not (yet) considering the link freespeed
+		 */
+		double getMaxSpeed( int linkClass, VehicleType vehicleType );
+	}
+
+	private final byte[] linkClassByLinkIndex;
+	private final int[] typeByTypeIndex;
+	private final double[][] maxSpeeds;
+
+	/**
+	 * @param linkClassifier maps each link to a class in <code>[0, numberOfLinkClasses)</code>.  Only called here.
+	 */
+	PrecompiledLinkSpeedModel( Network network, Vehicles vehicles, int numberOfLinkClasses, ToIntFunction<Link> linkClassifier, SpeedRule speedRule ){
+		if ( numberOfLinkClasses < 1 || numberOfLinkClasses > Byte.MAX_VALUE ) {
+			throw new IllegalArgumentException( "numberOfLinkClasses must be in [1," + Byte.MAX_VALUE + "]" );
+		}
+
+		this.linkClassByLinkIndex = new byte[Id.getNumberOfIds( Link.class )];
+		for( Link link : network.getLinks().values() ){
+			final int linkClass = linkClassifier.applyAsInt( link );
+			if ( linkClass < 0 || linkClass >= numberOfLinkClasses ) {
+				throw new IllegalArgumentException( "link class " + linkClass + " of link " + link.getId() + " out of range" );
+			}
+			this.linkClassByLinkIndex[link.getId().index()] = (byte) linkClass;
+		}
+
+		final VehicleType[] types = vehicles.getVehicleTypes().values().toArray( new VehicleType[0] );
+		this.typeByTypeIndex = new int[Id.getNumberOfIds( VehicleType.class )];
+		Arrays.fill( this.typeByTypeIndex, -1 );
+		this.maxSpeeds = new double[numberOfLinkClasses][types.length];
+		for( int tt = 0 ; tt < types.length ; tt++ ){
+			this.typeByTypeIndex[types[tt].getId().index()] = tt;
+			for( int linkClass = 0 ; linkClass < numberOfLinkClasses ; linkClass++ ){
+				this.maxSpeeds[linkClass][tt] = speedRule.getMaxSpeed( linkClass, types[tt] );
+			}
+		}
+	}
+
+	double getMaxSpeed( Link link, double time, Vehicle vehicle ){
+		final VehicleType type = vehicle.getType();
+		final int typeIndex = type.getId().index();
+		final int tt = typeIndex < typeByTypeIndex.length ? typeByTypeIndex[typeIndex] : -1;
+		final double maxSpeedFromVehicle;
+		if ( tt >= 0 ) {
+			maxSpeedFromVehicle = maxSpeeds[linkClassByLinkIndex[link.getId().index()]][tt];
+		} else {
+			// vehicle type not known at construction:
+			maxSpeedFromVehicle = type.getMaximumVelocity();
+		}
+		return Math.min( link.getFreespeed( time ), maxSpeedFromVehicle );
+	}
+
+}
@@ -120,21 +120,22 @@ public final class RunBicycleExpresswayExample{
 		controler.addOverridingModule( new OTFVisLiveModule() );
 		ConfigUtils.addOrGetModule( config, OTFVisConfigGroup.class ).setDrawNonMovingItems( true ).setAgentSize( 100 );
 
+		// preparation: compute max speed given link speed limit and vehicle maximum speed.  The link attributes and vehicle types are
+		// resolved once here, so that the qsim and the router do not have to look at attributes and mode strings for every link:
+		final PrecompiledLinkSpeedModel speedModel = new PrecompiledLinkSpeedModel( scenario.getNetwork(), scenario.getVehicles(), 2,
+				link -> Boolean.TRUE.equals( link.getAttributes().getAttribute( IS_BICYCLE_EXPRESSWAY ) ) ? 1 : 0,
+				( linkClass, vehicleType ) -> {
+					if ( linkClass == 1 && BICYCLE.equals( vehicleType.getNetworkMode() ) ) {
+						// under normal circumstances, the bicycle vehicle type has a lowish maximum speed (see earlier).  On bicycle expressways, we increase it:
+						return 25. / 3.6;
+					}
+					return vehicleType.getMaximumVelocity();
+				} );
+		// (the min with the link freespeed is taken in the speed model, since the freespeed may be time-dependent.)
+
 		controler.addOverridingModule( new AbstractModule(){
-			// preparation: compute max speed given link speed limit and vehicle maximum speed:
 			private double getMaxSpeedFromVehicleAndLink( Link link, double time, Vehicle vehicle ) {
-
-				double maxSpeedFromLink = link.getFreespeed( time );
-
-				double maxSpeedFromVehicle = vehicle.getType().getMaximumVelocity();
-				final Boolean isBicycleExpressway = (Boolean) link.getAttributes().getAttribute( IS_BICYCLE_EXPRESSWAY );
-				if (isBicycleExpressway!=null && isBicycleExpressway && vehicle.getType().getNetworkMode().equals( BICYCLE )){
-					// under normal circumstances, the bicycle vehicle type has a lowish maximum speed (see earlier).  On bicycle expressways, we increase it:
-					maxSpeedFromVehicle = 25. / 3.6;
-				}
-
-				// as usual, we return the min of all the speeds:
-				return Math.min ( maxSpeedFromLink, maxSpeedFromVehicle );
+				return speedModel.getMaxSpeed( link, time, vehicle );
 			}
 
 			@Override public void install(){
@@ -0,0 +1,134 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.mobsim.bulkAgentSource;
+
+import java.lang.management.ManagementFactory;
+
+import com.google.inject.Inject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.mobsim.framework.AgentSource;
+import org.matsim.core.mobsim.qsim.QSim;
+import org.matsim.core.mobsim.qsim.qnetsimengine.QVehicleImpl;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+
+/**
+ * Inserts {@link BulkAgentSourceConfigGroup#getNumberOfAgents() N} synthetic {@link BulkMobsimAgent}s into the {@link QSim},
+ * without any {@link org.matsim.api.core.v01.population.Population}.  Meant for load-testing the mobsim: insertion time and
+ * allocated memory per agent are logged, so that mobsim scaling can be looked at separately from population I/O.
+ * <p></p>
+ * The agent objects themselves are created here, before the mobsim starts, and not at their departure: the qsim ends as soon as
+ * no living agents are left, and the vehicles need to be parked before the start.  What is generated lazily is the demand: an
+ * agent is a seed and a few numbers, and its route is drawn link by link while it drives.
+ * <p></p>
+ * Compare {@link org.matsim.codeexamples.mobsim.ownMobsimAgent.RunAddAgentSourceExample}, which inserts a single agent.
+ */
+final class BulkAgentSource implements AgentSource {
+	private static final Logger log = LogManager.getLogger( BulkAgentSource.class );
+
+	@Inject private QSim qsim;
+
+	@Override
+	public void insertAgentsIntoMobsim() {
+		final BulkAgentSourceConfigGroup bulkConfig = ConfigUtils.addOrGetModule( qsim.getScenario().getConfig(), BulkAgentSourceConfigGroup.class );
+		final BulkMobsimAgent.LinkTable linkTable = new BulkMobsimAgent.LinkTable( qsim.getScenario().getNetwork() );
+		final VehicleType vehicleType = VehicleUtils.getDefaultVehicleType();
+		final double[] cumulativeWeights = cumulate( bulkConfig.getDepartureWeightsPerHour() );
+		final int numberOfAgents = bulkConfig.getNumberOfAgents();
+		final int linkRange = bulkConfig.getMaxNumberOfLinks() - bulkConfig.getMinNumberOfLinks() + 1;
+
+		final long memoryBefore = allocatedBytes();
+		final long timeBefore = System.nanoTime();
+
+		for ( int batchStart = 0; batchStart < numberOfAgents; batchStart += bulkConfig.getVehicleBatchSize() ) {
+			final int batchEnd = Math.min( numberOfAgents, batchStart + bulkConfig.getVehicleBatchSize() );
+			for ( int ii = batchStart; ii < batchEnd; ii++ ) {
+				// every agent property is derived from (seed, agent index), so the demand does not depend on insertion order:
+				final long agentSeed = BulkMobsimAgent.mix( bulkConfig.getRandomSeed() ^ BulkMobsimAgent.mix( ii ) );
+				final int startLinkIndex = (int) ((BulkMobsimAgent.mix( agentSeed + 1 ) >>> 1) % linkTable.links.length);
+				final double departureTime = drawDepartureTime( cumulativeWeights, uniform( agentSeed + 2 ), uniform( agentSeed + 3 ) );
+				final int numberOfLinks = bulkConfig.getMinNumberOfLinks() + (int) ((BulkMobsimAgent.mix( agentSeed + 4 ) >>> 1) % linkRange);
+
+				final Id<Person> personId = Id.createPersonId( "bulk_" + ii );
+				final Id<Vehicle> vehicleId = Id.createVehicleId( personId );
+				final BulkMobsimAgent agent = new BulkMobsimAgent( personId, vehicleId, linkTable, agentSeed, startLinkIndex, departureTime,
+						numberOfLinks );
+
+				qsim.addParkedVehicle( new QVehicleImpl( VehicleUtils.createVehicle( vehicleId, vehicleType ) ), agent.getCurrentLinkId() );
+				qsim.insertAgentIntoMobsim( agent );
+			}
+			logProgress( batchEnd, timeBefore, memoryBefore );
+		}
+	}
+
+	private static void logProgress( int numberOfAgents, long timeBefore, long memoryBefore ) {
+		final double nanos = System.nanoTime() - timeBefore;
+		final double bytes = allocatedBytes() - memoryBefore;
+		log.info( String.format( "inserted %d agents; %.1f ms total; %.0f ns/agent; %.0f bytes allocated/agent",
+				numberOfAgents, nanos / 1.e6, nanos / numberOfAgents, bytes / numberOfAgents ) );
+	}
+
+	/**
+	 * Bytes allocated so far by this thread.  (Counts allocation rather than what is still reachable, but needs no garbage
+	 * collection to be meaningful.  Falls back to the used heap on JVMs that do not provide it.)
+	 */
+	private static long allocatedBytes() {
+		final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if ( threadMXBean instanceof com.sun.management.ThreadMXBean ) {
+			final com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+			if ( sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled() ) {
+				return sunThreadMXBean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+			}
+		}
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static double[] cumulate( double[] weights ) {
+		final double[] cumulative = new double[weights.length];
+		double sum = 0.;
+		for ( int ii = 0; ii < weights.length; ii++ ) {
+			sum += weights[ii];
+			cumulative[ii] = sum;
+		}
+		for ( int ii = 0; ii < weights.length; ii++ ) {
+			cumulative[ii] /= sum;
+		}
+		return cumulative;
+	}
+
+	private static double drawDepartureTime( double[] cumulativeWeights, double hourDraw, double withinHourDraw ) {
+		int hour = 0;
+		while ( hour < cumulativeWeights.length - 1 && cumulativeWeights[hour] <= hourDraw ) {
+			hour++;
+		}
+		return Math.floor( (hour + withinHourDraw) * 3600. );
+	}
+
+	private static double uniform( long counter ) {
+		return (BulkMobsimAgent.mix( counter ) >>> 11) * 0x1.0p-53;
+	}
+
+}
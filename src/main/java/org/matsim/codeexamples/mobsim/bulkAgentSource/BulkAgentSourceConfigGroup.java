@@ -0,0 +1,161 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.mobsim.bulkAgentSource;
+
+import java.util.Map;
+
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ReflectiveConfigGroup;
+
+/**
+ * The compact demand spec for the {@link BulkAgentSource}.  No {@link org.matsim.api.core.v01.population.Population} is needed;
+ * every agent is derived from its index and the {@link #getRandomSeed() seed}.
+ */
+public final class BulkAgentSourceConfigGroup extends ReflectiveConfigGroup {
+
+	public static final String GROUP_NAME = "bulkAgentSource";
+
+	private static final String NUMBER_OF_AGENTS = "numberOfAgents";
+	private static final String VEHICLE_BATCH_SIZE = "vehicleBatchSize";
+	private static final String DEPARTURE_WEIGHTS_PER_HOUR = "departureWeightsPerHour";
+	private static final String MIN_NUMBER_OF_LINKS = "minNumberOfLinks";
+	private static final String MAX_NUMBER_OF_LINKS = "maxNumberOfLinks";
+	private static final String RANDOM_SEED = "randomSeed";
+
+	private int numberOfAgents = 10000;
+	private int vehicleBatchSize = 10000;
+	private double[] departureWeightsPerHour = { 0., 0., 0., 0., 0., 1., 4., 8., 6., 3., 2., 2., 2., 2., 2., 3., 5., 7., 5., 3., 2., 1., 0., 0. };
+	private int minNumberOfLinks = 5;
+	private int maxNumberOfLinks = 50;
+	private long randomSeed = 4711;
+
+	public BulkAgentSourceConfigGroup() {
+		super( GROUP_NAME );
+	}
+
+	@Override
+	public Map<String, String> getComments() {
+		Map<String, String> map = super.getComments();
+		map.put( NUMBER_OF_AGENTS, "number of synthetic agents inserted into the qsim." );
+		map.put( VEHICLE_BATCH_SIZE, "vehicles are created and parked in batches of this size; memory and time are logged after each batch." );
+		map.put( DEPARTURE_WEIGHTS_PER_HOUR, "comma-separated relative departure weights, one per hour of the day.  Departures are uniform within the hour." );
+		map.put( MIN_NUMBER_OF_LINKS, "minimum number of links an agent drives before it arrives." );
+		map.put( MAX_NUMBER_OF_LINKS, "maximum number of links an agent drives before it arrives." );
+		map.put( RANDOM_SEED, "seed from which all origins, departure times and paths are derived." );
+		return map;
+	}
+
+	@StringGetter( NUMBER_OF_AGENTS )
+	public int getNumberOfAgents() {
+		return numberOfAgents;
+	}
+
+	@StringSetter( NUMBER_OF_AGENTS )
+	public void setNumberOfAgents( int numberOfAgents ) {
+		this.numberOfAgents = numberOfAgents;
+	}
+
+	@StringGetter( VEHICLE_BATCH_SIZE )
+	public int getVehicleBatchSize() {
+		return vehicleBatchSize;
+	}
+
+	@StringSetter( VEHICLE_BATCH_SIZE )
+	public void setVehicleBatchSize( int vehicleBatchSize ) {
+		this.vehicleBatchSize = vehicleBatchSize;
+	}
+
+	public double[] getDepartureWeightsPerHour() {
+		return departureWeightsPerHour;
+	}
+
+	public void setDepartureWeightsPerHour( double[] departureWeightsPerHour ) {
+		this.departureWeightsPerHour = departureWeightsPerHour;
+	}
+
+	@StringGetter( DEPARTURE_WEIGHTS_PER_HOUR )
+	private String getDepartureWeightsPerHourString() {
+		StringBuilder str = new StringBuilder();
+		for ( int ii = 0; ii < departureWeightsPerHour.length; ii++ ) {
+			if ( ii > 0 ) str.append( ',' );
+			str.append( departureWeightsPerHour[ii] );
+		}
+		return str.toString();
+	}
+
+	@StringSetter( DEPARTURE_WEIGHTS_PER_HOUR )
+	private void setDepartureWeightsPerHour( String str ) {
+		final String[] parts = str.split( "," );
+		final double[] weights = new double[parts.length];
+		for ( int ii = 0; ii < parts.length; ii++ ) {
+			weights[ii] = Double.parseDouble( parts[ii].trim() );
+		}
+		this.departureWeightsPerHour = weights;
+	}
+
+	@StringGetter( MIN_NUMBER_OF_LINKS )
+	public int getMinNumberOfLinks() {
+		return minNumberOfLinks;
+	}
+
+	@StringSetter( MIN_NUMBER_OF_LINKS )
+	public void setMinNumberOfLinks( int minNumberOfLinks ) {
+		this.minNumberOfLinks = minNumberOfLinks;
+	}
+
+	@StringGetter( MAX_NUMBER_OF_LINKS )
+	public int getMaxNumberOfLinks() {
+		return maxNumberOfLinks;
+	}
+
+	@StringSetter( MAX_NUMBER_OF_LINKS )
+	public void setMaxNumberOfLinks( int maxNumberOfLinks ) {
+		this.maxNumberOfLinks = maxNumberOfLinks;
+	}
+
+	@StringGetter( RANDOM_SEED )
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+
+	@StringSetter( RANDOM_SEED )
+	public void setRandomSeed( long randomSeed ) {
+		this.randomSeed = randomSeed;
+	}
+
+	@Override
+	protected void checkConsistency( Config config ) {
+		super.checkConsistency( config );
+		if ( numberOfAgents < 0 || vehicleBatchSize <= 0 ) {
+			throw new RuntimeException( "numberOfAgents must be non-negative and vehicleBatchSize positive" );
+		}
+		if ( minNumberOfLinks < 1 || maxNumberOfLinks < minNumberOfLinks ) {
+			throw new RuntimeException( "need 1 <= minNumberOfLinks <= maxNumberOfLinks" );
+		}
+		double sum = 0.;
+		for ( double weight : departureWeightsPerHour ) {
+			if ( weight < 0. ) throw new RuntimeException( "departure weights must not be negative" );
+			sum += weight;
+		}
+		if ( sum <= 0. ) {
+			throw new RuntimeException( "at least one departure weight must be positive" );
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.mobsim.bulkAgentSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.mobsim.framework.MobsimDriverAgent;
+import org.matsim.core.mobsim.qsim.interfaces.MobsimVehicle;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.facilities.Facility;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * A lightweight driver agent without a plan.  It departs once, at a fixed time, and then drives a pseudo-random walk of a fixed
+ * number of links through the network.  All randomness is derived from a per-agent seed, so the agent needs no random number
+ * generator object, and {@link #chooseNextLinkId()} has no side effects (the qsim may call it more than once per link).
+ */
+final class BulkMobsimAgent implements MobsimDriverAgent {
+
+	/**
+	 * The network in array form, shared by all agents: links by index, and for every link the indices of the links leaving its
+	 * to-node.
+	 */
+	static final class LinkTable {
+		final Link[] links;
+		final int[][] outLinks;
+
+		LinkTable( Network network ) {
+			this.links = NetworkUtils.getSortedLinks( network );
+			this.outLinks = new int[links.length][];
+			Map<Id<Link>, Integer> index = new HashMap<>();
+			for ( int ii = 0; ii < links.length; ii++ ) {
+				index.put( links[ii].getId(), ii );
+			}
+			for ( int ii = 0; ii < links.length; ii++ ) {
+				Node toNode = links[ii].getToNode();
+				// (sorted, so that the walk does not depend on hash map iteration order)
+				this.outLinks[ii] = toNode.getOutLinks().keySet().stream().mapToInt( index::get ).sorted().toArray();
+			}
+		}
+	}
+
+	private final Id<Person> id;
+	private final Id<Vehicle> vehicleId;
+	private final LinkTable linkTable;
+	private final long seed;
+	private final double departureTime;
+
+	private int currentLinkIndex;
+	private int linksLeft;
+	private State state = State.ACTIVITY;
+	private MobsimVehicle vehicle;
+
+	BulkMobsimAgent( Id<Person> id, Id<Vehicle> vehicleId, LinkTable linkTable, long seed, int startLinkIndex, double departureTime,
+			 int numberOfLinks ) {
+		this.id = id;
+		this.vehicleId = vehicleId;
+		this.linkTable = linkTable;
+		this.seed = seed;
+		this.currentLinkIndex = startLinkIndex;
+		this.departureTime = departureTime;
+		this.linksLeft = numberOfLinks;
+	}
+
+	/**
+	 * SplitMix64 finaliser.  Good enough to turn (seed, counter) into independent-looking draws.
+	 */
+	static long mix( long z ) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public Id<Link> chooseNextLinkId() {
+		if ( linksLeft <= 0 ) {
+			return null;
+		}
+		final int[] candidates = linkTable.outLinks[currentLinkIndex];
+		if ( candidates.length == 0 ) {
+			return null;
+		}
+		final long draw = mix( seed + 0x9e3779b97f4a7c15L * linksLeft ) >>> 1;
+		return linkTable.links[candidates[(int) (draw % candidates.length)]].getId();
+	}
+
+	@Override
+	public void notifyMoveOverNode( Id<Link> newLinkId ) {
+		final int[] candidates = linkTable.outLinks[currentLinkIndex];
+		for ( int candidate : candidates ) {
+			if ( linkTable.links[candidate].getId() == newLinkId ) {
+				currentLinkIndex = candidate;
+				break;
+			}
+		}
+		linksLeft--;
+	}
+
+	@Override
+	public boolean isWantingToArriveOnCurrentLink() {
+		return linksLeft <= 0 || linkTable.outLinks[currentLinkIndex].length == 0;
+	}
+
+	@Override
+	public void endActivityAndComputeNextState( double now ) {
+		this.state = State.LEG;
+	}
+
+	@Override
+	public void endLegAndComputeNextState( double now ) {
+		// one trip per agent; afterwards stay at the destination until the end of the simulation:
+		this.state = State.ACTIVITY;
+		this.linksLeft = 0;
+	}
+
+	@Override
+	public double getActivityEndTime() {
+		return linksLeft > 0 ? departureTime : Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public void setStateToAbort( double now ) {
+		this.state = State.ABORT;
+	}
+
+	@Override
+	public State getState() {
+		return this.state;
+	}
+
+	@Override
+	public Id<Link> getCurrentLinkId() {
+		return linkTable.links[currentLinkIndex].getId();
+	}
+
+	@Override
+	public Id<Link> getDestinationLinkId() {
+		// the destination is only known on arrival:
+		return getCurrentLinkId();
+	}
+
+	@Override
+	public Id<Person> getId() {
+		return this.id;
+	}
+
+	@Override
+	public Id<Vehicle> getPlannedVehicleId() {
+		return this.vehicleId;
+	}
+
+	@Override
+	public MobsimVehicle getVehicle() {
+		return this.vehicle;
+	}
+
+	@Override
+	public void setVehicle( MobsimVehicle veh ) {
+		this.vehicle = veh;
+	}
+
+	@Override
+	public String getMode() {
+		return TransportMode.car;
+	}
+
+	@Override
+	public OptionalTime getExpectedTravelTime() {
+		return OptionalTime.undefined();
+	}
+
+	@Override
+	public Double getExpectedTravelDistance() {
+		return null;
+	}
+
+	@Override
+	public void notifyArrivalOnLinkByNonNetworkMode( Id<Link> linkId ) {
+		throw new UnsupportedOperationException( "bulk agents only drive" );
+	}
+
+	@Override
+	public Facility getCurrentFacility() {
+		throw new RuntimeException( "not implemented" );
+	}
+
+	@Override
+	public Facility getDestinationFacility() {
+		throw new RuntimeException( "not implemented" );
+	}
+
+}
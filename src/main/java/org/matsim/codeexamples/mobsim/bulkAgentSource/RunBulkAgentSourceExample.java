@@ -0,0 +1,63 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.mobsim.bulkAgentSource;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy.OverwriteFileSetting;
+import org.matsim.core.mobsim.qsim.AbstractQSimModule;
+import org.matsim.core.mobsim.qsim.components.QSimComponentsConfigGroup;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Runs the qsim with synthetic agents from the {@link BulkAgentSource} instead of a population.  Increase
+ * {@link BulkAgentSourceConfigGroup#setNumberOfAgents(int)} (and use a larger network) to stress the mobsim.
+ */
+public class RunBulkAgentSourceExample {
+
+	public static void main( String[] args ) {
+		Config config = ConfigUtils.loadConfig( "scenarios/equil/config.xml", new BulkAgentSourceConfigGroup() );
+		config.plans().setInputFile( null );
+		config.qsim().setEndTime( 30 * 3600 );
+		config.controler().setLastIteration( 0 );
+		config.controler().setOutputDirectory( "output/bulkAgentSourceExample" );
+		config.controler().setOverwriteFileSetting( OverwriteFileSetting.deleteDirectoryIfExists );
+
+		BulkAgentSourceConfigGroup bulkConfig = ConfigUtils.addOrGetModule( config, BulkAgentSourceConfigGroup.class );
+		bulkConfig.setNumberOfAgents( 100000 );
+
+		QSimComponentsConfigGroup componentsConfig = ConfigUtils.addOrGetModule( config, QSimComponentsConfigGroup.class );
+		componentsConfig.getActiveComponents().add( BulkAgentSourceConfigGroup.GROUP_NAME );
+
+		Scenario scenario = ScenarioUtils.loadScenario( config );
+
+		Controler controler = new Controler( scenario );
+		controler.addOverridingQSimModule( new AbstractQSimModule() {
+			@Override
+			protected void configureQSim() {
+				this.addQSimComponentBinding( BulkAgentSourceConfigGroup.GROUP_NAME ).to( BulkAgentSource.class );
+			}
+		} );
+		controler.run();
+	}
+
+}
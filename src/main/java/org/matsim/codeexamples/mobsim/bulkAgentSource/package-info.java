@@ -0,0 +1,10 @@
+/**
+ * Load-testing the qsim without a population:
+ * <ul>
+ * <li>{@link org.matsim.codeexamples.mobsim.bulkAgentSource.RunBulkAgentSourceExample} contains the main method.
+ * <li>{@link org.matsim.codeexamples.mobsim.bulkAgentSource.BulkAgentSource} is the qsim component that inserts the agents
+ * and logs insertion time and allocated memory per agent.
+ * <li>{@link org.matsim.codeexamples.mobsim.bulkAgentSource.BulkAgentSourceConfigGroup} is the compact demand spec.
+ * </ul>
+ */
+package org.matsim.codeexamples.mobsim.bulkAgentSource;
@@ -0,0 +1,233 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.mobsim.mobsimProfiler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.codeexamples.utils.LogHistogram;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeSimStepListener;
+import org.matsim.core.mobsim.qsim.AbstractQSimModule;
+import org.matsim.core.mobsim.qsim.components.QSimComponentsConfigGroup;
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Measures the wall time of every mobsim step, split by qsim component, and writes <code>mobsim_profile.csv</code> into the
+ * iteration directory.
+ * <p></p>
+ * The split works by placing a {@link MobsimProfilerProbe} engine before and after every active qsim component (see
+ * {@link #install(Controler)}).  Since the qsim calls its engines in the order of the active components, the time between two
+ * probes is the time spent in the engine(s) of the component in between, e.g. the activity engine, the netsim engine, the
+ * teleportation engine or the transit engine.  The time from the end of the previous step up to the first probe is reported as
+ * <code>beforeSimStep</code>; it contains the {@link MobsimBeforeSimStepListener}s.
+ * <p></p>
+ * Step times are aggregated into one {@link LogHistogram} per component and simulated hour.  Additionally, the number of events
+ * and the maximum number of vehicles in traffic are counted per simulated hour, from the events.
+ */
+public final class MobsimProfiler implements MobsimBeforeSimStepListener, MobsimAfterSimStepListener, BasicEventHandler,
+		AfterMobsimListener {
+
+	public static final String FILENAME = "mobsim_profile.csv";
+
+	private static final String PROBE_PREFIX = "mobsimProfilerProbe";
+	private static final String BEFORE_SIM_STEP = "beforeSimStep";
+	private static final String AFTER_SIM_STEP = "afterSimStep";
+
+	private final String[] segmentNames;
+	private final long[] marks;
+
+	// filled on the sim thread:
+	private final List<LogHistogram[]> histogramsPerHour = new ArrayList<>();
+	private final List<LogHistogram> totalPerHour = new ArrayList<>();
+	private long lastStepEnd = -1;
+	private int currentHour = 0;
+
+	// filled on the events thread:
+	private long[] eventsPerHour = new long[0];
+	private long[] maxVehiclesInTrafficPerHour = new long[0];
+	private long vehiclesInTraffic = 0;
+
+	private MobsimProfiler( List<String> componentNames ) {
+		this.segmentNames = new String[componentNames.size() + 2];
+		this.segmentNames[0] = BEFORE_SIM_STEP;
+		for ( int ii = 0; ii < componentNames.size(); ii++ ) {
+			this.segmentNames[ii + 1] = componentNames.get( ii );
+		}
+		this.segmentNames[segmentNames.length - 1] = AFTER_SIM_STEP;
+		this.marks = new long[componentNames.size() + 1];
+	}
+
+	/**
+	 * Puts a probe before and after each of the currently active qsim components, and binds everything.  Needs to be called
+	 * after the qsim components are configured.
+	 */
+	public static MobsimProfiler install( Controler controler ) {
+		final QSimComponentsConfigGroup componentsConfig = ConfigUtils.addOrGetModule( controler.getConfig(), QSimComponentsConfigGroup.class );
+		final List<String> components = new ArrayList<>( componentsConfig.getActiveComponents() );
+		final MobsimProfiler profiler = new MobsimProfiler( components );
+
+		final List<String> componentsWithProbes = new ArrayList<>();
+		for ( int ii = 0; ii < components.size(); ii++ ) {
+			componentsWithProbes.add( PROBE_PREFIX + ii );
+			componentsWithProbes.add( components.get( ii ) );
+		}
+		componentsWithProbes.add( PROBE_PREFIX + components.size() );
+		componentsConfig.setActiveComponents( componentsWithProbes );
+
+		controler.addOverridingQSimModule( new AbstractQSimModule() {
+			@Override
+			protected void configureQSim() {
+				for ( int ii = 0; ii <= components.size(); ii++ ) {
+					this.addQSimComponentBinding( PROBE_PREFIX + ii ).toInstance( new MobsimProfilerProbe( profiler, ii ) );
+				}
+			}
+		} );
+		controler.addOverridingModule( new AbstractModule() {
+			@Override
+			public void install() {
+				this.addMobsimListenerBinding().toInstance( profiler );
+				this.addEventHandlerBinding().toInstance( profiler );
+				this.addControlerListenerBinding().toInstance( profiler );
+			}
+		} );
+		return profiler;
+	}
+
+	@Override
+	public void notifyMobsimBeforeSimStep( @SuppressWarnings("rawtypes") MobsimBeforeSimStepEvent event ) {
+		if ( lastStepEnd < 0 ) {
+			lastStepEnd = System.nanoTime();
+		}
+		currentHour = (int) (event.getSimulationTime() / 3600.);
+	}
+
+	/**
+	 * Called by the probes, on the sim thread.
+	 */
+	void mark( int probeIndex ) {
+		marks[probeIndex] = System.nanoTime();
+	}
+
+	@Override
+	public void notifyMobsimAfterSimStep( @SuppressWarnings("rawtypes") MobsimAfterSimStepEvent event ) {
+		final long now = System.nanoTime();
+		final LogHistogram[] histograms = getHistograms( currentHour );
+
+		long previous = lastStepEnd;
+		for ( int ii = 0; ii < marks.length; ii++ ) {
+			histograms[ii].record( marks[ii] - previous );
+			previous = marks[ii];
+		}
+		histograms[marks.length].record( now - previous );
+		totalPerHour.get( currentHour ).record( now - lastStepEnd );
+
+		lastStepEnd = now;
+	}
+
+	private LogHistogram[] getHistograms( int hour ) {
+		while ( histogramsPerHour.size() <= hour ) {
+			final LogHistogram[] histograms = new LogHistogram[segmentNames.length];
+			for ( int ii = 0; ii < histograms.length; ii++ ) {
+				histograms[ii] = new LogHistogram();
+			}
+			histogramsPerHour.add( histograms );
+			totalPerHour.add( new LogHistogram() );
+		}
+		return histogramsPerHour.get( hour );
+	}
+
+	@Override
+	public void handleEvent( Event event ) {
+		final int hour = (int) (event.getTime() / 3600.);
+		if ( hour >= eventsPerHour.length ) {
+			eventsPerHour = Arrays.copyOf( eventsPerHour, hour + 1 );
+			maxVehiclesInTrafficPerHour = Arrays.copyOf( maxVehiclesInTrafficPerHour, hour + 1 );
+		}
+		eventsPerHour[hour]++;
+		if ( event instanceof VehicleEntersTrafficEvent ) {
+			vehiclesInTraffic++;
+		} else if ( event instanceof VehicleLeavesTrafficEvent ) {
+			vehiclesInTraffic--;
+		}
+		maxVehiclesInTrafficPerHour[hour] = Math.max( maxVehiclesInTrafficPerHour[hour], vehiclesInTraffic );
+	}
+
+	@Override
+	public void reset( int iteration ) {
+		eventsPerHour = new long[0];
+		maxVehiclesInTrafficPerHour = new long[0];
+		vehiclesInTraffic = 0;
+	}
+
+	@Override
+	public void notifyAfterMobsim( AfterMobsimEvent event ) {
+		final String filename = event.getServices().getControlerIO().getIterationFilename( event.getIteration(), FILENAME );
+		try ( BufferedWriter writer = IOUtils.getBufferedWriter( filename ) ) {
+			writer.write( "hour;segment;steps;mean_us;p50_us;p99_us;max_us;events;maxVehiclesInTraffic" );
+			writer.newLine();
+			for ( int hour = 0; hour < histogramsPerHour.size(); hour++ ) {
+				final long events = hour < eventsPerHour.length ? eventsPerHour[hour] : 0;
+				final long vehicles = hour < maxVehiclesInTrafficPerHour.length ? maxVehiclesInTrafficPerHour[hour] : 0;
+				final LogHistogram[] histograms = histogramsPerHour.get( hour );
+				for ( int ii = 0; ii < histograms.length; ii++ ) {
+					writeLine( writer, hour, segmentNames[ii], histograms[ii], events, vehicles );
+				}
+				writeLine( writer, hour, "total", totalPerHour.get( hour ), events, vehicles );
+			}
+		} catch ( IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+		histogramsPerHour.clear();
+		totalPerHour.clear();
+		lastStepEnd = -1;
+	}
+
+	private static void writeLine( BufferedWriter writer, int hour, String segment, LogHistogram histogram, long events, long vehicles )
+			throws IOException {
+		if ( histogram.getCount() == 0 ) {
+			return;
+		}
+		writer.write( hour + ";" + segment + ";" + histogram.getCount() + ";"
+				+ String.format( Locale.US, "%.1f", histogram.getMean() / 1000. ) + ";"
+				+ histogram.getValueAtQuantile( 0.5 ) / 1000 + ";"
+				+ histogram.getValueAtQuantile( 0.99 ) / 1000 + ";"
+				+ histogram.getMax() / 1000 + ";"
+				+ events + ";" + vehicles );
+		writer.newLine();
+	}
+
+}
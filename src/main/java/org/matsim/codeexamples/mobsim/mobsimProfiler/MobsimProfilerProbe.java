@@ -0,0 +1,55 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.mobsim.mobsimProfiler;
+
+import org.matsim.core.mobsim.qsim.InternalInterface;
+import org.matsim.core.mobsim.qsim.interfaces.MobsimEngine;
+
+/**
+ * An engine that does nothing except telling the {@link MobsimProfiler} when it was called.  See there.
+ */
+final class MobsimProfilerProbe implements MobsimEngine {
+
+	private final MobsimProfiler profiler;
+	private final int probeIndex;
+
+	MobsimProfilerProbe( MobsimProfiler profiler, int probeIndex ) {
+		this.profiler = profiler;
+		this.probeIndex = probeIndex;
+	}
+
+	@Override
+	public void doSimStep( double time ) {
+		profiler.mark( probeIndex );
+	}
+
+	@Override
+	public void onPrepareSim() {
+	}
+
+	@Override
+	public void afterSim() {
+	}
+
+	@Override
+	public void setInternalInterface( InternalInterface internalInterface ) {
+	}
+
+}
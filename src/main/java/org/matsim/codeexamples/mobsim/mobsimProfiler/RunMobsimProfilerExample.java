@@ -0,0 +1,47 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.mobsim.mobsimProfiler;
+
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy.OverwriteFileSetting;
+
+/**
+ * Runs the equil scenario with the {@link MobsimProfiler} switched on.  Look for <code>mobsim_profile.csv</code> in the
+ * iteration directories.
+ */
+public class RunMobsimProfilerExample {
+
+	public static void main( String[] args ) {
+		Config config = ConfigUtils.loadConfig( "scenarios/equil/config.xml" );
+		config.controler().setOverwriteFileSetting( OverwriteFileSetting.deleteDirectoryIfExists );
+		config.controler().setLastIteration( 1 );
+		config.controler().setOutputDirectory( "output/mobsimProfilerExample/" );
+
+		Controler controler = new Controler( config );
+
+		// (after all other qsim components are configured, since the probes are put between them)
+		MobsimProfiler.install( controler );
+
+		controler.run();
+	}
+
+}
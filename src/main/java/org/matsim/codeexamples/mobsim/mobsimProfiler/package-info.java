@@ -0,0 +1,10 @@
+/**
+ * Per-engine wall time accounting for the qsim.  Compare
+ * {@link org.matsim.codeexamples.mobsim.mobsimListener.RunMobsimListenerExample}, which only counts steps.
+ * <ul>
+ * <li>{@link org.matsim.codeexamples.mobsim.mobsimProfiler.RunMobsimProfilerExample} contains the main method.
+ * <li>{@link org.matsim.codeexamples.mobsim.mobsimProfiler.MobsimProfiler} does the accounting and writes
+ * <code>mobsim_profile.csv</code> each iteration.
+ * </ul>
+ */
+package org.matsim.codeexamples.mobsim.mobsimProfiler;
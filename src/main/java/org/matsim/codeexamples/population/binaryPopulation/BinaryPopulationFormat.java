@@ -0,0 +1,172 @@
+package org.matsim.codeexamples.population.binaryPopulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and encoding helpers shared by the {@link BinaryPopulationWriter} and the {@link BinaryPopulationReader}.
+ * <p>
+ * The file is a stream of records, so that it can be written and read person by person:
+ * <pre>
+ * file       := MAGIC VERSION person* END
+ * person     := PERSON id:string attributes plans:varint plan*
+ * plan       := flags type:symbol? score:double? attributes elements:varint (activity | leg)*
+ * activity   := ACTIVITY flags type:symbol coord? link:symbol? facility:symbol? start:time? end:time? maxDur:time? attributes
+ * leg        := LEG flags mode:symbol routingMode:symbol? departure:time? travelTime:time? route? attributes
+ * attributes := count:varint (key:symbol type:byte value)*
+ * </pre>
+ * A <code>string</code> is its length in UTF-8 bytes as varint, followed by the bytes.  A <code>symbol</code> is a string from a dictionary that is built while writing: the varint 0 is followed by a new string
+ * (which gets the next index), any other value n refers to the string with index n-1.  Activity types, modes, link, facility and
+ * vehicle ids, attribute keys and route types are thus written once per file.
+ * <p>
+ * Times are delta-encoded against the previous time in the same plan, and coordinates against the previous coordinate of the same
+ * person; both are written as zig-zag varints if they are whole multiples of 1 s or 1 mm, and as raw doubles
+ * otherwise, so nothing is lost.
+ * <p>
+ * Attribute values of the types String, Integer, Long, Double, Float, Boolean and Coord are written directly.  Values of any other
+ * type are written as the class name (a symbol) and the string from the {@link org.matsim.utils.objectattributes.ObjectAttributesConverter},
+ * as in the xml files, and are converted back when reading; a type without converter is an error, not a silent change of type.
+ */
+final class BinaryPopulationFormat {
+	private BinaryPopulationFormat() {
+	}
+
+	static final int MAGIC = 0x4d504f50; // "MPOP"
+	static final int VERSION = 2;
+
+	/**
+	 * Files with this extension (optionally followed by a compression extension such as <code>.gz</code>) are binary populations.
+	 */
+	static final String EXTENSION = ".binpop";
+
+	// record tags:
+	static final byte END = 0;
+	static final byte PERSON = 1;
+	static final byte ACTIVITY = 2;
+	static final byte LEG = 3;
+
+	// plan flags:
+	static final int PLAN_SELECTED = 1;
+	static final int PLAN_HAS_SCORE = 2;
+	static final int PLAN_HAS_TYPE = 4;
+
+	// activity flags:
+	static final int ACT_HAS_COORD = 1;
+	static final int ACT_HAS_LINK = 2;
+	static final int ACT_HAS_FACILITY = 4;
+	static final int ACT_HAS_START = 8;
+	static final int ACT_HAS_END = 16;
+	static final int ACT_HAS_MAX_DUR = 32;
+
+	// leg flags:
+	static final int LEG_HAS_ROUTING_MODE = 1;
+	static final int LEG_HAS_DEPARTURE = 2;
+	static final int LEG_HAS_TRAVEL_TIME = 4;
+	static final int LEG_HAS_ROUTE = 8;
+
+	// route kinds:
+	static final byte ROUTE_GENERIC = 0;
+	static final byte ROUTE_NETWORK = 1;
+
+	// route flags:
+	static final int ROUTE_HAS_TRAVEL_TIME = 1;
+	static final int ROUTE_HAS_DISTANCE = 2;
+	static final int ROUTE_HAS_VEHICLE = 4;
+	static final int ROUTE_HAS_DESCRIPTION = 8;
+	static final int ROUTE_HAS_TRAVEL_COST = 16;
+
+	// attribute types:
+	static final byte ATTR_STRING = 0;
+	static final byte ATTR_INTEGER = 1;
+	static final byte ATTR_LONG = 2;
+	static final byte ATTR_DOUBLE = 3;
+	static final byte ATTR_FLOAT = 4;
+	static final byte ATTR_BOOLEAN = 5;
+	static final byte ATTR_COORD = 6;
+	static final byte ATTR_CONVERTED = 7;
+
+	// quantized values are whole multiples of 1/scale:
+	static final double TIME_SCALE = 1.;
+	static final double COORD_SCALE = 1000.;
+
+	static boolean isBinaryPopulationFile(String filename) {
+		String name = filename.toLowerCase();
+		for (String compression : new String[] { ".gz", ".lz4", ".zst", ".bz2" }) {
+			if (name.endsWith(compression)) {
+				name = name.substring(0, name.length() - compression.length());
+				break;
+			}
+		}
+		return name.endsWith(EXTENSION);
+	}
+
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			out.writeByte((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		writeVarLong(out, value & 0xffffffffL);
+	}
+
+	static int readVarInt(DataInput in) throws IOException {
+		return (int) readVarLong(in);
+	}
+
+	static void writeString(DataOutput out, String string) throws IOException {
+		// (not writeUTF, which is limited to 64 kB)
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the difference to the previous value as zig-zag varint (shifted left by one, lowest bit 0) if both values are whole
+	 * multiples of <code>1/scale</code>, else a 1 followed by the raw value.
+	 */
+	static void writeDelta(DataOutput out, double value, double previous, double scale) throws IOException {
+		double units = Math.rint(value * scale);
+		double previousUnits = Math.rint(previous * scale);
+		// (dividing by the scale gives back exactly the double that parsing the decimal string gave)
+		if (Math.abs(units) < 0x1p52 && Math.abs(previousUnits) < 0x1p52 && units / scale == value && previousUnits / scale == previous) {
+			long delta = (long) units - (long) previousUnits;
+			writeVarLong(out, ((delta << 1) ^ (delta >> 63)) << 1);
+		} else {
+			writeVarLong(out, 1);
+			out.writeDouble(value);
+		}
+	}
+
+	static double readDelta(DataInput in, double previous, double scale) throws IOException {
+		long encoded = readVarLong(in);
+		if ((encoded & 1) != 0) {
+			return in.readDouble();
+		}
+		long zigZag = encoded >>> 1;
+		long delta = (zigZag >>> 1) ^ -(zigZag & 1);
+		return ((long) Math.rint(previous * scale) + delta) / scale;
+	}
+}
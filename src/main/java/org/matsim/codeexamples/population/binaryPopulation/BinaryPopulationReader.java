@@ -0,0 +1,357 @@
+package org.matsim.codeexamples.population.binaryPopulation;
+
+import static org.matsim.codeexamples.population.binaryPopulation.BinaryPopulationFormat.*;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteFactories;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Reads a population in the binary format described in {@link BinaryPopulationFormat}.
+ * <p>
+ * Like the {@link org.matsim.core.population.io.StreamingPopulationReader}: without algorithms, the persons are added to the
+ * population of the scenario; with algorithms (see {@link #addAlgorithm}), every person is passed through them and then dropped.
+ * <p>
+ * The symbols of the file are turned into {@link Id}s and interned strings once, so a file with many persons needs only one
+ * <code>Id</code> object per link and one <code>String</code> per activity type or mode.
+ * <p>
+ * Attributes of types other than the primitive ones and Coord are converted back with an {@link ObjectAttributesConverter}; converters
+ * for custom types have to be registered with {@link #putAttributeConverters}, as for the xml reader.
+ */
+public final class BinaryPopulationReader {
+	private static final Logger log = LogManager.getLogger(BinaryPopulationReader.class);
+
+	private final Scenario scenario;
+	private final PopulationFactory factory;
+	private final RouteFactories routeFactories;
+	private final List<PersonAlgorithm> algorithms = new ArrayList<>();
+	private final ObjectAttributesConverter attributesConverter = new ObjectAttributesConverter();
+
+	private DataInputStream in;
+	private final List<String> symbols = new ArrayList<>();
+	// the ids are created lazily, by kind of id, at the index of the symbol:
+	private final List<Id<Link>> linkIds = new ArrayList<>();
+	private final List<Id<ActivityFacility>> facilityIds = new ArrayList<>();
+	private final List<Id<Vehicle>> vehicleIds = new ArrayList<>();
+
+	private double previousX;
+	private double previousY;
+	private double previousTime;
+
+	public BinaryPopulationReader(Scenario scenario) {
+		this.scenario = scenario;
+		this.factory = scenario.getPopulation().getFactory();
+		this.routeFactories = factory.getRouteFactories();
+	}
+
+	public void addAlgorithm(PersonAlgorithm algorithm) {
+		algorithms.add(algorithm);
+	}
+
+	public void putAttributeConverters(Map<Class<?>, AttributeConverter<?>> converters) {
+		attributesConverter.putAttributeConverters(converters);
+	}
+
+	public void readFile(String filename) {
+		readURL(IOUtils.resolveFileOrResource(filename));
+	}
+
+	public void readURL(URL url) {
+		symbols.clear();
+		linkIds.clear();
+		facilityIds.clear();
+		vehicleIds.clear();
+
+		long counter = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(IOUtils.getInputStream(url), 1 << 16))) {
+			this.in = in;
+			if (in.readInt() != MAGIC) {
+				throw new IOException(url + " is not a binary population file");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("unsupported version " + version + " of binary population file " + url);
+			}
+			byte tag;
+			while ((tag = in.readByte()) != END) {
+				if (tag != PERSON) {
+					throw new IOException("unexpected record " + tag + " in " + url);
+				}
+				Person person = readPerson();
+				if (algorithms.isEmpty()) {
+					scenario.getPopulation().addPerson(person);
+				} else {
+					for (PersonAlgorithm algorithm : algorithms) {
+						algorithm.run(person);
+					}
+				}
+				counter++;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.in = null;
+		}
+		log.info("read " + counter + " persons from " + url);
+	}
+
+	private Person readPerson() throws IOException {
+		Person person = factory.createPerson(Id.createPersonId(readString(in)));
+		readAttributes(person.getAttributes());
+
+		previousX = 0.;
+		previousY = 0.;
+		int numberOfPlans = readVarInt(in);
+		for (int i = 0; i < numberOfPlans; i++) {
+			Plan plan = factory.createPlan();
+			int flags = in.readByte();
+			if ((flags & PLAN_HAS_TYPE) != 0) {
+				plan.setType(readSymbol());
+			}
+			if ((flags & PLAN_HAS_SCORE) != 0) {
+				plan.setScore(in.readDouble());
+			}
+			readAttributes(plan.getAttributes());
+			person.addPlan(plan);
+			if ((flags & PLAN_SELECTED) != 0) {
+				person.setSelectedPlan(plan);
+			}
+
+			previousTime = 0.;
+			int numberOfPlanElements = readVarInt(in);
+			for (int j = 0; j < numberOfPlanElements; j++) {
+				byte tag = in.readByte();
+				if (tag == ACTIVITY) {
+					plan.addActivity(readActivity());
+				} else if (tag == LEG) {
+					plan.addLeg(readLeg());
+				} else {
+					throw new IOException("unexpected record " + tag + " in plan of person " + person.getId());
+				}
+			}
+		}
+		return person;
+	}
+
+	private Activity readActivity() throws IOException {
+		int flags = in.readByte();
+		String type = readSymbol();
+		Coord coord = null;
+		if ((flags & ACT_HAS_COORD) != 0) {
+			previousX = readDelta(in, previousX, COORD_SCALE);
+			previousY = readDelta(in, previousY, COORD_SCALE);
+			coord = new Coord(previousX, previousY);
+		}
+		Id<Link> linkId = (flags & ACT_HAS_LINK) != 0 ? readLinkId() : null;
+		Id<ActivityFacility> facilityId = (flags & ACT_HAS_FACILITY) != 0 ? readFacilityId() : null;
+
+		Activity activity;
+		if (coord != null) {
+			activity = factory.createActivityFromCoord(type, coord);
+			activity.setLinkId(linkId);
+			activity.setFacilityId(facilityId);
+		} else if (facilityId != null) {
+			activity = factory.createActivityFromActivityFacilityId(type, facilityId);
+			activity.setLinkId(linkId);
+		} else {
+			activity = factory.createActivityFromLinkId(type, linkId);
+		}
+		if ((flags & ACT_HAS_START) != 0) {
+			activity.setStartTime(readTime());
+		}
+		if ((flags & ACT_HAS_END) != 0) {
+			activity.setEndTime(readTime());
+		}
+		if ((flags & ACT_HAS_MAX_DUR) != 0) {
+			activity.setMaximumDuration(readTime());
+		}
+		readAttributes(activity.getAttributes());
+		return activity;
+	}
+
+	private Leg readLeg() throws IOException {
+		int flags = in.readByte();
+		Leg leg = factory.createLeg(readSymbol());
+		if ((flags & LEG_HAS_ROUTING_MODE) != 0) {
+			leg.setRoutingMode(readSymbol());
+		}
+		if ((flags & LEG_HAS_DEPARTURE) != 0) {
+			leg.setDepartureTime(readTime());
+		}
+		if ((flags & LEG_HAS_TRAVEL_TIME) != 0) {
+			leg.setTravelTime(readTime());
+		}
+		if ((flags & LEG_HAS_ROUTE) != 0) {
+			leg.setRoute(readRoute());
+		}
+		readAttributes(leg.getAttributes());
+		return leg;
+	}
+
+	private Route readRoute() throws IOException {
+		byte kind = in.readByte();
+		int flags = in.readByte();
+		String routeType = readSymbol();
+		Id<Link> startLinkId = readLinkId();
+		Id<Link> endLinkId = readLinkId();
+		double travelTime = (flags & ROUTE_HAS_TRAVEL_TIME) != 0 ? readDelta(in, 0., TIME_SCALE) : Double.NaN;
+		double distance = (flags & ROUTE_HAS_DISTANCE) != 0 ? in.readDouble() : Double.NaN;
+
+		Route route;
+		if (kind == ROUTE_NETWORK) {
+			int numberOfLinks = readVarInt(in);
+			List<Id<Link>> links = new ArrayList<>(numberOfLinks);
+			for (int i = 0; i < numberOfLinks; i++) {
+				links.add(readLinkId());
+			}
+			NetworkRoute networkRoute = routeFactories.createRoute(NetworkRoute.class, startLinkId, endLinkId);
+			networkRoute.setLinkIds(startLinkId, links, endLinkId);
+			if ((flags & ROUTE_HAS_VEHICLE) != 0) {
+				networkRoute.setVehicleId(readVehicleId());
+			}
+			if ((flags & ROUTE_HAS_TRAVEL_COST) != 0) {
+				networkRoute.setTravelCost(in.readDouble());
+			}
+			route = networkRoute;
+		} else {
+			route = routeFactories.createRoute(routeFactories.getRouteClassForType(routeType), startLinkId, endLinkId);
+			if ((flags & ROUTE_HAS_DESCRIPTION) != 0) {
+				// (first, since some routes reset their other fields when they parse the description)
+				route.setRouteDescription(readString(in));
+			}
+		}
+		if (!Double.isNaN(travelTime)) {
+			route.setTravelTime(travelTime);
+		}
+		if (!Double.isNaN(distance)) {
+			route.setDistance(distance);
+		}
+		return route;
+	}
+
+	private double readTime() throws IOException {
+		previousTime = readDelta(in, previousTime, TIME_SCALE);
+		return previousTime;
+	}
+
+	private void readAttributes(Attributes attributes) throws IOException {
+		int size = readVarInt(in);
+		for (int i = 0; i < size; i++) {
+			String key = readSymbol();
+			byte type = in.readByte();
+			switch (type) {
+			case ATTR_STRING:
+				attributes.putAttribute(key, readSymbol());
+				break;
+			case ATTR_INTEGER:
+				attributes.putAttribute(key, in.readInt());
+				break;
+			case ATTR_LONG:
+				attributes.putAttribute(key, in.readLong());
+				break;
+			case ATTR_DOUBLE:
+				attributes.putAttribute(key, in.readDouble());
+				break;
+			case ATTR_FLOAT:
+				attributes.putAttribute(key, in.readFloat());
+				break;
+			case ATTR_BOOLEAN:
+				attributes.putAttribute(key, in.readBoolean());
+				break;
+			case ATTR_COORD:
+				attributes.putAttribute(key, new Coord(in.readDouble(), in.readDouble()));
+				break;
+			case ATTR_CONVERTED:
+				String className = readSymbol();
+				Object value = attributesConverter.convert(className, readString(in));
+				if (value == null) {
+					throw new IOException("no attribute converter for attribute " + key + " of type " + className);
+				}
+				attributes.putAttribute(key, value);
+				break;
+			default:
+				throw new IOException("unknown attribute type " + type);
+			}
+		}
+	}
+
+	/**
+	 * @return the index of the symbol
+	 */
+	private int readSymbolIndex() throws IOException {
+		int reference = readVarInt(in);
+		if (reference == 0) {
+			symbols.add(readString(in).intern());
+			return symbols.size() - 1;
+		}
+		return reference - 1;
+	}
+
+	private String readSymbol() throws IOException {
+		return symbols.get(readSymbolIndex());
+	}
+
+	private Id<Link> readLinkId() throws IOException {
+		int index = readSymbolIndex();
+		Id<Link> id = getCached(linkIds, index);
+		if (id == null) {
+			id = Id.createLinkId(symbols.get(index));
+			linkIds.set(index, id);
+		}
+		return id;
+	}
+
+	private Id<ActivityFacility> readFacilityId() throws IOException {
+		int index = readSymbolIndex();
+		Id<ActivityFacility> id = getCached(facilityIds, index);
+		if (id == null) {
+			id = Id.create(symbols.get(index), ActivityFacility.class);
+			facilityIds.set(index, id);
+		}
+		return id;
+	}
+
+	private Id<Vehicle> readVehicleId() throws IOException {
+		int index = readSymbolIndex();
+		Id<Vehicle> id = getCached(vehicleIds, index);
+		if (id == null) {
+			id = Id.createVehicleId(symbols.get(index));
+			vehicleIds.set(index, id);
+		}
+		return id;
+	}
+
+	private <T> T getCached(List<T> cache, int index) {
+		while (cache.size() <= index) {
+			cache.add(null);
+		}
+		return cache.get(index);
+	}
+}
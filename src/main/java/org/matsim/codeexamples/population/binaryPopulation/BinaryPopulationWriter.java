@@ -0,0 +1,294 @@
+package org.matsim.codeexamples.population.binaryPopulation;
+
+import static org.matsim.codeexamples.population.binaryPopulation.BinaryPopulationFormat.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+/**
+ * Writes a population in the binary format described in {@link BinaryPopulationFormat}, either at once with {@link #write}, or
+ * person by person like the {@link org.matsim.core.population.io.StreamingPopulationWriter}: {@link #startStreaming}, then
+ * {@link #run(Person)} for every person (e.g. as algorithm of a streaming reader), then {@link #closeStreaming()}.
+ * <p>
+ * Person, plan, activity and leg attributes of the types String, Integer, Long, Double, Float, Boolean and Coord are written with
+ * their type.  Attributes of other types are written with their class name, through the same {@link ObjectAttributesConverter} as
+ * in the xml files; additional converters can be registered with {@link #putAttributeConverters}, and an attribute without converter
+ * leads to an exception.
+ */
+public final class BinaryPopulationWriter implements PersonAlgorithm {
+	private static final Logger log = LogManager.getLogger(BinaryPopulationWriter.class);
+
+	private DataOutputStream out;
+	private final Map<String, Integer> symbols = new HashMap<>();
+	private final ObjectAttributesConverter attributesConverter = new ObjectAttributesConverter();
+
+	// for the delta encoding:
+	private double previousX;
+	private double previousY;
+	private double previousTime;
+
+	public void putAttributeConverters(Map<Class<?>, AttributeConverter<?>> converters) {
+		attributesConverter.putAttributeConverters(converters);
+	}
+
+	public void write(Population population, String filename) {
+		startStreaming(filename);
+		try {
+			for (Person person : population.getPersons().values()) {
+				run(person);
+			}
+		} finally {
+			closeStreaming();
+		}
+	}
+
+	/**
+	 * @param filename compressed according to the extension after {@link BinaryPopulationFormat#EXTENSION}, e.g. ".binpop.gz"
+	 */
+	public void startStreaming(String filename) {
+		if (!isBinaryPopulationFile(filename)) {
+			log.warn("file name " + filename + " does not end with " + EXTENSION + "; the population readers will not recognize it.");
+		}
+		out = new DataOutputStream(new BufferedOutputStream(IOUtils.getOutputStream(IOUtils.getFileUrl(filename), false), 1 << 16));
+		symbols.clear();
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void run(Person person) {
+		try {
+			writePerson(person);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void closeStreaming() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.writeByte(END);
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			out = null;
+		}
+	}
+
+	private void writePerson(Person person) throws IOException {
+		out.writeByte(PERSON);
+		writeString(out, person.getId().toString());
+		writeAttributes(person.getAttributes());
+
+		previousX = 0.;
+		previousY = 0.;
+		List<? extends Plan> plans = person.getPlans();
+		writeVarInt(out, plans.size());
+		for (Plan plan : plans) {
+			writePlan(plan, plan == person.getSelectedPlan());
+		}
+	}
+
+	private void writePlan(Plan plan, boolean selected) throws IOException {
+		int flags = (selected ? PLAN_SELECTED : 0) | (plan.getScore() != null ? PLAN_HAS_SCORE : 0)
+				| (plan.getType() != null ? PLAN_HAS_TYPE : 0);
+		out.writeByte(flags);
+		if (plan.getType() != null) {
+			writeSymbol(plan.getType());
+		}
+		if (plan.getScore() != null) {
+			out.writeDouble(plan.getScore());
+		}
+		writeAttributes(plan.getAttributes());
+
+		previousTime = 0.;
+		List<PlanElement> planElements = plan.getPlanElements();
+		writeVarInt(out, planElements.size());
+		for (PlanElement planElement : planElements) {
+			if (planElement instanceof Activity) {
+				writeActivity((Activity) planElement);
+			} else {
+				writeLeg((Leg) planElement);
+			}
+		}
+	}
+
+	private void writeActivity(Activity activity) throws IOException {
+		Coord coord = activity.getCoord();
+		int flags = (coord != null ? ACT_HAS_COORD : 0) | (activity.getLinkId() != null ? ACT_HAS_LINK : 0)
+				| (activity.getFacilityId() != null ? ACT_HAS_FACILITY : 0)
+				| (activity.getStartTime().isDefined() ? ACT_HAS_START : 0) | (activity.getEndTime().isDefined() ? ACT_HAS_END : 0)
+				| (activity.getMaximumDuration().isDefined() ? ACT_HAS_MAX_DUR : 0);
+		out.writeByte(ACTIVITY);
+		out.writeByte(flags);
+		writeSymbol(activity.getType());
+		if (coord != null) {
+			writeDelta(out, coord.getX(), previousX, COORD_SCALE);
+			writeDelta(out, coord.getY(), previousY, COORD_SCALE);
+			previousX = coord.getX();
+			previousY = coord.getY();
+		}
+		if (activity.getLinkId() != null) {
+			writeSymbol(activity.getLinkId());
+		}
+		if (activity.getFacilityId() != null) {
+			writeSymbol(activity.getFacilityId());
+		}
+		writeTime(activity.getStartTime());
+		writeTime(activity.getEndTime());
+		writeTime(activity.getMaximumDuration());
+		writeAttributes(activity.getAttributes());
+	}
+
+	private void writeLeg(Leg leg) throws IOException {
+		Route route = leg.getRoute();
+		int flags = (leg.getRoutingMode() != null ? LEG_HAS_ROUTING_MODE : 0)
+				| (leg.getDepartureTime().isDefined() ? LEG_HAS_DEPARTURE : 0)
+				| (leg.getTravelTime().isDefined() ? LEG_HAS_TRAVEL_TIME : 0) | (route != null ? LEG_HAS_ROUTE : 0);
+		out.writeByte(LEG);
+		out.writeByte(flags);
+		writeSymbol(leg.getMode());
+		if (leg.getRoutingMode() != null) {
+			writeSymbol(leg.getRoutingMode());
+		}
+		writeTime(leg.getDepartureTime());
+		writeTime(leg.getTravelTime());
+		if (route != null) {
+			writeRoute(route);
+		}
+		writeAttributes(leg.getAttributes());
+	}
+
+	private void writeRoute(Route route) throws IOException {
+		boolean isNetworkRoute = route instanceof NetworkRoute;
+		Id<?> vehicleId = isNetworkRoute ? ((NetworkRoute) route).getVehicleId() : null;
+		double travelCost = isNetworkRoute ? ((NetworkRoute) route).getTravelCost() : Double.NaN;
+		String description = isNetworkRoute ? null : route.getRouteDescription();
+		int flags = (route.getTravelTime().isDefined() ? ROUTE_HAS_TRAVEL_TIME : 0)
+				| (!Double.isNaN(route.getDistance()) ? ROUTE_HAS_DISTANCE : 0) | (vehicleId != null ? ROUTE_HAS_VEHICLE : 0)
+				| (description != null ? ROUTE_HAS_DESCRIPTION : 0) | (!Double.isNaN(travelCost) ? ROUTE_HAS_TRAVEL_COST : 0);
+
+		out.writeByte(isNetworkRoute ? ROUTE_NETWORK : ROUTE_GENERIC);
+		out.writeByte(flags);
+		writeSymbol(route.getRouteType());
+		writeSymbol(route.getStartLinkId());
+		writeSymbol(route.getEndLinkId());
+		if (route.getTravelTime().isDefined()) {
+			writeDelta(out, route.getTravelTime().seconds(), 0., TIME_SCALE);
+		}
+		if (!Double.isNaN(route.getDistance())) {
+			out.writeDouble(route.getDistance());
+		}
+		if (isNetworkRoute) {
+			// the links in between are the bulk of a routed population, and come from a small dictionary:
+			List<Id<Link>> linkIds = ((NetworkRoute) route).getLinkIds();
+			writeVarInt(out, linkIds.size());
+			for (Id<?> linkId : linkIds) {
+				writeSymbol(linkId);
+			}
+			if (vehicleId != null) {
+				writeSymbol(vehicleId);
+			}
+			if (!Double.isNaN(travelCost)) {
+				out.writeDouble(travelCost);
+			}
+		} else if (description != null) {
+			writeString(out, description);
+		}
+	}
+
+	private void writeTime(OptionalTime time) throws IOException {
+		if (time.isDefined()) {
+			writeDelta(out, time.seconds(), previousTime, TIME_SCALE);
+			previousTime = time.seconds();
+		}
+	}
+
+	private void writeAttributes(Attributes attributes) throws IOException {
+		Map<String, Object> map = attributes.getAsMap();
+		writeVarInt(out, map.size());
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			writeSymbol(entry.getKey());
+			Object value = entry.getValue();
+			if (value instanceof Integer) {
+				out.writeByte(ATTR_INTEGER);
+				out.writeInt((Integer) value);
+			} else if (value instanceof Long) {
+				out.writeByte(ATTR_LONG);
+				out.writeLong((Long) value);
+			} else if (value instanceof Double) {
+				out.writeByte(ATTR_DOUBLE);
+				out.writeDouble((Double) value);
+			} else if (value instanceof Float) {
+				out.writeByte(ATTR_FLOAT);
+				out.writeFloat((Float) value);
+			} else if (value instanceof Boolean) {
+				out.writeByte(ATTR_BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			} else if (value instanceof Coord) {
+				out.writeByte(ATTR_COORD);
+				out.writeDouble(((Coord) value).getX());
+				out.writeDouble(((Coord) value).getY());
+			} else if (value instanceof String) {
+				out.writeByte(ATTR_STRING);
+				writeSymbol((String) value);
+			} else {
+				String converted = attributesConverter.convertToString(value);
+				if (converted == null) {
+					throw new IllegalArgumentException("no attribute converter for attribute " + entry.getKey() + " of type "
+							+ value.getClass().getName() + "; register one with putAttributeConverters");
+				}
+				out.writeByte(ATTR_CONVERTED);
+				writeSymbol(value.getClass().getName());
+				writeString(out, converted);
+			}
+		}
+	}
+
+	private void writeSymbol(Id<?> id) throws IOException {
+		writeSymbol(id.toString());
+	}
+
+	private void writeSymbol(String symbol) throws IOException {
+		Integer index = symbols.get(symbol);
+		if (index != null) {
+			writeVarInt(out, index + 1);
+		} else {
+			symbols.put(symbol, symbols.size());
+			writeVarInt(out, 0);
+			writeString(out, symbol);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.matsim.codeexamples.population.binaryPopulation;
+
+import java.net.URL;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationWriter;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.population.io.StreamingPopulationReader;
+import org.matsim.core.population.io.StreamingPopulationWriter;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Reads and writes populations in the XML or the binary format, chosen by the file extension (see
+ * {@link BinaryPopulationFormat#EXTENSION}).  The core readers cannot be taught a new format from here, so these methods are the
+ * entry points: {@link #loadScenario(Config)} in place of {@link ScenarioUtils#loadScenario(Config)}, {@link #readPopulation} in
+ * place of the {@link PopulationReader}, {@link #streamPopulation} in place of the {@link StreamingPopulationReader}.
+ */
+public final class PopulationFiles {
+	private PopulationFiles() {
+	}
+
+	public static boolean isBinary(String filename) {
+		return BinaryPopulationFormat.isBinaryPopulationFile(filename);
+	}
+
+	/**
+	 * Same as {@link ScenarioUtils#loadScenario(Config)}, but a plans file in the binary format is read by the
+	 * {@link BinaryPopulationReader}.
+	 */
+	public static Scenario loadScenario(Config config) {
+		String plansFile = config.plans().getInputFile();
+		if (plansFile == null || !isBinary(plansFile)) {
+			return ScenarioUtils.loadScenario(config);
+		}
+		config.plans().setInputFile(null);
+		try {
+			Scenario scenario = ScenarioUtils.loadScenario(config);
+			URL url = IOUtils.extendUrl(config.getContext(), plansFile);
+			new BinaryPopulationReader(scenario).readURL(url);
+			return scenario;
+		} finally {
+			config.plans().setInputFile(plansFile);
+		}
+	}
+
+	public static void readPopulation(Scenario scenario, String filename) {
+		if (isBinary(filename)) {
+			new BinaryPopulationReader(scenario).readFile(filename);
+		} else {
+			new PopulationReader(scenario).readFile(filename);
+		}
+	}
+
+	/**
+	 * Passes every person of the file through the algorithms, without keeping it in the population.
+	 */
+	public static void streamPopulation(Scenario scenario, String filename, PersonAlgorithm... algorithms) {
+		if (isBinary(filename)) {
+			BinaryPopulationReader reader = new BinaryPopulationReader(scenario);
+			for (PersonAlgorithm algorithm : algorithms) {
+				reader.addAlgorithm(algorithm);
+			}
+			reader.readFile(filename);
+		} else {
+			StreamingPopulationReader reader = new StreamingPopulationReader(scenario);
+			for (PersonAlgorithm algorithm : algorithms) {
+				reader.addAlgorithm(algorithm);
+			}
+			reader.readFile(filename);
+		}
+	}
+
+	public static void writePopulation(Population population, String filename) {
+		if (isBinary(filename)) {
+			new BinaryPopulationWriter().write(population, filename);
+		} else {
+			new PopulationWriter(population).write(filename);
+		}
+	}
+
+	/**
+	 * Converts between the formats, person by person, so the population need not fit into memory.
+	 */
+	public static void convert(String inputFile, String outputFile) {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		if (isBinary(outputFile)) {
+			BinaryPopulationWriter writer = new BinaryPopulationWriter();
+			writer.startStreaming(outputFile);
+			try {
+				streamPopulation(scenario, inputFile, writer);
+			} finally {
+				writer.closeStreaming();
+			}
+		} else {
+			StreamingPopulationWriter writer = new StreamingPopulationWriter();
+			writer.startStreaming(outputFile);
+			try {
+				streamPopulation(scenario, inputFile, writer);
+			} finally {
+				writer.closeStreaming();
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package org.matsim.codeexamples.population.binaryPopulation;
+
+import java.io.File;
+
+/**
+ * Converts a population file between XML and the binary format; the direction follows from the file extensions, e.g.
+ * <pre>
+ * RunBinaryPopulationConverter plans.xml.gz plans.binpop.gz
+ * </pre>
+ * The binary file can then be given as plans file in the config, and the scenario be loaded with
+ * {@link PopulationFiles#loadScenario(org.matsim.core.config.Config)}.
+ */
+public class RunBinaryPopulationConverter {
+
+	public static void main(String[] args) {
+		String inputFile = "scenarios/equil/plans2000.xml.gz";
+		String outputFile = "output/plans2000" + BinaryPopulationFormat.EXTENSION + ".gz";
+		if (args != null && args.length == 2) {
+			inputFile = args[0];
+			outputFile = args[1];
+		} else if (args != null && args.length != 0) {
+			throw new IllegalArgumentException("usage: RunBinaryPopulationConverter <input file> <output file>");
+		}
+
+		new File(outputFile).getAbsoluteFile().getParentFile().mkdirs();
+		long start = System.nanoTime();
+		PopulationFiles.convert(inputFile, outputFile);
+		System.out.println("converted " + inputFile + " to " + outputFile + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
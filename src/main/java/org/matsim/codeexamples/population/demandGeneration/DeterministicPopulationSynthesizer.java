@@ -0,0 +1,88 @@
+package org.matsim.codeexamples.population.demandGeneration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.codeexamples.utils.CounterBasedRandom;
+
+/**
+ * Parallel population synthesis with a result that does not depend on the number of threads.
+ * <p>
+ * The work is split into independent units, e.g. one per OD pair or per census block.  Every unit gets its own {@link Random},
+ * seeded from the global seed and the id of the unit only, so a unit generates the same persons no matter which thread runs it and
+ * what ran before.  The units are generated on a {@link ForkJoinPool}, and the persons are handed to the sink unit by unit, in the
+ * order of the units, on the calling thread.  The sink can thus be a {@link org.matsim.core.population.io.StreamingPopulationWriter}
+ * or <code>population::addPerson</code>, and the output is identical for any number of threads.
+ * <p>
+ * The generator is called concurrently for different units.  It must not use shared mutable state (in particular no shared
+ * {@link Random}); read-only data such as spatial indexes is fine, as is the (thread-safe) population factory.
+ */
+public final class DeterministicPopulationSynthesizer<U> {
+	private static final Logger log = LogManager.getLogger(DeterministicPopulationSynthesizer.class);
+
+	public interface UnitGenerator<U> {
+		/**
+		 * Generates the persons of one unit, and passes them to <code>persons</code>.
+		 */
+		void generate(U unit, Random random, Consumer<Person> persons);
+	}
+
+	private final long globalSeed;
+	private final int numberOfThreads;
+	private final Function<U, String> unitId;
+	private final UnitGenerator<U> generator;
+
+	/**
+	 * @param unitId has to be unique among the units, and the same in every run, e.g. <code>homeRegion + "_" + workRegion</code>
+	 */
+	public DeterministicPopulationSynthesizer(long globalSeed, int numberOfThreads, Function<U, String> unitId,
+			UnitGenerator<U> generator) {
+		this.globalSeed = globalSeed;
+		this.numberOfThreads = numberOfThreads;
+		this.unitId = unitId;
+		this.generator = generator;
+	}
+
+	/**
+	 * Generates the persons of all units and hands them to the sink, in the order of the units.
+	 */
+	public void run(Iterable<U> units, Consumer<Person> sink) {
+		long[] counter = new long[1];
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+		try (OrderedParallelProcessor<U, List<Person>> processor = new OrderedParallelProcessor<>(pool, 16 * numberOfThreads,
+				this::generate, persons -> {
+					for (Person person : persons) {
+						sink.accept(person);
+					}
+					counter[0] += persons.size();
+				})) {
+			for (U unit : units) {
+				processor.accept(unit);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		log.info("synthesized " + counter[0] + " persons using " + numberOfThreads + " threads.");
+	}
+
+	private List<Person> generate(U unit) {
+		List<Person> persons = new ArrayList<>();
+		generator.generate(unit, new Random(seedFor(globalSeed, unitId.apply(unit))), persons::add);
+		return persons;
+	}
+
+	/**
+	 * The seed of a unit: a hash of the global seed and the unit id, so that neighbouring units get unrelated random streams.
+	 */
+	public static long seedFor(long globalSeed, String unitId) {
+		// (a 64 bit hash of the id; String.hashCode has only 32 bits, and collides easily)
+		return CounterBasedRandom.hash(globalSeed, CounterBasedRandom.hash(unitId), 0, 0);
+	}
+}
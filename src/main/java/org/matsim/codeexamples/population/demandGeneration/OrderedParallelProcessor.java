@@ -0,0 +1,107 @@
+package org.matsim.codeexamples.population.demandGeneration;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Applies a function to a stream of items on several threads, and hands the results to the downstream consumer in the order in which
+ * the items came in.  The downstream consumer is always called on the thread that feeds the items, so it does not need to be
+ * thread-safe; e.g. it may add persons to a population or write them to a file.
+ * <p>
+ * At most <code>maxInFlight</code> items are in work at a time; if the function is slower than the producer, the producer waits.
+ * {@link #close()} has to be called at the end, it passes on the remaining results.
+ */
+public final class OrderedParallelProcessor<T, R> implements Consumer<T>, AutoCloseable {
+
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final int maxInFlight;
+	private final Function<T, R> function;
+	private final Consumer<R> downstream;
+
+	private final Queue<Future<R>> inFlight = new ArrayDeque<>();
+
+	public OrderedParallelProcessor(int numberOfThreads, int maxInFlight, Function<T, R> function, Consumer<R> downstream) {
+		this(createExecutor(numberOfThreads), true, maxInFlight, function, downstream);
+	}
+
+	/**
+	 * Runs the function on the given executor, e.g. a {@link java.util.concurrent.ForkJoinPool}, which is not shut down by
+	 * {@link #close()}.
+	 */
+	public OrderedParallelProcessor(ExecutorService executor, int maxInFlight, Function<T, R> function, Consumer<R> downstream) {
+		this(executor, false, maxInFlight, function, downstream);
+	}
+
+	private OrderedParallelProcessor(ExecutorService executor, boolean ownsExecutor, int maxInFlight, Function<T, R> function,
+			Consumer<R> downstream) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("need at least one item in flight");
+		}
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.maxInFlight = maxInFlight;
+		this.function = function;
+		this.downstream = downstream;
+	}
+
+	private static ExecutorService createExecutor(int numberOfThreads) {
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("need at least one thread");
+		}
+		return Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+			Thread thread = new Thread(runnable, "OrderedParallelProcessor");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void accept(T item) {
+		inFlight.add(executor.submit(() -> function.apply(item)));
+		while (inFlight.size() >= maxInFlight || (!inFlight.isEmpty() && inFlight.peek().isDone())) {
+			emitNext();
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			while (!inFlight.isEmpty()) {
+				emitNext();
+			}
+		} finally {
+			if (ownsExecutor) {
+				executor.shutdownNow();
+			} else {
+				// (drop what is left after an exception)
+				for (Future<R> future : inFlight) {
+					future.cancel(true);
+				}
+				inFlight.clear();
+			}
+		}
+	}
+
+	private void emitNext() {
+		R result;
+		try {
+			result = inFlight.poll().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		downstream.accept(result);
+	}
+}
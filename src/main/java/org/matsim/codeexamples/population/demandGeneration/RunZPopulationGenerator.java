@@ -1,9 +1,6 @@
 package org.matsim.codeexamples.population.demandGeneration;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
@@ -43,11 +40,6 @@ public class RunZPopulationGenerator {
 
 		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
 
-		/*
-		 * Use Parser to read the census sample file.
-		 */
-		List<ZCensusEntry> censusEntries = new ZCensusParser().readFile(censusFile);
-
 		/*
 		 * Get Population and PopulationFactory objects.
 		 * The Population contains all created Agents and their plans,
@@ -57,140 +49,125 @@ public class RunZPopulationGenerator {
 		Population population = scenario.getPopulation();
 		PopulationFactory populationFactory = population.getFactory();
 
-
 		/*
 		 * The census file contains one line per trip, meaning a typical person
-		 * is represented by multiple lines / trips. Therefore in a first step
-		 * we have to sort the trips based on the person who executes them.
+		 * is represented by multiple lines / trips.  The file is sorted by person,
+		 * so the streaming parser hands over all trips of a person as soon as it
+		 * reaches the next person; there is no need to read the whole file first.
+		 *
+		 * The persons are created on several threads.  The processor hands them
+		 * back in the order of the file, on this thread, so they can be added to
+		 * the population as usual.
 		 */
+		int numberOfThreads = Runtime.getRuntime().availableProcessors();
+		try (OrderedParallelProcessor<List<ZCensusEntry>, Person> processor = new OrderedParallelProcessor<>(numberOfThreads,
+				16 * numberOfThreads, personEntries -> createPerson(populationFactory, personEntries), population::addPerson)) {
+			new ZCensusStreamingParser().readFile(censusFile, processor);
+		}
+		return scenario;
+
+	}
 
+	/*
+	 * Creates a person with a plan from all trips of that person.  This is called
+	 * in parallel, so it must only use the (thread-safe) PopulationFactory and
+	 * must not touch the Population itself.
+	 */
+	static Person createPerson(PopulationFactory populationFactory, List<ZCensusEntry> personEntries) {
 		/*
-		 * Create a Map with the PersonIds as key and a list of CensusEntry as values.
+		 * Get the first entry from the list - it will never be null.
 		 */
-		Map<Integer, List<ZCensusEntry>> personEntryMapping = new TreeMap<>();
-		for (ZCensusEntry censusEntry : censusEntries) {
-			/*
-			 * If the Map already contains an entry for the current person
-			 * the list will not be null.
-			 */
-			List<ZCensusEntry> entries = personEntryMapping.get(censusEntry.id_person);
+		ZCensusEntry entry = personEntries.get(0);
 
-			/*
-			 * If no mapping exists -> create a new one
-			 */
-			if (entries == null) {
-				entries = new ArrayList<>();
-				personEntryMapping.put(censusEntry.id_person, entries);
-			}
+		/*
+		 * Get id of the person from the censusEntry.
+		 */
+		int idPerson = entry.id_person;
 
-			/*
-			 *  Add currently processed entry to the list
-			 */
-			entries.add(censusEntry);
-		}
+		/*
+		 * Create new person.
+		 * Use Id.create(...) to create the Person's Id.
+		 */
+		Person person = populationFactory.createPerson(Id.create(idPerson, Person.class));
 
 		/*
-		 * Now create a plan for each person - iterate over all entries in the map.
+		 *  Create new plan and add it to the person.
 		 */
-		for (List<ZCensusEntry> personEntries : personEntryMapping.values()) {
-			/*
-			 * Get the first entry from the list - it will never be null.
-			 */
-			ZCensusEntry entry = personEntries.get(0);
+		Plan plan = populationFactory.createPlan();
+		person.addPlan(plan);
 
-			/*
-			 * Get id of the person from the censusEntry.
-			 */
-			int idPerson = entry.id_person;
+		/*
+		 * Every Agent has at least one activity which is being at home.
+		 * - set the activity type to "home"
+		 * - set the start time to 0.0
+		 * - add the Activity to the plan.
+		 */
+		Coord homeCoord = new Coord(entry.h_x, entry.h_y);
+		Activity homeActivity = populationFactory.createActivityFromCoord("home", homeCoord);
+		homeActivity.setStartTime(0.0);
+		plan.addActivity(homeActivity);
 
-			/*
-			 * Create new person and add it to the population.
-			 * Use scenario.createId(String id) to create the Person's Id.
-			 */
-			Person person = populationFactory.createPerson(Id.create(idPerson, Person.class));
-			population.addPerson(person);
+		/*
+		 * Create objects that are needed when creating the other
+		 * Activities and Legs of the Plan.
+		 *
+		 * Mind that we have to set a start and end time for each Activity
+		 * (except the last one - it will last until the end of the simulated
+		 * period). The end time of an Activity equals the departure time of
+		 * the next Trip. We set the end time of an Activity when we process
+		 * the next Trip by using a point to the last previously created
+		 * Activity (initially this is the Home Activity).
+		 */
 
+		Coord endCoord = null;
+		String transportMode = null;
+		Leg leg = null;
+		Activity activity = null;
+		Activity previousActivity = homeActivity;
 
-			/*
-			 *  Create new plan and add it to the person.
-			 */
-			Plan plan = populationFactory.createPlan();
-			person.addPlan(plan);
+		/*
+		 *  Create person's Trips and add them to the Plan.
+		 */
+		for (ZCensusEntry personEntry : personEntries) {
+			endCoord = new Coord(personEntry.d_x, personEntry.d_y);
+			transportMode = getTransportMode(personEntry.tripmode);
+			String activityType = getActivityType(personEntry.trippurpose);
 
 			/*
-			 * Every Agent has at least one activity which is being at home.
-			 * - set the activity type to "home"
-			 * - set the start time to 0.0
-			 * - add the Activity to the plan.
+			 * Create a new Leg using the PopulationFactory and set its parameters.
+			 * Mind that MATSim uses seconds as time unit whereas the census uses minutes.
 			 */
-			Coord homeCoord = new Coord(entry.h_x, entry.h_y);
-			Activity homeActivity = populationFactory.createActivityFromCoord("home", homeCoord);
-			homeActivity.setStartTime(0.0);
-			plan.addActivity(homeActivity);
+			leg = populationFactory.createLeg(transportMode);
+			leg.setDepartureTime(personEntry.starttime * 60);
+			leg.setTravelTime(personEntry.tripduration * 60);
+			previousActivity.setEndTime(personEntry.starttime * 60);
 
 			/*
-			 * Create objects that are needed when creating the other
-			 * Activities and Legs of the Plan.
-			 *
-			 * Mind that we have to set a start and end time for each Activity
-			 * (except the last one - it will last until the end of the simulated
-			 * period). The end time of an Activity equals the departure time of
-			 * the next Trip. We set the end time of an Activity when we process
-			 * the next Trip by using a point to the last previously created
-			 * Activity (initially this is the Home Activity).
+			 * Create a new Activity using the Population Factory and set its parameters.
 			 */
-
-			Coord endCoord = null;
-			String transportMode = null;
-			Leg leg = null;
-			Activity activity = null;
-			Activity previousActivity = homeActivity;
+			activity = populationFactory.createActivityFromCoord(activityType, endCoord);
+			activity.setStartTime(personEntry.starttime * 60 + personEntry.tripduration * 60);
 
 			/*
-			 *  Create person's Trips and add them to the Plan.
+			 * Add the Leg and the Activity to the plan.
 			 */
-			for (ZCensusEntry personEntry : personEntries) {
-				endCoord = new Coord(personEntry.d_x, personEntry.d_y);
-				transportMode = getTransportMode(personEntry.tripmode);
-				String activityType = getActivityType(personEntry.trippurpose);
-
-				/*
-				 * Create a new Leg using the PopulationFactory and set its parameters.
-				 * Mind that MATSim uses seconds as time unit whereas the census uses minutes.
-				 */
-				leg = populationFactory.createLeg(transportMode);
-				leg.setDepartureTime(personEntry.starttime * 60);
-				leg.setTravelTime(personEntry.tripduration * 60);
-				previousActivity.setEndTime(personEntry.starttime * 60);
-
-				/*
-				 * Create a new Activity using the Population Factory and set its parameters.
-				 */
-				activity = populationFactory.createActivityFromCoord(activityType, endCoord);
-				activity.setStartTime(personEntry.starttime * 60 + personEntry.tripduration * 60);
-
-				/*
-				 * Add the Leg and the Activity to the plan.
-				 */
-				plan.addLeg(leg);
-				plan.addActivity(activity);
-
-				/*
-				 * Do not forget to update the pointer to the previousActivity.
-				 */
-				previousActivity = activity;
-			}
+			plan.addLeg(leg);
+			plan.addActivity(activity);
 
 			/*
-			 * ... and finally: If the last Activity takes place at the Home Coordinates
-			 * we assume that the Agent is performing a "home" Activity.
+			 * Do not forget to update the pointer to the previousActivity.
 			 */
-			if (activity.getCoord().equals(homeCoord)) {
-				activity.setType("home");
-			}
+			previousActivity = activity;
 		}
-		return scenario;
 
+		/*
+		 * ... and finally: If the last Activity takes place at the Home Coordinates
+		 * we assume that the Agent is performing a "home" Activity.
+		 */
+		if (activity.getCoord().equals(homeCoord)) {
+			activity.setType("home");
+		}
+		return person;
 	}
 
 	/*
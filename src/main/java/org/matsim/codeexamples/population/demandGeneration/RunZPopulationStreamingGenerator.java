@@ -0,0 +1,84 @@
+package org.matsim.codeexamples.population.demandGeneration;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
+import org.matsim.core.population.io.StreamingPopulationWriter;
+import org.matsim.core.scenario.ScenarioUtils;
+
+/**
+ * Same as {@link RunZPopulationGenerator}, but without a population in memory: every person goes from the census file through an
+ * optional chain of {@link PersonAlgorithm}s directly into a {@link StreamingPopulationWriter}, and is then forgotten.  Memory is thus
+ * bounded by the window of persons that are in work at the same time, and not by the size of the census.  (The person ids are still
+ * kept by MATSim's id cache.)  This needs a census file sorted by person, which the parser checks without keeping any state; with
+ * {@link ZCensusStreamingParser#setAllowUnsortedPersons(boolean) unsorted persons}, the parser keeps the id of every person, and
+ * the bound no longer holds.
+ * <p>
+ * The algorithms and the writer are called on the main thread, in the order of the census file, so they do not need to be
+ * thread-safe.  Downsampling is done by the writer, see {@link StreamingPopulationWriter#StreamingPopulationWriter(double)}.
+ */
+public class RunZPopulationStreamingGenerator {
+	private static final Logger log = LogManager.getLogger(RunZPopulationStreamingGenerator.class);
+
+	public static void main(String args[]) {
+
+		/*
+		 * Example for a check in the chain: every plan has to end with an activity.  Throwing
+		 * stops the whole run, so the output file does not silently miss persons.
+		 */
+		PersonAlgorithm checkPlan = person -> {
+			List<PlanElement> planElements = person.getSelectedPlan().getPlanElements();
+			if (!(planElements.get(planElements.size() - 1) instanceof Activity)) {
+				throw new IllegalStateException("plan of person " + person.getId() + " does not end with an activity");
+			}
+		};
+
+		writePopulationFromCensusFile("./input/input_sample_zurich.txt", "./input/population.xml.gz", 1., checkPlan);
+	}
+
+	/**
+	 * @param sampleFraction fraction of the persons that are written, 1. for all
+	 * @param algorithms run on every person, in this order, before it is written
+	 */
+	public static void writePopulationFromCensusFile(String censusFile, String populationFile, double sampleFraction,
+			PersonAlgorithm... algorithms) {
+
+		/*
+		 * Only the factory is needed; the population of this scenario stays empty.
+		 */
+		PopulationFactory populationFactory = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
+
+		List<PersonAlgorithm> chain = Arrays.asList(algorithms);
+		StreamingPopulationWriter writer = new StreamingPopulationWriter(sampleFraction);
+
+		long[] counter = new long[1];
+		int numberOfThreads = Runtime.getRuntime().availableProcessors();
+		try {
+			writer.startStreaming(populationFile);
+			try (OrderedParallelProcessor<List<ZCensusEntry>, Person> processor = new OrderedParallelProcessor<>(numberOfThreads,
+					16 * numberOfThreads, personEntries -> RunZPopulationGenerator.createPerson(populationFactory, personEntries),
+					person -> {
+						for (PersonAlgorithm algorithm : chain) {
+							algorithm.run(person);
+						}
+						writer.run(person);
+						counter[0]++;
+					})) {
+				new ZCensusStreamingParser().readFile(censusFile, processor);
+			}
+		} finally {
+			writer.closeStreaming();
+		}
+		log.info(counter[0] + " persons created from " + censusFile + ", written (sample fraction " + sampleFraction + ") to "
+				+ populationFile);
+	}
+
+}
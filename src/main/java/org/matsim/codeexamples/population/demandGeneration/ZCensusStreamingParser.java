@@ -0,0 +1,326 @@
+package org.matsim.codeexamples.population.demandGeneration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Streaming variant of the {@link ZCensusParser}.
+ * <p>
+ * The fields are tokenized in place in a byte buffer (a memory mapping for plain files, a chunk buffer for compressed ones), and the
+ * numbers are parsed from the bytes, without intermediate strings or boxing.  The census file is sorted by person, so all trips of a
+ * person are handed to the consumer as soon as the first line of the next person is read; there is no need to hold the whole file in
+ * memory.  An id that is lower than the one before leads to an exception, which also catches a person whose lines are not
+ * consecutive.
+ * <p>
+ * Files in which the lines of every person are consecutive, but the persons are not sorted, can be read after
+ * {@link #setAllowUnsortedPersons(boolean) setAllowUnsortedPersons(true)}.  The persons are then handed over in the order of the
+ * file, and the ids of all finished persons are kept in a set to detect a person whose lines are not consecutive, so the memory is
+ * no longer independent of the size of the census.
+ */
+public class ZCensusStreamingParser {
+
+	private static final int NUMBER_OF_COLUMNS = 25;
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.;
+		}
+	}
+
+	private final byte separator = '\t';
+
+	// start and end of each field of the current line, relative to the buffer:
+	private final int[] fieldStarts = new int[NUMBER_OF_COLUMNS];
+	private final int[] fieldEnds = new int[NUMBER_OF_COLUMNS];
+
+	private Consumer<List<ZCensusEntry>> consumer;
+	private List<ZCensusEntry> currentPerson;
+	private boolean headerSkipped;
+
+	private boolean allowUnsortedPersons = false;
+	// ids of the persons that have been handed to the consumer; only with unsorted persons:
+	private final Set<Integer> finishedPersons = new HashSet<>();
+
+	/**
+	 * @param allowUnsortedPersons whether the persons may come in any order, as long as the lines of every person are consecutive.
+	 * Costs memory per person, see the class comment.
+	 */
+	public void setAllowUnsortedPersons(boolean allowUnsortedPersons) {
+		this.allowUnsortedPersons = allowUnsortedPersons;
+	}
+
+	/**
+	 * Reads the file and hands the trips of one person at a time to the consumer, in the order of the file.  The consumer is called on
+	 * the calling thread.
+	 */
+	public void readFile(String inFile, Consumer<List<ZCensusEntry>> consumer) {
+		this.consumer = consumer;
+		this.currentPerson = null;
+		this.headerSkipped = false;
+		this.finishedPersons.clear();
+
+		try {
+			Path path = Paths.get(inFile);
+			if (!inFile.endsWith(".gz") && path.toFile().isFile() && path.toFile().length() <= Integer.MAX_VALUE) {
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+					ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+					int end = processLines(buffer, 0, buffer.limit());
+					processLastLine(buffer, end, buffer.limit());
+				}
+			} else {
+				try (InputStream stream = IOUtils.getInputStream(IOUtils.resolveFileOrResource(inFile));
+						ReadableByteChannel channel = Channels.newChannel(stream)) {
+					readChunked(channel);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		if (currentPerson != null) {
+			consumer.accept(currentPerson);
+		}
+		this.consumer = null;
+		this.currentPerson = null;
+		this.finishedPersons.clear();
+	}
+
+	private void readChunked(ReadableByteChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+		while (channel.read(buffer) >= 0) {
+			int end = processLines(buffer, 0, buffer.position());
+			if (end == 0 && !buffer.hasRemaining()) {
+				// a single line longer than the buffer
+				ByteBuffer larger = ByteBuffer.allocate(2 * buffer.capacity());
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			} else {
+				compact(buffer, end);
+			}
+		}
+		// (everything before the position is an incomplete line now)
+		processLastLine(buffer, 0, buffer.position());
+	}
+
+	private static void compact(ByteBuffer buffer, int consumed) {
+		buffer.flip();
+		buffer.position(consumed);
+		buffer.compact();
+	}
+
+	/**
+	 * Processes all complete lines in [start, limit).
+	 *
+	 * @return the start of the first incomplete line
+	 */
+	private int processLines(ByteBuffer buffer, int start, int limit) {
+		int lineStart = start;
+		for (int i = start; i < limit; i++) {
+			if (buffer.get(i) == '\n') {
+				processLine(buffer, lineStart, i);
+				lineStart = i + 1;
+			}
+		}
+		return lineStart;
+	}
+
+	private void processLastLine(ByteBuffer buffer, int start, int end) {
+		if (start < end) {
+			processLine(buffer, start, end);
+		}
+	}
+
+	private void processLine(ByteBuffer buffer, int start, int end) {
+		if (end > start && buffer.get(end - 1) == '\r') {
+			end--;
+		}
+		if (!headerSkipped) {
+			headerSkipped = true;
+			return;
+		}
+		if (end == start) {
+			return;
+		}
+
+		int column = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end && column < NUMBER_OF_COLUMNS; i++) {
+			if (i == end || buffer.get(i) == separator) {
+				fieldStarts[column] = fieldStart;
+				fieldEnds[column] = i;
+				column++;
+				fieldStart = i + 1;
+			}
+		}
+		if (column < NUMBER_OF_COLUMNS) {
+			throw new IllegalArgumentException("census line with only " + column + " columns");
+		}
+
+		ZCensusEntry censusEntry = new ZCensusEntry();
+		censusEntry.id_person = parseInteger(buffer, 0);
+		censusEntry.wp = parseDouble(buffer, 1);
+		censusEntry.tripnum = parseInteger(buffer, 2);
+		censusEntry.starttime = parseInteger(buffer, 3);
+		censusEntry.h_x = parseDouble(buffer, 4);
+		censusEntry.h_y = parseDouble(buffer, 5);
+		censusEntry.s_x = parseDouble(buffer, 6);
+		censusEntry.s_y = parseDouble(buffer, 7);
+		censusEntry.d_x = parseDouble(buffer, 8);
+		censusEntry.d_y = parseDouble(buffer, 9);
+		censusEntry.bike = parseInteger(buffer, 10);
+		censusEntry.age = parseInteger(buffer, 11);
+		censusEntry.gender = parseInteger(buffer, 12);
+		censusEntry.license = parseInteger(buffer, 13);
+		censusEntry.tickets = parseInteger(buffer, 14);
+		censusEntry.modechoice = parseInteger(buffer, 15);
+		censusEntry.caravailability = parseInteger(buffer, 16);
+		censusEntry.mobtools = parseInteger(buffer, 17);
+		censusEntry.inc1000 = parseDouble(buffer, 18);
+		censusEntry.day = parseInteger(buffer, 19);
+		censusEntry.tripmode = parseInteger(buffer, 20);
+		censusEntry.trippurpose = parseInteger(buffer, 21);
+		censusEntry.tripdistance = parseDouble(buffer, 22);
+		censusEntry.tripduration = parseInteger(buffer, 23);
+		censusEntry.id_tour = parseInteger(buffer, 24);
+
+		if (currentPerson != null) {
+			int currentId = currentPerson.get(0).id_person;
+			if (!allowUnsortedPersons && censusEntry.id_person < currentId) {
+				throw new IllegalStateException("census file is not sorted by person: " + censusEntry.id_person + " after " + currentId
+						+ "; see setAllowUnsortedPersons");
+			}
+			if (censusEntry.id_person != currentId) {
+				if (allowUnsortedPersons) {
+					finishedPersons.add(currentId);
+				}
+				consumer.accept(currentPerson);
+				currentPerson = null;
+			}
+		}
+		if (currentPerson == null) {
+			if (allowUnsortedPersons && finishedPersons.contains(censusEntry.id_person)) {
+				throw new IllegalStateException("the lines of person " + censusEntry.id_person + " in the census file are not consecutive");
+			}
+			currentPerson = new ArrayList<>();
+		}
+		currentPerson.add(censusEntry);
+	}
+
+	private int parseInteger(ByteBuffer buffer, int column) {
+		int i = skipLeadingBlanks(buffer, fieldStarts[column], fieldEnds[column]);
+		int end = skipTrailingBlanks(buffer, i, fieldEnds[column]);
+		if (i == end) {
+			return 0;
+		}
+
+		boolean negative = false;
+		byte first = buffer.get(i);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			i++;
+			if (i == end) {
+				throw new NumberFormatException("not an integer in column " + column + ": " + text(buffer, column));
+			}
+		}
+
+		// (accumulated as a long, so that an overflow is noticed before it wraps around)
+		long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("not an integer in column " + column + ": " + text(buffer, column));
+			}
+			value = 10 * value + digit;
+			if (value > limit) {
+				throw new NumberFormatException("integer out of range in column " + column + ": " + text(buffer, column));
+			}
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	private double parseDouble(ByteBuffer buffer, int column) {
+		int i = skipLeadingBlanks(buffer, fieldStarts[column], fieldEnds[column]);
+		int end = skipTrailingBlanks(buffer, i, fieldEnds[column]);
+		if (i == end) {
+			return 0.0;
+		}
+
+		boolean negative = false;
+		byte first = buffer.get(i);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			i++;
+		}
+
+		// fast path: up to 15 significant digits and no exponent, where mantissa / 10^k is correctly rounded
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean inFraction = false;
+		for (; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b == '.' && !inFraction) {
+				inFraction = true;
+			} else if (b >= '0' && b <= '9') {
+				mantissa = 10 * mantissa + (b - '0');
+				if (mantissa != 0) {
+					digits++;
+				}
+				if (inFraction) {
+					fractionDigits++;
+				}
+				if (digits > 15 || fractionDigits >= POWERS_OF_TEN.length) {
+					return Double.parseDouble(text(buffer, column));
+				}
+			} else {
+				// exponents, "NaN", ...
+				return Double.parseDouble(text(buffer, column));
+			}
+		}
+		double value = mantissa / POWERS_OF_TEN[fractionDigits];
+		return negative ? -value : value;
+	}
+
+	private static int skipLeadingBlanks(ByteBuffer buffer, int start, int end) {
+		while (start < end && buffer.get(start) == ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private static int skipTrailingBlanks(ByteBuffer buffer, int start, int end) {
+		while (end > start && buffer.get(end - 1) == ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	private String text(ByteBuffer buffer, int column) {
+		byte[] bytes = new byte[fieldEnds[column] - fieldStarts[column]];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(fieldStarts[column] + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8).trim();
+	}
+}
@@ -3,19 +3,17 @@ package org.matsim.codeexamples.population.demandGenerationFromShapefile;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.math3.distribution.EnumeratedDistribution;
-import org.apache.commons.math3.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.population.*;
+import org.matsim.codeexamples.population.demandGeneration.DeterministicPopulationSynthesizer;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.utils.gis.ShapeFileReader;
-import org.opengis.feature.simple.SimpleFeature;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -25,6 +23,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -33,7 +32,8 @@ import java.util.stream.Collectors;
  * It parses two commuter statistics and places agent's work and home locations in the corresponding regions.
  * The locations within a region are chosen randomly within the shape of a region extracted from the
  * 'thrueringen-kreise.shp' shape file. To ensure agents living in populated areas it is also ensured that home and work
- * locations lie within a shape extracted from the 'landcover.shp' shapefile. The input data is taken from:
+ * locations lie within a shape extracted from the 'landcover.shp' shapefile. The intersections of regions and landcover are
+ * computed once, see {@link RegionPointSampler}, and cached in the output directory. The input data is taken from:
  * <p>
  * commuters-inner-regional.csv: https://statistik.arbeitsagentur.de/nn_31966/SiteGlobals/Forms/Rubrikensuche/Rubrikensuche_Form.html?view=processForm&resourceId=210368&input_=&pageLocale=de&topicId=746732&year_month=201806&year_month.GROUP=1&search=Suchen
  * commuters-inter-regional.csv: https://statistik.arbeitsagentur.de/nn_31966/SiteGlobals/Forms/Rubrikensuche/Rubrikensuche_Form.html?view=processForm&resourceId=210368&input_=&pageLocale=de&topicId=882788&year_month=201806&year_month.GROUP=1&search=Suchen
@@ -42,6 +42,10 @@ import java.util.stream.Collectors;
  * <p>
  * The leg mode of all legs is 'car', all agents leave home at 9am and finish work at 5pm.
  * The created population is a 1% sample
+ * <p>
+ * The persons of every commuter flow (i.e. every pair of home and work region) are created by a
+ * {@link DeterministicPopulationSynthesizer}, in parallel, with one random number generator per flow. The population is thus the
+ * same for any number of threads.
  */
 class CreateDemand {
 
@@ -56,7 +60,6 @@ class CreateDemand {
 	private static final int HOME_END_TIME = 9 * 60 * 60;
 	private static final int WORK_END_TIME = 17 * 60 * 60;
 	private static final double SCALE_FACTOR = 0.1;
-	private static final GeometryFactory geometryFactory = new GeometryFactory();
 	private static final CSVFormat csvFormat = CSVFormat.Builder.create()
 			.setDelimiter(';')
 			.setHeader()
@@ -64,10 +67,10 @@ class CreateDemand {
 			.build();
 
 	private final Map<String, Geometry> regions;
-	private final EnumeratedDistribution<Geometry> landcover;
+	private final RegionPointSampler landcoverInRegions;
 	private final Path interRegionCommuterStatistic;
 	private final Path innerRegionCommuterStatistic;
-	private final Random random = new Random();
+	private static final long SEED = 4711;
 
 	private Population population;
 
@@ -80,18 +83,20 @@ class CreateDemand {
 
 		// read in the shape file and store the geometries according to their region identifier stored as 'RS' in the
 		// shape file
-		regions = ShapeFileReader.getAllFeatures(sampleFolder.resolve("thueringen-kreise.shp").toString()).stream()
+		Path regionsFile = sampleFolder.resolve("thueringen-kreise.shp");
+		regions = ShapeFileReader.getAllFeatures(regionsFile.toString()).stream()
 				.collect(Collectors.toMap(feature -> (String) feature.getAttribute("RS"), feature -> (Geometry) feature.getDefaultGeometry()));
 
-		// Read in landcover data to make people stay in populated areas
-		// we are using a weighted distribution by area-size, so that small areas receive less inhabitants than more
-		// populated ones.
-		List<Pair<Geometry, Double>> weightedGeometries = new ArrayList<>();
-		for (SimpleFeature feature : ShapeFileReader.getAllFeatures(sampleFolder.resolve("landcover.shp").toString())) {
-			Geometry geometry = (Geometry) feature.getDefaultGeometry();
-			weightedGeometries.add(new Pair<>(geometry, geometry.getArea()));
-		}
-		landcover = new EnumeratedDistribution<>(weightedGeometries);
+		// Use landcover data to make people stay in populated areas.
+		// The landcover within each region is triangulated once, and the triangles are drawn weighted by area-size, so that small
+		// areas receive less inhabitants than larger ones. The landcover file is only read if the cached triangles do not
+		// match the input files.
+		Path landcoverFile = sampleFolder.resolve("landcover.shp");
+		landcoverInRegions = RegionPointSampler.readOrBuild(Paths.get("output", "thueringen-landcover-triangles.bin"),
+				RegionPointSampler.fingerprintOfShapeFiles(regionsFile, landcoverFile), regions,
+				() -> ShapeFileReader.getAllFeatures(landcoverFile.toString()).stream()
+						.map(feature -> (Geometry) feature.getDefaultGeometry())
+						.collect(Collectors.toList()));
 
 		this.population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
 	}
@@ -102,12 +107,31 @@ class CreateDemand {
 
 	void create() {
 		population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
-		createInterRegionCommuters();
-		createInnerRegionCommuters();
+
+		// first collect all commuter flows, then create the persons of all flows in parallel
+		List<CommuterFlow> flows = new ArrayList<>();
+		readInterRegionCommuters(flows);
+		readInnerRegionCommuters(flows);
+
+		new DeterministicPopulationSynthesizer<CommuterFlow>(SEED, Runtime.getRuntime().availableProcessors(),
+				flow -> flow.homeRegionKey + "_" + flow.workRegionKey, this::createPersons)
+				.run(flows, population::addPerson);
 		logger.info("Done.");
 	}
 
-	private void createInterRegionCommuters() {
+	private static final class CommuterFlow {
+		final String homeRegionKey;
+		final String workRegionKey;
+		final int numberOfCommuters;
+
+		CommuterFlow(String homeRegionKey, String workRegionKey, int numberOfCommuters) {
+			this.homeRegionKey = homeRegionKey;
+			this.workRegionKey = workRegionKey;
+			this.numberOfCommuters = numberOfCommuters;
+		}
+	}
+
+	private void readInterRegionCommuters(List<CommuterFlow> flows) {
 
 		logger.info("Create commuters from inter regional statistic");
 
@@ -125,7 +149,7 @@ class CreateDemand {
 					// we have to use the try parse value method here, because there are some weird values in the 'total'
 					// column which we have to filter out
 					int numberOfCommuters = tryParseValue(record.get(TOTAL));
-					createPersons(currentHomeRegion, workRegion, numberOfCommuters);
+					addFlow(flows, currentHomeRegion, workRegion, numberOfCommuters);
 				}
 			}
 		} catch (IOException e) {
@@ -133,7 +157,7 @@ class CreateDemand {
 		}
 	}
 
-	private void createInnerRegionCommuters() {
+	private void readInnerRegionCommuters(List<CommuterFlow> flows) {
 
 		logger.info("Creating regional commuters.");
 		try (CSVParser parser = CSVParser.parse(innerRegionCommuterStatistic, StandardCharsets.UTF_8, csvFormat)) {
@@ -149,7 +173,7 @@ class CreateDemand {
 				// only create inner region commuters for regions we have in our regions shape
 				if (regions.containsKey(region)) {
 					int numberOfCommuters = tryParseValue(record.get(HOME_AND_WORK_REGION));
-					createPersons(region, region, numberOfCommuters);
+					addFlow(flows, region, region, numberOfCommuters);
 				}
 			}
 		} catch (IOException e) {
@@ -157,25 +181,30 @@ class CreateDemand {
 		}
 	}
 
-	private void createPersons(String homeRegionKey, String workRegionKey, int numberOfPersons) {
+	private void addFlow(List<CommuterFlow> flows, String homeRegionKey, String workRegionKey, int numberOfPersons) {
 
 		// if the person works or lives outside the state we will not use them
 		if (!regions.containsKey(homeRegionKey) || !regions.containsKey(workRegionKey)) return;
 
 		logger.info("Home region: " + homeRegionKey + " work region: " + workRegionKey + " number of commuters: " + numberOfPersons);
+		flows.add(new CommuterFlow(homeRegionKey, workRegionKey, numberOfPersons));
+	}
 
-		Geometry homeRegion = regions.get(homeRegionKey);
-		Geometry workRegion = regions.get(workRegionKey);
+	/*
+	 * This runs in parallel for different flows. It only reads shared data (the sampler and the population factory), and uses the
+	 * random number generator of the flow.
+	 */
+	private void createPersons(CommuterFlow flow, Random random, Consumer<Person> persons) {
 
 		// create as many persons as there are commuters multiplied by the scale factor
-		for (int i = 0; i < numberOfPersons * SCALE_FACTOR; i++) {
+		for (int i = 0; i < flow.numberOfCommuters * SCALE_FACTOR; i++) {
 
-			Coord home = getCoordInGeometry(homeRegion);
-			Coord work = getCoordInGeometry(workRegion);
-			String id = homeRegionKey + "_" + workRegionKey + "_" + i;
+			Coord home = landcoverInRegions.sample(flow.homeRegionKey, random);
+			Coord work = landcoverInRegions.sample(flow.workRegionKey, random);
+			String id = flow.homeRegionKey + "_" + flow.workRegionKey + "_" + i;
 
 			Person person = createPerson(home, work, TransportMode.car, id);
-			population.addPerson(person);
+			persons.accept(person);
 		}
 	}
 
@@ -215,30 +244,6 @@ class CreateDemand {
 		return plan;
 	}
 
-	private Coord getCoordInGeometry(Geometry regrion) {
-
-		double x, y;
-		Point point;
-		Geometry selectedLandcover;
-
-		// select a landcover feature and test whether it is in the right region. If not select a another one.
-		do {
-			selectedLandcover = landcover.sample();
-		} while (!regrion.contains(selectedLandcover));
-
-		// if the landcover feature is in the correct region generate a random coordinate within the bounding box of the
-		// landcover feature. Repeat until a coordinate is found which is actually within the landcover feature.
-		do {
-			Envelope envelope = selectedLandcover.getEnvelopeInternal();
-
-			x = envelope.getMinX() + envelope.getWidth() * random.nextDouble();
-			y = envelope.getMinY() + envelope.getHeight() * random.nextDouble();
-			point = geometryFactory.createPoint(new Coordinate(x, y));
-		} while (point == null || !selectedLandcover.contains(point));
-
-		return new Coord(x, y);
-	}
-
 	private int tryParseValue(String value) {
 
 		// first remove things excel may have put into the value
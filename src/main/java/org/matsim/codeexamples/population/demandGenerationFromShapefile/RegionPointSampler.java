@@ -0,0 +1,248 @@
+package org.matsim.codeexamples.population.demandGenerationFromShapefile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.util.PolygonExtracter;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+import org.locationtech.jts.triangulate.polygon.ConstrainedDelaunayTriangulator;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.codeexamples.population.demandGenerationWithFacilities.AliasTable;
+
+/**
+ * Draws uniformly distributed points from the populated part (the landcover) of a region in constant time.
+ * <p>
+ * The landcover is intersected with every region once, and the intersection is triangulated.  Per region, an {@link AliasTable}
+ * over the triangle areas picks a triangle, and a point is drawn uniformly within the triangle; no rejection sampling is needed.
+ * Regions without any landcover fall back to their whole area.
+ * <p>
+ * The triangles can be cached in a file, together with a format version and a fingerprint of the input; if both match, the shape
+ * files need not be intersected (nor the landcover read) again.  The sampler is immutable, so it can be used by several threads, each
+ * with its own {@link Random}.
+ */
+final class RegionPointSampler {
+	private static final Logger logger = LogManager.getLogger(RegionPointSampler.class);
+
+	private static final int MAGIC = 0x54524931; // "TRI1"
+	// has to be increased whenever the file layout or the way the triangles are built changes:
+	private static final int VERSION = 2;
+
+	// the parts of a shape file that the geometries and attributes are read from:
+	private static final String[] SHAPE_FILE_EXTENSIONS = { ".shp", ".shx", ".dbf", ".prj", ".cpg" };
+
+	// per region: the corners of the triangles, as (ax, ay, bx, by, cx, cy) one after the other
+	private final Map<String, double[]> trianglesByRegion;
+	private final Map<String, AliasTable> aliasTablesByRegion = new HashMap<>();
+
+	private RegionPointSampler(Map<String, double[]> trianglesByRegion) {
+		this.trianglesByRegion = trianglesByRegion;
+		for (Map.Entry<String, double[]> entry : trianglesByRegion.entrySet()) {
+			double[] triangles = entry.getValue();
+			double[] areas = new double[triangles.length / 6];
+			for (int i = 0; i < areas.length; i++) {
+				areas[i] = area(triangles, i);
+			}
+			aliasTablesByRegion.put(entry.getKey(), new AliasTable(areas));
+		}
+	}
+
+	/**
+	 * @param landcover only called if the geometries have to be intersected
+	 */
+	static RegionPointSampler build(Map<String, Geometry> regions, Supplier<List<Geometry>> landcover) {
+		logger.info("Intersecting landcover with " + regions.size() + " regions and triangulating the result.");
+		STRtree landcoverIndex = new STRtree();
+		for (Geometry geometry : landcover.get()) {
+			landcoverIndex.insert(geometry.getEnvelopeInternal(), geometry);
+		}
+
+		Map<String, double[]> trianglesByRegion = new TreeMap<>();
+		for (Map.Entry<String, Geometry> entry : regions.entrySet()) {
+			Geometry region = entry.getValue();
+			List<Polygon> polygons = new ArrayList<>();
+			for (Object candidate : landcoverIndex.query(region.getEnvelopeInternal())) {
+				Geometry intersection = OverlayNGRobust.overlay(region, (Geometry) candidate, OverlayNG.INTERSECTION);
+				addPolygons(intersection, polygons);
+			}
+			if (polygons.isEmpty()) {
+				logger.warn("No landcover in region " + entry.getKey() + "; using the whole region.");
+				addPolygons(region, polygons);
+			}
+			trianglesByRegion.put(entry.getKey(), triangulate(polygons));
+		}
+		return new RegionPointSampler(trianglesByRegion);
+	}
+
+	/**
+	 * Reads the triangles from the cache file if it exists and was written with the same fingerprint; otherwise builds them, and
+	 * writes the cache file.
+	 *
+	 * @param fingerprint has to change whenever the input changes, e.g. computed by {@link #fingerprintOfShapeFiles(Path...)}
+	 */
+	static RegionPointSampler readOrBuild(Path cacheFile, long fingerprint, Map<String, Geometry> regions,
+			Supplier<List<Geometry>> landcover) {
+		if (Files.isRegularFile(cacheFile)) {
+			Map<String, double[]> trianglesByRegion = read(cacheFile, fingerprint);
+			if (trianglesByRegion != null && trianglesByRegion.keySet().equals(regions.keySet())) {
+				logger.info("Read region triangles from " + cacheFile);
+				return new RegionPointSampler(trianglesByRegion);
+			}
+			logger.info("Cached region triangles in " + cacheFile + " do not match the input; building them anew.");
+		}
+		RegionPointSampler sampler = build(regions, landcover);
+		sampler.write(cacheFile, fingerprint);
+		return sampler;
+	}
+
+	/**
+	 * Fingerprint from the cache format version and from path, size and modification time of all parts of the shape files, i.e.
+	 * not only of the .shp files, but also of the .shx, .dbf, .prj and .cpg files next to them.  A missing part counts as well.
+	 */
+	static long fingerprintOfShapeFiles(Path... shpFiles) {
+		long fingerprint = 31L * MAGIC + VERSION;
+		try {
+			for (Path shpFile : shpFiles) {
+				String fileName = shpFile.getFileName().toString();
+				String baseName = fileName.endsWith(".shp") ? fileName.substring(0, fileName.length() - 4) : fileName;
+				for (String extension : SHAPE_FILE_EXTENSIONS) {
+					Path file = shpFile.resolveSibling(baseName + extension);
+					fingerprint = 31 * fingerprint + file.toAbsolutePath().toString().hashCode();
+					if (Files.isRegularFile(file)) {
+						fingerprint = 31 * fingerprint + Files.size(file);
+						fingerprint = 31 * fingerprint + Files.getLastModifiedTime(file).toMillis();
+					} else {
+						fingerprint = 31 * fingerprint - 1;
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return fingerprint;
+	}
+
+	Coord sample(String regionKey, Random random) {
+		double[] triangles = trianglesByRegion.get(regionKey);
+		if (triangles == null) {
+			throw new IllegalArgumentException("unknown region " + regionKey);
+		}
+		int offset = 6 * aliasTablesByRegion.get(regionKey).sample(random);
+
+		// uniform in the parallelogram spanned by the triangle, folded back into the triangle:
+		double r1 = random.nextDouble();
+		double r2 = random.nextDouble();
+		if (r1 + r2 > 1.) {
+			r1 = 1. - r1;
+			r2 = 1. - r2;
+		}
+		double ax = triangles[offset];
+		double ay = triangles[offset + 1];
+		double x = ax + r1 * (triangles[offset + 2] - ax) + r2 * (triangles[offset + 4] - ax);
+		double y = ay + r1 * (triangles[offset + 3] - ay) + r2 * (triangles[offset + 5] - ay);
+		return new Coord(x, y);
+	}
+
+	private static void addPolygons(Geometry geometry, List<Polygon> polygons) {
+		// (intersections may also contain lines and points, which have no area)
+		for (Object polygon : PolygonExtracter.getPolygons(geometry)) {
+			if (((Polygon) polygon).getArea() > 0.) {
+				polygons.add((Polygon) polygon);
+			}
+		}
+	}
+
+	private static double[] triangulate(List<Polygon> polygons) {
+		List<double[]> corners = new ArrayList<>();
+		for (Polygon polygon : polygons) {
+			Geometry triangles = ConstrainedDelaunayTriangulator.triangulate(polygon);
+			for (int i = 0; i < triangles.getNumGeometries(); i++) {
+				Coordinate[] coordinates = triangles.getGeometryN(i).getCoordinates();
+				double[] triangle = { coordinates[0].x, coordinates[0].y, coordinates[1].x, coordinates[1].y, coordinates[2].x,
+						coordinates[2].y };
+				if (area(triangle, 0) > 0.) {
+					corners.add(triangle);
+				}
+			}
+		}
+		double[] result = new double[6 * corners.size()];
+		for (int i = 0; i < corners.size(); i++) {
+			System.arraycopy(corners.get(i), 0, result, 6 * i, 6);
+		}
+		return result;
+	}
+
+	private static double area(double[] triangles, int i) {
+		int o = 6 * i;
+		return 0.5 * Math.abs((triangles[o + 2] - triangles[o]) * (triangles[o + 5] - triangles[o + 1])
+				- (triangles[o + 4] - triangles[o]) * (triangles[o + 3] - triangles[o + 1]));
+	}
+
+	private static Map<String, double[]> read(Path cacheFile, long fingerprint) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fingerprint) {
+				return null;
+			}
+			int numberOfRegions = in.readInt();
+			Map<String, double[]> trianglesByRegion = new TreeMap<>();
+			for (int r = 0; r < numberOfRegions; r++) {
+				String key = in.readUTF();
+				double[] triangles = new double[6 * in.readInt()];
+				for (int i = 0; i < triangles.length; i++) {
+					triangles[i] = in.readDouble();
+				}
+				trianglesByRegion.put(key, triangles);
+			}
+			return trianglesByRegion;
+		} catch (IOException e) {
+			logger.warn("Could not read " + cacheFile + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void write(Path cacheFile, long fingerprint) {
+		try {
+			Path directory = cacheFile.toAbsolutePath().getParent();
+			Files.createDirectories(directory);
+			// written under a temporary name and then moved into place, so that a concurrent run never reads a half-written file:
+			Path temporaryFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(fingerprint);
+				out.writeInt(trianglesByRegion.size());
+				for (Map.Entry<String, double[]> entry : trianglesByRegion.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeInt(entry.getValue().length / 6);
+					for (double value : entry.getValue()) {
+						out.writeDouble(value);
+					}
+				}
+			}
+			Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			logger.info("Wrote region triangles to " + cacheFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,345 @@
+package org.matsim.codeexamples.population.demandGenerationWithFacilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacility;
+
+/**
+ * Spatial sampling over activity facilities, as a replacement for <code>QuadTree.getDisk(...)</code> followed by picking a random
+ * element of the returned list.  The facilities are kept in a static, balanced 2-d tree in plain arrays: the facility in the middle of
+ * an index range splits that range, alternately by x and y.
+ * <p>
+ * The draws walk the tree and never materialize the facilities in range:
+ * <ul>
+ * <li>{@link #sampleWithinRadius}: uniform among the facilities within the radius, by reservoir sampling during the walk;</li>
+ * <li>{@link #sampleWithDistanceDecay}: the same, but weighted by a function of the distance;</li>
+ * <li>{@link #getKNearest}: the k nearest facilities, searching the nearer side first and pruning by the k-th distance so far.</li>
+ * </ul>
+ * The index is immutable after construction, so one index per activity type (see {@link #createForActivityTypes}) can be shared by
+ * all threads, each with its own {@link Random}.
+ */
+public final class ActivityFacilityIndex {
+
+	private final ActivityFacility[] facilities;
+	private final double[] xs;
+	private final double[] ys;
+
+	public ActivityFacilityIndex(Collection<? extends ActivityFacility> facilities) {
+		int n = facilities.size();
+		ActivityFacility[] unsorted = facilities.toArray(new ActivityFacility[0]);
+		int[] order = new int[n];
+		double[] unsortedXs = new double[n];
+		double[] unsortedYs = new double[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+			unsortedXs[i] = unsorted[i].getCoord().getX();
+			unsortedYs[i] = unsorted[i].getCoord().getY();
+		}
+		build(order, unsortedXs, unsortedYs, 0, n, 0);
+
+		this.facilities = new ActivityFacility[n];
+		this.xs = new double[n];
+		this.ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			this.facilities[i] = unsorted[order[i]];
+			this.xs[i] = unsortedXs[order[i]];
+			this.ys[i] = unsortedYs[order[i]];
+		}
+	}
+
+	/**
+	 * One index per activity type, in the order of the types.
+	 */
+	public static Map<String, ActivityFacilityIndex> createForActivityTypes(ActivityFacilities facilities, String... activityTypes) {
+		Map<String, ActivityFacilityIndex> indexes = new LinkedHashMap<>();
+		for (String activityType : activityTypes) {
+			indexes.put(activityType, new ActivityFacilityIndex(facilities.getFacilitiesForActivityType(activityType).values()));
+		}
+		return indexes;
+	}
+
+	public int size() {
+		return facilities.length;
+	}
+
+	/**
+	 * @return a facility drawn uniformly among those within the radius, or <code>null</code> if there is none
+	 */
+	public ActivityFacility sampleWithinRadius(double x, double y, double radius, Random random) {
+		Reservoir reservoir = new Reservoir(random, null);
+		sample(reservoir, x, y, radius * radius, 0, facilities.length, 0);
+		return reservoir.chosen < 0 ? null : facilities[reservoir.chosen];
+	}
+
+	/**
+	 * Like {@link #sampleWithinRadius}, but doubles the radius until there is a facility in it.
+	 *
+	 * @return <code>null</code> only if the index is empty
+	 */
+	public ActivityFacility sampleWithinExpandingRadius(double x, double y, double initialRadius, Random random) {
+		if (facilities.length == 0) {
+			return null;
+		}
+		double radius = initialRadius;
+		while (true) {
+			ActivityFacility facility = sampleWithinRadius(x, y, radius, random);
+			if (facility != null) {
+				return facility;
+			}
+			radius *= 2.;
+		}
+	}
+
+	/**
+	 * @param weightOfDistance maps the distance to a weight that is not negative, e.g. <code>d -> Math.exp(-d / 2000.)</code>
+	 * @return a facility within the radius, drawn with probability proportional to its weight, or <code>null</code> if the weights
+	 * of all facilities within the radius are zero
+	 */
+	public ActivityFacility sampleWithDistanceDecay(double x, double y, double maxRadius, DoubleUnaryOperator weightOfDistance,
+			Random random) {
+		Reservoir reservoir = new Reservoir(random, weightOfDistance);
+		sample(reservoir, x, y, maxRadius * maxRadius, 0, facilities.length, 0);
+		return reservoir.chosen < 0 ? null : facilities[reservoir.chosen];
+	}
+
+	public ActivityFacility getClosest(double x, double y) {
+		List<ActivityFacility> closest = getKNearest(x, y, 1);
+		return closest.isEmpty() ? null : closest.get(0);
+	}
+
+	/**
+	 * @return the (at most) k nearest facilities, nearest first
+	 */
+	public List<ActivityFacility> getKNearest(double x, double y, int k) {
+		k = Math.min(k, facilities.length);
+		if (k <= 0) {
+			return new ArrayList<>();
+		}
+		// max-heap of the best k so far, by squared distance:
+		Heap heap = new Heap(k);
+		nearest(heap, x, y, 0, facilities.length, 0);
+
+		// (popping the max-heap gives the farthest first)
+		ActivityFacility[] result = new ActivityFacility[heap.size];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = facilities[heap.popMax()];
+		}
+		return Arrays.asList(result);
+	}
+
+	// ---
+
+	private static final class Reservoir {
+		final Random random;
+		final DoubleUnaryOperator weightOfDistance;
+		int chosen = -1;
+		int numberSeen = 0;
+		double totalWeight = 0.;
+
+		Reservoir(Random random, DoubleUnaryOperator weightOfDistance) {
+			this.random = random;
+			this.weightOfDistance = weightOfDistance;
+		}
+
+		void offer(int index, double squaredDistance) {
+			if (weightOfDistance == null) {
+				// element i replaces the chosen one with probability 1/i, so each of n elements is chosen with probability 1/n:
+				numberSeen++;
+				if (random.nextInt(numberSeen) == 0) {
+					chosen = index;
+				}
+			} else {
+				double weight = weightOfDistance.applyAsDouble(Math.sqrt(squaredDistance));
+				if (weight > 0.) {
+					totalWeight += weight;
+					if (random.nextDouble() * totalWeight < weight) {
+						chosen = index;
+					}
+				}
+			}
+		}
+	}
+
+	private void sample(Reservoir reservoir, double x, double y, double squaredRadius, int from, int to, int depth) {
+		if (from >= to) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		double dx = xs[middle] - x;
+		double dy = ys[middle] - y;
+		if (dx * dx + dy * dy <= squaredRadius) {
+			reservoir.offer(middle, dx * dx + dy * dy);
+		}
+		double delta = (depth & 1) == 0 ? dx : dy;
+		// left of the middle are the facilities with smaller coordinate, right the ones with larger:
+		if (delta >= 0. || delta * delta <= squaredRadius) {
+			sample(reservoir, x, y, squaredRadius, from, middle, depth + 1);
+		}
+		if (delta <= 0. || delta * delta <= squaredRadius) {
+			sample(reservoir, x, y, squaredRadius, middle + 1, to, depth + 1);
+		}
+	}
+
+	private static final class Heap {
+		final int[] indices;
+		final double[] squaredDistances;
+		int size = 0;
+
+		Heap(int capacity) {
+			indices = new int[capacity];
+			squaredDistances = new double[capacity];
+		}
+
+		boolean isFull() {
+			return size == indices.length;
+		}
+
+		double max() {
+			return squaredDistances[0];
+		}
+
+		void offer(int index, double squaredDistance) {
+			if (!isFull()) {
+				int i = size++;
+				indices[i] = index;
+				squaredDistances[i] = squaredDistance;
+				// sift up:
+				while (i > 0 && squaredDistances[(i - 1) / 2] < squaredDistances[i]) {
+					swap(i, (i - 1) / 2);
+					i = (i - 1) / 2;
+				}
+			} else if (squaredDistance < max()) {
+				indices[0] = index;
+				squaredDistances[0] = squaredDistance;
+				siftDown();
+			}
+		}
+
+		int popMax() {
+			int index = indices[0];
+			size--;
+			indices[0] = indices[size];
+			squaredDistances[0] = squaredDistances[size];
+			siftDown();
+			return index;
+		}
+
+		private void siftDown() {
+			int i = 0;
+			while (true) {
+				int largest = i;
+				int left = 2 * i + 1;
+				int right = left + 1;
+				if (left < size && squaredDistances[left] > squaredDistances[largest]) {
+					largest = left;
+				}
+				if (right < size && squaredDistances[right] > squaredDistances[largest]) {
+					largest = right;
+				}
+				if (largest == i) {
+					return;
+				}
+				swap(i, largest);
+				i = largest;
+			}
+		}
+
+		private void swap(int i, int j) {
+			int index = indices[i];
+			indices[i] = indices[j];
+			indices[j] = index;
+			double squaredDistance = squaredDistances[i];
+			squaredDistances[i] = squaredDistances[j];
+			squaredDistances[j] = squaredDistance;
+		}
+	}
+
+	private void nearest(Heap heap, double x, double y, int from, int to, int depth) {
+		if (from >= to) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		double dx = xs[middle] - x;
+		double dy = ys[middle] - y;
+		heap.offer(middle, dx * dx + dy * dy);
+
+		double delta = (depth & 1) == 0 ? dx : dy;
+		boolean nearerIsLeft = delta >= 0.;
+		if (nearerIsLeft) {
+			nearest(heap, x, y, from, middle, depth + 1);
+		} else {
+			nearest(heap, x, y, middle + 1, to, depth + 1);
+		}
+		// the farther side only if the splitting line is closer than the k-th best so far:
+		if (!heap.isFull() || delta * delta < heap.max()) {
+			if (nearerIsLeft) {
+				nearest(heap, x, y, middle + 1, to, depth + 1);
+			} else {
+				nearest(heap, x, y, from, middle, depth + 1);
+			}
+		}
+	}
+
+	/**
+	 * Sorts order[from, to) such that the middle element is the median by x (even depth) or y (odd depth), with the smaller or equal
+	 * ones before it and the larger or equal ones after it, and then the same for both halves.
+	 */
+	private static void build(int[] order, double[] xs, double[] ys, int from, int to, int depth) {
+		if (to - from <= 1) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		double[] keys = (depth & 1) == 0 ? xs : ys;
+		select(order, keys, from, to - 1, middle);
+		build(order, xs, ys, from, middle, depth + 1);
+		build(order, xs, ys, middle + 1, to, depth + 1);
+	}
+
+	private static void select(int[] order, double[] keys, int left, int right, int k) {
+		while (right > left) {
+			// median of three as pivot:
+			double a = keys[order[left]];
+			double b = keys[order[(left + right) >>> 1]];
+			double c = keys[order[right]];
+			double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+
+			// three-way partition into [left, lt) < pivot, [lt, gt] == pivot, (gt, right] > pivot, so that many facilities with the
+			// same coordinate (e.g. on building or zone centroids) do not make this quadratic:
+			int lt = left;
+			int gt = right;
+			int i = left;
+			while (i <= gt) {
+				double key = keys[order[i]];
+				if (key < pivot) {
+					swap(order, lt++, i++);
+				} else if (key > pivot) {
+					swap(order, i, gt--);
+				} else {
+					i++;
+				}
+			}
+
+			if (k < lt) {
+				right = lt - 1;
+			} else if (k > gt) {
+				left = gt + 1;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static void swap(int[] order, int i, int j) {
+		int tmp = order[i];
+		order[i] = order[j];
+		order[j] = tmp;
+	}
+}
@@ -0,0 +1,76 @@
+package org.matsim.codeexamples.population.demandGenerationWithFacilities;
+
+import java.util.Random;
+
+/**
+ * Walker's alias method (in the variant by Vose): after O(n) setup, draws an index with probability proportional to its weight in
+ * O(1), with one random int and one random double.  The table is immutable, so one table may be used by several threads, each with
+ * its own {@link Random}.
+ */
+public final class AliasTable {
+	private final double[] probability;
+	private final int[] alias;
+
+	public AliasTable(double[] weights) {
+		int n = weights.length;
+		if (n == 0) {
+			throw new IllegalArgumentException("no weights");
+		}
+		double sum = 0.;
+		for (double weight : weights) {
+			if (!(weight >= 0.) || Double.isInfinite(weight)) {
+				throw new IllegalArgumentException("weights must be finite and not negative: " + weight);
+			}
+			sum += weight;
+		}
+		if (sum <= 0.) {
+			throw new IllegalArgumentException("sum of weights is zero");
+		}
+
+		this.probability = new double[n];
+		this.alias = new int[n];
+
+		// scaled weights, mean 1; indices below 1 are "small", the others "large", both kept as stacks:
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int numberOfSmall = 0;
+		int numberOfLarge = 0;
+		for (int i = 0; i < n; i++) {
+			scaled[i] = weights[i] * n / sum;
+			if (scaled[i] < 1.) {
+				small[numberOfSmall++] = i;
+			} else {
+				large[numberOfLarge++] = i;
+			}
+		}
+		while (numberOfSmall > 0 && numberOfLarge > 0) {
+			int less = small[--numberOfSmall];
+			int more = large[--numberOfLarge];
+			probability[less] = scaled[less];
+			alias[less] = more;
+			scaled[more] = (scaled[more] + scaled[less]) - 1.;
+			if (scaled[more] < 1.) {
+				small[numberOfSmall++] = more;
+			} else {
+				large[numberOfLarge++] = more;
+			}
+		}
+		// what is left is 1 up to rounding errors:
+		while (numberOfLarge > 0) {
+			probability[large[--numberOfLarge]] = 1.;
+		}
+		while (numberOfSmall > 0) {
+			probability[small[--numberOfSmall]] = 1.;
+		}
+	}
+
+	public int sample(Random random) {
+		int column = random.nextInt(probability.length);
+		return random.nextDouble() < probability[column] ? column : alias[column];
+	}
+
+	public int size() {
+		return probability.length;
+	}
+}
@@ -10,7 +10,6 @@ import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.population.PersonUtils;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.core.utils.collections.QuadTree;
 import org.matsim.facilities.ActivityFacility;
 import org.matsim.utils.objectattributes.ObjectAttributes;
 
@@ -18,6 +17,8 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 
 class CreateDemand {
@@ -30,14 +31,16 @@ class CreateDemand {
 	private static final String pusPersonsFile = "examples/tutorial/programming/demandGenerationWithFacilities/travelsurvey_persons.txt";
 	
 	private ObjectAttributes personHomeAndWorkLocations;
-	private Random random = new Random(3838494); 
+	private static final long seed = 3838494;
 	
-	private List<Id> pusWorkers = new Vector<>();
-	private List<Id> pusNonWorkers = new Vector<>();
+	// persons per chunk when the plans are assigned in parallel; every chunk has its own random number generator:
+	private static final int chunkSize = 1000;
 	
-	private QuadTree<ActivityFacility> shopFacilitiesTree;
-	private QuadTree<ActivityFacility> leisureFacilitiesTree;
-	private QuadTree<ActivityFacility> educationFacilitiesTree;
+	private final SurveyPlanDonorSampler pusPlans = new SurveyPlanDonorSampler();
+	
+	private ActivityFacilityIndex shopFacilitiesIndex;
+	private ActivityFacilityIndex leisureFacilitiesIndex;
+	private ActivityFacilityIndex educationFacilitiesIndex;
 	
 	private final static Logger log = LogManager.getLogger(CreateDemand.class);
 	
@@ -54,11 +57,13 @@ class CreateDemand {
 	
 	private void init() {		
 		/*
-		 * Build quad trees for assigning home and work locations
+		 * Build spatial indexes for assigning shop, leisure and education locations.  They are immutable, so all threads can use them.
 		 */
-		this.shopFacilitiesTree = CreatePopulation.createActivitiesTree("shop", this.scenario); 
-		this.leisureFacilitiesTree = CreatePopulation.createActivitiesTree("leisure", this.scenario); 
-		this.educationFacilitiesTree = CreatePopulation.createActivitiesTree("education", this.scenario);
+		Map<String, ActivityFacilityIndex> indexes = ActivityFacilityIndex.createForActivityTypes(this.scenario.getActivityFacilities(), 
+				"shop", "leisure", "education");
+		this.shopFacilitiesIndex = indexes.get("shop"); 
+		this.leisureFacilitiesIndex = indexes.get("leisure"); 
+		this.educationFacilitiesIndex = indexes.get("education");
 	}
 		
 	private void createPUSPersons() {
@@ -130,6 +135,8 @@ class CreateDemand {
 			
 			Id<Person> previousPerson = null;
 			boolean worker = false;
+			int numberOfWorkers = 0;
+			int numberOfNonWorkers = 0;
 
 			String line;
 			while ((line = bufferedReader.readLine()) != null) {
@@ -153,12 +160,8 @@ class CreateDemand {
 					
 					// define if previous person is a worker or not
 					if (previousPerson != null) {
-						if (worker) {
-							this.pusWorkers.add(previousPerson);
-						}
-						else {
-							this.pusNonWorkers.add(previousPerson);
-						}
+						this.addPUSPlan(population.getPersons().get(previousPerson), worker);
+						if (worker) numberOfWorkers++; else numberOfNonWorkers++;
 					}
 					worker = false;
 				}
@@ -185,8 +188,14 @@ class CreateDemand {
 				}
 				previousPerson = personId;
 			}
-			log.info("Number of workers: " + this.pusWorkers.size());
-			log.info("Number of non-workers: " + this.pusNonWorkers.size());
+			// ... and the last person
+			if (previousPerson != null) {
+				this.addPUSPlan(population.getPersons().get(previousPerson), worker);
+				if (worker) numberOfWorkers++; else numberOfNonWorkers++;
+			}
+			this.pusPlans.finish();
+			log.info("Number of workers: " + numberOfWorkers);
+			log.info("Number of non-workers: " + numberOfNonWorkers);
 			bufferedReader.close();
 		} // end try
 		catch (IOException e) {
@@ -196,31 +205,48 @@ class CreateDemand {
 		populationWriter.write("./output/PUSplans.xml.gz");
 	}
 	
+	/*
+	 * The survey has no weights and no attributes other than the activity types, so the stratum is just whether the person works.
+	 * With richer survey data, this is where age and sex would go into the stratum, see SurveyPlanDonorSampler.
+	 */
+	private void addPUSPlan(Person pusPerson, boolean worker) {
+		this.pusPlans.addDonor(worker, pusPerson.getSelectedPlan(), 1.0);
+	}
+	
 	/*
 	 * [[ 5 ]]
 	 */
 	private void assignPUSPlansToMATSimPopulation() {
 		/* Iterate through MATSim population and randomly assign a plan from the PUS population.
 		 * Adapt the activity locations and the activity end times. 
+		 * 
+		 * Drawing a donor plan is O(1), and the persons are processed in parallel, in chunks.  Every chunk has its own random number 
+		 * generator, seeded from the chunk index, so the result does not depend on the number of threads.
 		 */
-		for (Person person : this.scenario.getPopulation().getPersons().values()) {			
-//			if ((Boolean) person.getCustomAttributes().get(PersonUtils.EMPLOYED)) {		
-			if (PersonUtils.isEmployed(person)) {
-				Collections.shuffle(this.pusWorkers, this.random);
-				Person pusPerson = this.scenarioPUS.getPopulation().getPersons().get(this.pusWorkers.get(0));
-				Plan plan = this.adaptAndCopyPlan(person, pusPerson.getSelectedPlan(), true);	
-				person.addPlan(plan);
-			}
-			else {
-				Collections.shuffle(this.pusNonWorkers, this.random);
-				Person pusPerson = this.scenarioPUS.getPopulation().getPersons().get(this.pusNonWorkers.get(0));
-				Plan plan =  this.adaptAndCopyPlan(person, pusPerson.getSelectedPlan(), false);	
-				person.addPlan(plan);
-			}
+		final Person[] persons = this.scenario.getPopulation().getPersons().values().toArray(new Person[0]);
+		final int numberOfChunks = (persons.length + chunkSize - 1) / chunkSize;
+		
+		// parallel streams started from within a fork-join pool run in that pool:
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			pool.submit(() -> IntStream.range(0, numberOfChunks).parallel().forEach(chunk -> {
+				Random random = new Random(new SplittableRandom(seed + chunk * 0x9E3779B97F4A7C15L).nextLong());
+				int end = Math.min(persons.length, (chunk + 1) * chunkSize);
+				for (int ii = chunk * chunkSize; ii < end; ii++) {
+					Person person = persons[ii];
+//					if ((Boolean) person.getCustomAttributes().get(PersonUtils.EMPLOYED)) {		
+					boolean worker = PersonUtils.isEmployed(person);
+					Plan pusPlan = this.pusPlans.sample(worker, random);
+					Plan plan = this.adaptAndCopyPlan(person, pusPlan, worker, random);
+					person.addPlan(plan);
+				}
+			})).join();
+		} finally {
+			pool.shutdown();
 		}
 	}
 	
-	private Plan adaptAndCopyPlan(Person person, Plan plan, boolean worker) {		
+	private Plan adaptAndCopyPlan(Person person, Plan plan, boolean worker, Random random) {		
 		Plan newPlan = PopulationUtils.createPlan();
 		PopulationUtils.copyFromTo(plan, newPlan);
 		/*
@@ -240,14 +266,14 @@ class CreateDemand {
 				} else if (activity.getType().startsWith("w")) {
 					facility = (ActivityFacility)this.personHomeAndWorkLocations.getAttribute(person.getId().toString(), "work");
 				} else {
-					facility = this.getRandomLocation(activity, previousActivity.getCoord());
+					facility = this.getRandomLocation(activity, previousActivity.getCoord(), random);
 				}
 				if (facility == null) {
 					throw new RuntimeException();
 				}
 
 				if (counter == 0) {
-					time = 8.0 * 3600.0 + this.randomizeTimes();
+					time = 8.0 * 3600.0 + this.randomizeTimes(random);
 					int suffix = (int)(time / 3600.0);
 					activity.setType("h" + suffix);
 					firstType = activity.getType();
@@ -259,7 +285,7 @@ class CreateDemand {
 				else {
 					double activityDuration = 8 * 3600;
 					
-					time += activityDuration + this.randomizeTimes();
+					time += activityDuration + this.randomizeTimes(random);
 					String dur = String.valueOf((int)(activityDuration / 3600.0));
 					if (dur.equals("0")) dur = "0.5";
 					activity.setType(activity.getType().substring(0, 1) + dur);
@@ -281,37 +307,24 @@ class CreateDemand {
 		return newPlan;
 	}
 	
-	private ActivityFacility getRandomLocation(Activity activity, Coord coordPreviousActivity) {		
-		double xCoordCenter = coordPreviousActivity.getX();
-		double yCoordCenter = coordPreviousActivity.getY();
-		ArrayList<ActivityFacility> facilities = new ArrayList<>();
-		
+	private ActivityFacility getRandomLocation(Activity activity, Coord coordPreviousActivity, Random random) {		
+		/*
+		 * Draw a facility uniformly within 8 km; if there is none, the radius is doubled until there is one.
+		 */
+		ActivityFacilityIndex index;
 		if (activity.getType().startsWith("s")) {
-			double radius = 8000.0;
-			while (facilities.size() == 0) {
-				facilities = (ArrayList<ActivityFacility>) this.shopFacilitiesTree.getDisk(xCoordCenter, yCoordCenter, radius);
-				radius *= 2.0;
-			}
+			index = this.shopFacilitiesIndex;
 		}
 		else if (activity.getType().startsWith("l")) {
-			double radius = 8000.0;
-			while (facilities.size() == 0) {
-				facilities = (ArrayList<ActivityFacility>) this.leisureFacilitiesTree.getDisk(xCoordCenter, yCoordCenter, radius);
-				radius *= 2.0;
-			}
+			index = this.leisureFacilitiesIndex;
 		}
 		else {
-			double radius = 8000.0;
-			while (facilities.size() == 0) {
-				facilities = (ArrayList<ActivityFacility>) this.educationFacilitiesTree.getDisk(xCoordCenter, yCoordCenter, radius);
-				radius *= 2.0;
-			}
+			index = this.educationFacilitiesIndex;
 		}
-		int randomIndex = (int)(random.nextFloat() * (facilities.size()));
-		return facilities.get(randomIndex);
+		return index.sampleWithinExpandingRadius(coordPreviousActivity.getX(), coordPreviousActivity.getY(), 8000.0, random);
 	}	
 			
-	private double randomizeTimes() {
+	private double randomizeTimes(Random random) {
 		final double sigma = 1.0;
 		return random.nextGaussian() * sigma * 3600.0;
 	}
@@ -4,7 +4,6 @@ package org.matsim.codeexamples.population.demandGenerationWithFacilities;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
@@ -32,7 +31,7 @@ class CreatePopulation {
 	private static final String municipalitiesFile = "examples/tutorial/programming/demandGenerationWithFacilities/swiss_municipalities.txt";
 	
 	private QuadTree<ActivityFacility> homeFacilitiesTree;
-	private QuadTree<ActivityFacility> workFacilitiesTree;
+	private ActivityFacilityIndex workFacilitiesIndex;
 	
 	private TreeMap<String, Coord> municipalityCentroids = new TreeMap<>();
 	private Random random = new Random(3838494); 
@@ -50,10 +49,10 @@ class CreatePopulation {
 	
 	private void init() {		
 		/*
-		 * Build quad trees for assigning home and work locations
+		 * Build a quad tree for assigning home locations, and a spatial index for drawing work locations
 		 */
 		this.homeFacilitiesTree = CreatePopulation.createActivitiesTree("home", this.scenario); 
-		this.workFacilitiesTree = CreatePopulation.createActivitiesTree("work", this.scenario); 
+		this.workFacilitiesIndex = new ActivityFacilityIndex(this.scenario.getActivityFacilities().getFacilitiesForActivityType("work").values()); 
 		
 		this.readMunicipalities();
 	}
@@ -153,13 +152,9 @@ class CreatePopulation {
 	
 	private ActivityFacility getWorkFacility(String municipalityId) {
 		Coord coord = this.municipalityCentroids.get(municipalityId);
-		ArrayList<ActivityFacility> list = 
-			(ArrayList<ActivityFacility>) this.workFacilitiesTree.getDisk(coord.getX(), coord.getY(), 8000);
 		
-		// pick a facility randomly from this list
-		// TODO: check range of randomIndex. Is last element of list ever chosen?
-		int randomIndex = (int)(random.nextFloat() * (list.size() - 1));
-		return list.get(randomIndex);
+		// pick a facility randomly within 8 km of the centroid (or farther, if there is none):
+		return this.workFacilitiesIndex.sampleWithinExpandingRadius(coord.getX(), coord.getY(), 8000, random);
 	}
 
 	public Scenario getScenario() {
@@ -0,0 +1,77 @@
+package org.matsim.codeexamples.population.demandGenerationWithFacilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.matsim.api.core.v01.population.Plan;
+
+/**
+ * Draws a donor plan from the travel survey for a synthetic person in O(1).
+ * <p>
+ * The survey plans are kept in one array per stratum.  The stratum is any object with proper <code>equals</code> and
+ * <code>hashCode</code>; in the tutorial it is just whether the person works, but e.g. <code>Arrays.asList(worker, ageClass, sex)</code>
+ * works the same way, if the survey has these attributes.  Within a stratum, the donors are drawn uniformly, or, if any donor has a
+ * weight other than 1, with an {@link AliasTable}.
+ * <p>
+ * Usage: {@link #addDonor} for all survey persons, then {@link #finish()}, then {@link #sample} as often as needed.  After
+ * {@link #finish()} the sampler is immutable and can be used from several threads, each with its own {@link Random}.
+ */
+final class SurveyPlanDonorSampler {
+
+	private static final class Stratum {
+		final List<Plan> donors = new ArrayList<>();
+		final List<Double> weights = new ArrayList<>();
+		boolean weighted = false;
+
+		Plan[] plans;
+		AliasTable aliasTable;
+	}
+
+	private final Map<Object, Stratum> strata = new HashMap<>();
+	private boolean finished = false;
+
+	void addDonor(Object stratumKey, Plan plan, double weight) {
+		if (finished) {
+			throw new IllegalStateException("sampler is already finished");
+		}
+		Stratum stratum = strata.computeIfAbsent(stratumKey, k -> new Stratum());
+		stratum.donors.add(plan);
+		stratum.weights.add(weight);
+		if (weight != 1.) {
+			stratum.weighted = true;
+		}
+	}
+
+	void finish() {
+		for (Stratum stratum : strata.values()) {
+			stratum.plans = stratum.donors.toArray(new Plan[0]);
+			if (stratum.weighted) {
+				double[] weights = new double[stratum.plans.length];
+				for (int i = 0; i < weights.length; i++) {
+					weights[i] = stratum.weights.get(i);
+				}
+				stratum.aliasTable = new AliasTable(weights);
+			}
+			stratum.donors.clear();
+			stratum.weights.clear();
+		}
+		finished = true;
+	}
+
+	Plan sample(Object stratumKey, Random random) {
+		if (!finished) {
+			throw new IllegalStateException("call finish() before sampling");
+		}
+		Stratum stratum = strata.get(stratumKey);
+		if (stratum == null || stratum.plans.length == 0) {
+			throw new IllegalArgumentException("no survey plans for stratum " + stratumKey);
+		}
+		if (stratum.aliasTable != null) {
+			return stratum.plans[stratum.aliasTable.sample(random)];
+		}
+		return stratum.plans[random.nextInt(stratum.plans.length)];
+	}
+}
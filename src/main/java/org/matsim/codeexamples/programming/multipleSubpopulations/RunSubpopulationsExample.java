@@ -40,6 +40,7 @@ import org.matsim.examples.ExamplesUtils;
 
 import java.io.File;
 import java.net.URL;
+import java.util.Set;
 
 import static org.matsim.core.replanning.strategies.DefaultPlanStrategiesModule.*;
 
@@ -125,6 +126,13 @@ public class RunSubpopulationsExample {
 		/* Run the model. */
 		Controler controler = new Controler(config);
 
+		/* Schedule the expensive strategies of the two subpopulations by their measured cost.  The ChangeExpBeta selectors remain
+		 * as they are.  Every strategy keeps global.numberOfThreads threads (so the random draws of TimeAllocationMutator, and thus
+		 * the results, do not depend on the machine), and with one such share per core, the groups of the two subpopulations are
+		 * finished at the same time. */
+		SubpopulationReplanningScheduler.install( controler, Set.of( DefaultStrategy.TimeAllocationMutator, DefaultStrategy.ReRoute ),
+				Math.max( config.global().getNumberOfThreads(), Runtime.getRuntime().availableProcessors() ) );
+
 //		controler.addOverridingModule( new OTFVisLiveModule() );
 		
 		controler.run();
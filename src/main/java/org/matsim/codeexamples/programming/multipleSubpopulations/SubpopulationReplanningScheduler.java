@@ -0,0 +1,256 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,     *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.programming.multipleSubpopulations;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.HasPlansAndId;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.config.groups.StrategyConfigGroup.StrategySettings;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.replanning.PlanStrategy;
+import org.matsim.core.replanning.ReplanningContext;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the expensive part of replanning ({@link PlanStrategy#finish()}, which is where e.g. ReRoute or TimeAllocationMutator do
+ * their work) of different (subpopulation, strategy) groups concurrently, instead of one after the other.
+ * <p></p>
+ * With subpopulations, every {@link StrategySettings} entry gets its own {@link PlanStrategy} instance.  The strategy manager
+ * first hands all persons to their selected strategies, and then calls <code>finish()</code> on one strategy after the other,
+ * so that the wall time of replanning is the sum over all groups.  The strategies named in
+ * {@link #install(Controler, Set, int)} are therefore wrapped: their <code>finish()</code> is deferred until the last wrapped
+ * strategy is finished, and then
+ * <ul>
+ * <li> groups whose measured cost (wall time per plan of the previous iteration, times the number of plans now) is below the
+ * inline threshold are finished right away, on the calling thread;
+ * <li> the other groups are finished concurrently, largest expected cost first.
+ * </ul>
+ * Selector-only strategies (like ChangeExpBeta) are not wrapped and continue to be run inline by the strategy manager.
+ * <p></p>
+ * The thread pool inside a strategy module is sized when the module is created, from <code>global.numberOfThreads</code>, and
+ * cannot be resized per iteration.  So <code>global.numberOfThreads</code> is the number of threads of every group, and the
+ * total thread budget is passed separately to {@link #install(Controler, Set, int)}: at most
+ * <code>threadBudget / global.numberOfThreads</code> groups are finished at the same time, so that the cpu is not
+ * oversubscribed.  The measured cost only decides which groups are finished inline, and in which order; the thread count of a
+ * group is not adapted to its cost, because that would need new module instances and would change the random draws of
+ * strategies such as TimeAllocationMutator, which are tied to the number of threads.
+ * <p></p>
+ * Since all groups are finished before replanning returns, the mobsim never sees partially replanned plans.
+ */
+final class SubpopulationReplanningScheduler {
+	private static final Logger log = LogManager.getLogger( SubpopulationReplanningScheduler.class );
+
+	private static final String PREFIX = "scheduled";
+
+	private final int maxConcurrentGroups;
+	private final double inlineThresholdMs;
+
+	private final List<ScheduledPlanStrategy> registered = new ArrayList<>();
+	private final Map<String, Double> msPerPlanByGroup = new HashMap<>();
+	private int finished = 0;
+
+	SubpopulationReplanningScheduler( int maxConcurrentGroups, double inlineThresholdMs ) {
+		this.maxConcurrentGroups = Math.max( 1, maxConcurrentGroups );
+		this.inlineThresholdMs = inlineThresholdMs;
+	}
+
+	/**
+	 * Replaces the strategies with the given names in the strategy settings by scheduled variants.  Needs to be called after the
+	 * strategy settings are configured.
+	 *
+	 * @param threadBudget total number of replanning threads, e.g. the number of cores.  Every wrapped strategy keeps
+	 *                     <code>global.numberOfThreads</code> threads, so up to <code>threadBudget / global.numberOfThreads</code>
+	 *                     groups are finished concurrently.
+	 */
+	static void install( Controler controler, Set<String> expensiveStrategyNames, int threadBudget ) {
+		final int threadsPerGroup = Math.max( 1, controler.getConfig().global().getNumberOfThreads() );
+		final SubpopulationReplanningScheduler scheduler = new SubpopulationReplanningScheduler( threadBudget / threadsPerGroup, 10. );
+		log.info( "scheduled strategies have " + threadsPerGroup + " threads each; up to " + scheduler.maxConcurrentGroups
+				+ " groups are finished concurrently." );
+
+		final Map<String, String> scheduledNames = new HashMap<>();
+		for( StrategySettings settings : controler.getConfig().strategy().getStrategySettings() ){
+			final String name = settings.getStrategyName();
+			if ( expensiveStrategyNames.contains( name ) ) {
+				final String scheduledName = PREFIX + "_" + settings.getSubpopulation() + "_" + name;
+				scheduledNames.put( scheduledName, name );
+				settings.setStrategyName( scheduledName );
+			}
+		}
+
+		controler.addOverridingModule( new AbstractModule(){
+			@Override public void install(){
+				for( Map.Entry<String, String> entry : scheduledNames.entrySet() ){
+					this.addPlanStrategyBinding( entry.getKey() ).toProvider( new Provider<PlanStrategy>(){
+						// (the plan strategy bindings are a map binder, not named bindings)
+						@Inject Map<String, Provider<PlanStrategy>> planStrategyProviders;
+						@Override public PlanStrategy get(){
+							final Provider<PlanStrategy> delegateProvider = planStrategyProviders.get( entry.getValue() );
+							if ( delegateProvider == null ) {
+								throw new IllegalStateException( "no plan strategy bound under the name " + entry.getValue() );
+							}
+							return new ScheduledPlanStrategy( entry.getKey(), delegateProvider.get(), scheduler );
+						}
+					} );
+				}
+			}
+		} );
+	}
+
+	synchronized void register( ScheduledPlanStrategy strategy ) {
+		if ( finished > 0 ) {
+			throw new IllegalStateException( "strategy initialized while replanning is being finished" );
+		}
+		registered.add( strategy );
+	}
+
+	/**
+	 * Called from {@link ScheduledPlanStrategy#finish()}.  Does nothing until the last registered strategy is finished; then
+	 * finishes all of them.
+	 */
+	void finished( ScheduledPlanStrategy strategy ) {
+		if ( ++finished < registered.size() ) {
+			return;
+		}
+		try {
+			runAll();
+		} finally {
+			registered.clear();
+			finished = 0;
+		}
+	}
+
+	private void runAll() {
+		final List<ScheduledPlanStrategy> concurrent = new ArrayList<>();
+		final Map<ScheduledPlanStrategy, Double> expectedMs = new HashMap<>();
+		for( ScheduledPlanStrategy strategy : registered ){
+			final Double msPerPlan = msPerPlanByGroup.get( strategy.getGroupName() );
+			// (groups that were not measured yet are treated as expensive)
+			final double expected = msPerPlan == null ? Double.POSITIVE_INFINITY : msPerPlan * strategy.getNumberOfPlans();
+			expectedMs.put( strategy, expected );
+			if ( expected < inlineThresholdMs ) {
+				finishAndMeasure( strategy );
+			} else {
+				concurrent.add( strategy );
+			}
+		}
+		if ( concurrent.isEmpty() ) {
+			return;
+		}
+
+		// longest expected processing time first, so that the big groups do not end up last:
+		concurrent.sort( Comparator.comparing( (ScheduledPlanStrategy strategy) -> expectedMs.get( strategy ) ).reversed() );
+
+		final int nThreads = Math.min( maxConcurrentGroups, concurrent.size() );
+		final ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for( ScheduledPlanStrategy strategy : concurrent ){
+				futures.add( executor.submit( () -> finishAndMeasure( strategy ) ) );
+			}
+			for( Future<?> future : futures ){
+				future.get();
+			}
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		} catch( ExecutionException e ) {
+			throw new RuntimeException( "finishing a replanning group failed", e.getCause() );
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void finishAndMeasure( ScheduledPlanStrategy strategy ) {
+		final long start = System.nanoTime();
+		strategy.finishDelegate();
+		final double ms = (System.nanoTime() - start) / 1.e6;
+		log.info( strategy.getGroupName() + ": finished " + strategy.getNumberOfPlans() + " plans in " + String.format( "%.1f", ms ) + " ms on "
+				+ Thread.currentThread().getName() );
+		if ( strategy.getNumberOfPlans() > 0 ) {
+			synchronized( msPerPlanByGroup ) {
+				msPerPlanByGroup.put( strategy.getGroupName(), ms / strategy.getNumberOfPlans() );
+			}
+		}
+	}
+
+	/**
+	 * Wraps a strategy so that its <code>finish()</code> is done by the {@link SubpopulationReplanningScheduler}.
+	 */
+	static final class ScheduledPlanStrategy implements PlanStrategy {
+		private final String groupName;
+		private final PlanStrategy delegate;
+		private final SubpopulationReplanningScheduler scheduler;
+		private int numberOfPlans = 0;
+
+		ScheduledPlanStrategy( String groupName, PlanStrategy delegate, SubpopulationReplanningScheduler scheduler ) {
+			this.groupName = groupName;
+			this.delegate = delegate;
+			this.scheduler = scheduler;
+		}
+
+		String getGroupName() {
+			return groupName;
+		}
+
+		int getNumberOfPlans() {
+			return numberOfPlans;
+		}
+
+		@Override public void init( ReplanningContext replanningContext ) {
+			numberOfPlans = 0;
+			scheduler.register( this );
+			delegate.init( replanningContext );
+		}
+
+		@Override public void run( HasPlansAndId<Plan, Person> person ) {
+			numberOfPlans++;
+			delegate.run( person );
+		}
+
+		@Override public void finish() {
+			scheduler.finished( this );
+		}
+
+		void finishDelegate() {
+			delegate.finish();
+		}
+
+		@Override public String toString() {
+			return groupName + "[" + delegate.toString() + "]";
+		}
+	}
+
+}
@@ -17,6 +17,9 @@
  *                                                                         *
  * *********************************************************************** */
 /**
+ * Replanning with subpopulations.  {@link org.matsim.codeexamples.programming.multipleSubpopulations.SubpopulationReplanningScheduler}
+ * shows how the expensive strategies of the different subpopulations can be run concurrently.
+ *
  * @author nagel
  *
  */
@@ -0,0 +1,86 @@
+package org.matsim.codeexamples.programming.terminationCriterion;
+
+import java.util.Map;
+
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ReflectiveConfigGroup;
+
+/**
+ * Thresholds for the {@link ScoreConvergenceTerminationCriterion}.
+ */
+public final class ConvergenceTerminationConfigGroup extends ReflectiveConfigGroup{
+
+	public static final String GROUP_NAME = "convergenceTermination";
+
+	@Parameter
+	@Comment("number of iterations over which stationarity is tested.  Only iterations after innovation is switched off are considered.")
+	private int windowSize = 20;
+
+	@Parameter
+	@Comment("max allowed |slope of the average executed score| times windowSize, relative to |mean score|.")
+	private double relativeScoreSlopeThreshold = 0.001;
+
+	@Parameter
+	@Comment("max allowed standard deviation of the average executed score, relative to |mean score|.")
+	private double relativeScoreStdThreshold = 0.001;
+
+	@Parameter
+	@Comment("max allowed |slope| times windowSize of each mode share and of the share of persons whose selected plan changed.")
+	private double shareSlopeThreshold = 0.002;
+
+	@Parameter
+	@Comment("max allowed standard deviation of each mode share and of the share of persons whose selected plan changed.")
+	private double shareStdThreshold = 0.002;
+
+	public ConvergenceTerminationConfigGroup(){
+		super( GROUP_NAME );
+	}
+
+	public int getWindowSize(){
+		return windowSize;
+	}
+
+	public void setWindowSize( int windowSize ){
+		this.windowSize = windowSize;
+	}
+
+	public double getRelativeScoreSlopeThreshold(){
+		return relativeScoreSlopeThreshold;
+	}
+
+	public void setRelativeScoreSlopeThreshold( double relativeScoreSlopeThreshold ){
+		this.relativeScoreSlopeThreshold = relativeScoreSlopeThreshold;
+	}
+
+	public double getRelativeScoreStdThreshold(){
+		return relativeScoreStdThreshold;
+	}
+
+	public void setRelativeScoreStdThreshold( double relativeScoreStdThreshold ){
+		this.relativeScoreStdThreshold = relativeScoreStdThreshold;
+	}
+
+	public double getShareSlopeThreshold(){
+		return shareSlopeThreshold;
+	}
+
+	public void setShareSlopeThreshold( double shareSlopeThreshold ){
+		this.shareSlopeThreshold = shareSlopeThreshold;
+	}
+
+	public double getShareStdThreshold(){
+		return shareStdThreshold;
+	}
+
+	public void setShareStdThreshold( double shareStdThreshold ){
+		this.shareStdThreshold = shareStdThreshold;
+	}
+
+	@Override
+	protected void checkConsistency( Config config ){
+		super.checkConsistency( config );
+		if ( windowSize < 2 ) {
+			throw new RuntimeException( "windowSize needs to be at least 2" );
+		}
+	}
+}
@@ -24,6 +24,11 @@ class RunTerminationCriterionExample{
 		controler.addOverridingModule( new AbstractModule(){
 			@Override public void install(){
 				this.bind( TerminationCriterion.class ).to( MyTerminationCriterion.class);
+
+				// alternatively, stop as soon as scores and mode shares are stationary (see ConvergenceTerminationConfigGroup for the
+				// thresholds):
+//				this.bind( TerminationCriterion.class ).to( ScoreConvergenceTerminationCriterion.class );
+//				this.addControlerListenerBinding().to( ScoreConvergenceTerminationCriterion.class );
 			}
 		} );
 
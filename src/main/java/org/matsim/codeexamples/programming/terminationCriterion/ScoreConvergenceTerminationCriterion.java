@@ -0,0 +1,236 @@
+package org.matsim.codeexamples.programming.terminationCriterion;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.StrategyConfigGroup.StrategySettings;
+import org.matsim.core.controler.TerminationCriterion;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.replanning.strategies.DefaultPlanStrategiesModule.DefaultSelector;
+import org.matsim.core.router.TripStructureUtils;
+
+/**
+ * Stops the run as soon as it has converged, instead of at a fixed iteration as the <code>MyTerminationCriterion</code> in
+ * {@link RunTerminationCriterionExample} does.
+ * <p>
+ * At the end of every iteration, the following is recorded: the average executed (= selected plan) score, the main mode share of
+ * every mode, and the share of persons whose selected plan changed since the previous iteration.  Once innovation is switched
+ * off (by {@link org.matsim.core.config.groups.StrategyConfigGroup#getFractionOfIterationsToDisableInnovation()}, or earlier by
+ * the <code>disableAfter</code> of the individual innovative strategies, as in core), and the last
+ * {@link ConvergenceTerminationConfigGroup#getWindowSize() windowSize} iterations are all after that point,
+ * every series is tested for stationarity: the slope of a least-squares line (times the window size) and the standard deviation
+ * must both be below the configured thresholds; for the score relative to its mean.  If this holds, the <i>next</i> iteration
+ * is the last one, so that the controler writes the usual final output.  In any case, the run stops at the configured last
+ * iteration.
+ * <p>
+ * Needs to be bound both as {@link TerminationCriterion} and as controler listener, see {@link RunTerminationCriterionExample}.
+ * <p>
+ * Limitation: core decides whether a strategy is innovative from the strategy object (a strategy without modules is a pure
+ * selector, see <code>ReplanningUtils.isOnlySelector</code>).  This class only sees the config, so it takes the strategies of
+ * {@link DefaultSelector} as the selectors, and every other strategy as innovative.  With a custom or contrib selector, the
+ * criterion waits for that strategy's switch-off as well, i.e. it may detect convergence later than possible, but never too early.
+ */
+@Singleton
+public final class ScoreConvergenceTerminationCriterion implements TerminationCriterion, IterationEndsListener{
+	private static final Logger log = LogManager.getLogger( ScoreConvergenceTerminationCriterion.class );
+
+	private static final String SCORE = "avgExecutedScore";
+	private static final String CHANGED = "shareOfChangedPlans";
+	private static final String MODE_PREFIX = "modeShare_";
+
+	private final Population population;
+	private final ConvergenceTerminationConfigGroup convergenceConfig;
+	private final int lastIteration;
+	private final long innovationOffIteration;
+
+	private final Map<String, List<Double>> series = new TreeMap<>();
+	private final List<Integer> iterations = new ArrayList<>();
+	// (weak, so that plans removed by replanning are not kept alive until the next iteration end)
+	private final Map<Id<Person>, WeakReference<Plan>> previouslySelected = new HashMap<>();
+	private int convergedAfterIteration = -1;
+
+	@Inject
+	ScoreConvergenceTerminationCriterion( Population population, Config config ){
+		this.population = population;
+		this.convergenceConfig = ConfigUtils.addOrGetModule( config, ConvergenceTerminationConfigGroup.class );
+		this.lastIteration = config.controler().getLastIteration();
+		this.innovationOffIteration = getInnovationOffIteration( config );
+		log.info( innovationOffIteration == Long.MAX_VALUE ? "innovation is never switched off; the run will not be stopped early."
+				: "innovation is switched off after iteration " + innovationOffIteration );
+	}
+
+	// (by name only, see the class comment)
+	private static final Set<String> SELECTORS = new HashSet<>( Arrays.asList( DefaultSelector.KeepLastSelected, DefaultSelector.BestScore,
+			DefaultSelector.ChangeExpBeta, DefaultSelector.SelectExpBeta, DefaultSelector.SelectRandom, DefaultSelector.SelectPathSizeLogit ) );
+
+	/**
+	 * @return the last iteration in which any innovative strategy may still be used, or {@link Long#MAX_VALUE} if innovation is
+	 * never switched off
+	 */
+	static long getInnovationOffIteration( Config config ){
+		final long globalOffIteration = iterationAfterFraction( config.strategy().getFractionOfIterationsToDisableInnovation(),
+				config.controler().getFirstIteration(), config.controler().getLastIteration() );
+		long offIteration = Long.MIN_VALUE;
+		boolean anyInnovative = false;
+		for( StrategySettings settings : config.strategy().getStrategySettings() ){
+			if ( SELECTORS.contains( settings.getStrategyName() ) ) {
+				continue;
+			}
+			anyInnovative = true;
+			// (as in core's strategy manager config loader: for an innovative strategy, the global fraction caps its own disableAfter)
+			offIteration = Math.max( offIteration, settings.getDisableAfter() >= 0 ? Math.min( settings.getDisableAfter(), globalOffIteration )
+					: globalOffIteration );
+		}
+		return anyInnovative ? offIteration : globalOffIteration;
+	}
+
+	static long iterationAfterFraction( double fraction, int firstIteration, int lastIteration ){
+		// (the default fraction is +Infinity, i.e. never; an Infinity times 0 iterations would be NaN)
+		if ( Double.isNaN( fraction ) || fraction == Double.POSITIVE_INFINITY ) {
+			return Long.MAX_VALUE;
+		}
+		final double iterations = fraction * ((long) lastIteration - firstIteration);
+		if ( iterations >= Long.MAX_VALUE - firstIteration ) {
+			return Long.MAX_VALUE;
+		}
+		return firstIteration + Math.max( 0L, (long) iterations );
+	}
+
+	@Override
+	public boolean mayTerminateAfterIteration( int iteration ){
+		// (this is asked before the iteration is run, so that the controler knows that it is the last one.)
+		return iteration >= lastIteration || (convergedAfterIteration >= 0 && iteration > convergedAfterIteration);
+	}
+
+	@Override
+	public boolean doTerminate( int iteration ){
+		return mayTerminateAfterIteration( iteration );
+	}
+
+	@Override
+	public void notifyIterationEnds( IterationEndsEvent event ){
+		record( event.getIteration() );
+
+		if ( convergedAfterIteration < 0 && event.getIteration() < lastIteration ) {
+			final String reason = testStationarity();
+			if ( reason != null ) {
+				convergedAfterIteration = event.getIteration();
+				log.warn( "run has converged after iteration " + event.getIteration() + "; iteration " + (event.getIteration() + 1)
+						+ " will be the last one.  " + reason );
+			}
+		}
+	}
+
+	private void record( int iteration ){
+		double scoreSum = 0.;
+		int nPersons = 0;
+		int nChanged = 0;
+		int nTrips = 0;
+		final Map<String, Integer> tripsPerMode = new HashMap<>();
+		for( Person person : population.getPersons().values() ){
+			final Plan plan = person.getSelectedPlan();
+			if ( plan == null ) {
+				continue;
+			}
+			nPersons++;
+			if ( plan.getScore() != null ) {
+				scoreSum += plan.getScore();
+			}
+			final WeakReference<Plan> previous = previouslySelected.put( person.getId(), new WeakReference<>( plan ) );
+			if ( previous == null || previous.get() != plan ) {
+				nChanged++;
+			}
+			for( TripStructureUtils.Trip trip : TripStructureUtils.getTrips( plan ) ){
+				tripsPerMode.merge( TripStructureUtils.identifyMainMode( trip.getTripElements() ), 1, Integer::sum );
+				nTrips++;
+			}
+		}
+
+		// modes that show up late get a history of zeros, so that all series have the same length:
+		final TreeSet<String> modes = new TreeSet<>( tripsPerMode.keySet() );
+		for( String mode : modes ){
+			series.computeIfAbsent( MODE_PREFIX + mode, k -> new ArrayList<>( Collections.nCopies( iterations.size(), 0. ) ) );
+		}
+		iterations.add( iteration );
+		for( Map.Entry<String, List<Double>> entry : series.entrySet() ){
+			if ( entry.getKey().startsWith( MODE_PREFIX ) ) {
+				final int trips = tripsPerMode.getOrDefault( entry.getKey().substring( MODE_PREFIX.length() ), 0 );
+				entry.getValue().add( nTrips == 0 ? 0. : (double) trips / nTrips );
+			}
+		}
+		series.computeIfAbsent( SCORE, k -> new ArrayList<>() ).add( nPersons == 0 ? 0. : scoreSum / nPersons );
+		series.computeIfAbsent( CHANGED, k -> new ArrayList<>() ).add( nPersons == 0 ? 0. : (double) nChanged / nPersons );
+	}
+
+	/**
+	 * @return a description of why the run is considered converged, or <code>null</code> if it is not
+	 */
+	private String testStationarity(){
+		final int window = convergenceConfig.getWindowSize();
+		if ( iterations.size() < window || iterations.get( iterations.size() - window ) <= innovationOffIteration ) {
+			return null;
+		}
+		final StringBuilder reason = new StringBuilder( "Over the last " + window + " iterations:" );
+		for( Map.Entry<String, List<Double>> entry : series.entrySet() ){
+			final List<Double> values = entry.getValue().subList( entry.getValue().size() - window, entry.getValue().size() );
+			double mean = 0.;
+			for( double value : values ){
+				mean += value;
+			}
+			mean /= window;
+
+			// least squares slope over x = 0..window-1, and standard deviation:
+			final double xMean = (window - 1) / 2.;
+			double sxy = 0.;
+			double sxx = 0.;
+			double syy = 0.;
+			for( int ii = 0 ; ii < window ; ii++ ){
+				sxy += (ii - xMean) * (values.get( ii ) - mean);
+				sxx += (ii - xMean) * (ii - xMean);
+				syy += (values.get( ii ) - mean) * (values.get( ii ) - mean);
+			}
+			double drift = Math.abs( sxy / sxx ) * window;
+			double std = Math.sqrt( syy / (window - 1) );
+
+			final double slopeThreshold;
+			final double stdThreshold;
+			if ( entry.getKey().equals( SCORE ) ) {
+				final double scale = Math.max( Math.abs( mean ), Double.MIN_NORMAL );
+				drift /= scale;
+				std /= scale;
+				slopeThreshold = convergenceConfig.getRelativeScoreSlopeThreshold();
+				stdThreshold = convergenceConfig.getRelativeScoreStdThreshold();
+			} else {
+				slopeThreshold = convergenceConfig.getShareSlopeThreshold();
+				stdThreshold = convergenceConfig.getShareStdThreshold();
+			}
+			if ( drift >= slopeThreshold || std >= stdThreshold ) {
+				return null;
+			}
+			reason.append( String.format( " %s: mean=%.4g, drift=%.2e<%.2e, std=%.2e<%.2e;", entry.getKey(), mean, drift, slopeThreshold, std,
+					stdThreshold ) );
+		}
+		return reason.toString();
+	}
+}
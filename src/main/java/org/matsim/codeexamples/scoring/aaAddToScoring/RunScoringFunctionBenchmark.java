@@ -0,0 +1,223 @@
+package org.matsim.codeexamples.scoring.aaAddToScoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.HasPersonId;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.codeexamples.scoring.kindergartenActivityScoring.ArrivalModeAtFacilityRecorder;
+import org.matsim.codeexamples.scoring.kindergartenActivityScoring.KindergartenActivityScoring;
+import org.matsim.codeexamples.scoring.parallelScoring.ScoringFunctionCallLog;
+import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.CounterBasedGumbelEpsilonProvider;
+import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.EpsilonModeScoring;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ActivityParams;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.scoring.EventsToScore;
+import org.matsim.core.scoring.ScoringFunction;
+import org.matsim.core.scoring.ScoringFunctionFactory;
+import org.matsim.core.scoring.SumScoringFunction;
+import org.matsim.core.scoring.functions.CharyparNagelOpenTimesScoringFunctionFactory;
+import org.matsim.core.scoring.functions.CharyparNagelScoringFunctionFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures what custom scoring components cost, compared to plain Charypar-Nagel scoring.
+ * <p>
+ * The events file is read once, and what the scoring infrastructure hands to the scoring function of each person is recorded into a
+ * {@link ScoringFunctionCallLog}.  For every variant, the logs are then replayed many times into freshly built scoring functions.
+ * Reported are ns per recorded call (including building the scoring function), bytes allocated per recorded call, and ns per person
+ * for <code>finish()</code> and <code>getScore()</code>.
+ * <p>
+ * This is a plain timing loop with warm-up rounds (the code examples do not depend on JMH), so the numbers are indicative only.
+ * Arguments: events file, network file.
+ */
+public class RunScoringFunctionBenchmark {
+	private static final String EVENTS_FILE = "scenarios/sampleScenario/5.events.xml.gz";
+	private static final String NETWORK_FILE = "scenarios/sampleScenario/sample_network.xml";
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+	private static final int MIN_REPLAYS_PER_ROUND = 200000;
+
+	public static void main(String[] args) {
+		final String eventsFile = args.length > 0 ? args[0] : EVENTS_FILE;
+		final String networkFile = args.length > 1 ? args[1] : NETWORK_FILE;
+
+		// first pass: which persons and activity types are there?
+		final Set<Id<Person>> personIds = new LinkedHashSet<>();
+		final Set<String> activityTypes = new LinkedHashSet<>();
+		{
+			EventsManager events = EventsUtils.createEventsManager();
+			events.addHandler(new BasicEventHandler() {
+				@Override
+				public void handleEvent(Event event) {
+					if (event instanceof HasPersonId && ((HasPersonId) event).getPersonId() != null) {
+						personIds.add(((HasPersonId) event).getPersonId());
+					}
+					if (event instanceof ActivityStartEvent) {
+						activityTypes.add(((ActivityStartEvent) event).getActType());
+					} else if (event instanceof ActivityEndEvent) {
+						activityTypes.add(((ActivityEndEvent) event).getActType());
+					}
+				}
+			});
+			events.initProcessing();
+			new MatsimEventsReader(events).readFile(eventsFile);
+			events.finishProcessing();
+		}
+
+		Config config = ConfigUtils.createConfig();
+		config.network().setInputFile(networkFile);
+		for (String activityType : activityTypes) {
+			if (config.planCalcScore().getActivityParams(activityType) == null) {
+				ActivityParams params = new ActivityParams(activityType);
+				params.setTypicalDuration(8. * 3600.);
+				config.planCalcScore().addActivityParams(params);
+			}
+		}
+		final Scenario scenario = ScenarioUtils.loadScenario(config);
+		for (Id<Person> personId : personIds) {
+			scenario.getPopulation().addPerson(PopulationUtils.getFactory().createPerson(personId));
+		}
+
+		// kindergarten: car arrivals at an arbitrary link (what matters here is the cost, not the penalty)
+		final ArrivalModeAtFacilityRecorder carArrivals = new ArrivalModeAtFacilityRecorder(TransportMode.car,
+				Collections.singleton(scenario.getNetwork().getLinks().keySet().iterator().next()), Collections.emptySet());
+		carArrivals.reset(0);
+
+		// second pass: record the input of the scoring functions
+		final Map<Person, ScoringFunctionCallLog> logs = new LinkedHashMap<>();
+		{
+			EventsManager events = EventsUtils.createEventsManager();
+			events.addHandler(carArrivals);
+			EventsToScore eventsToScore = EventsToScore.createWithoutScoreUpdating(scenario, person -> {
+				ScoringFunctionCallLog log = new ScoringFunctionCallLog();
+				logs.put(person, log);
+				return log;
+			}, events);
+			eventsToScore.beginIteration(0, false);
+			events.initProcessing();
+			new MatsimEventsReader(events).readFile(eventsFile);
+			events.finishProcessing();
+			eventsToScore.finish();
+		}
+
+		int numberOfCalls = 0;
+		for (ScoringFunctionCallLog log : logs.values()) {
+			numberOfCalls += log.size();
+		}
+		System.out.println(String.format("%d persons, %d recorded calls", logs.size(), numberOfCalls));
+
+		// the variants:
+		final CharyparNagelScoringFunctionFactory charyparNagel = new CharyparNagelScoringFunctionFactory(scenario);
+		final CounterBasedGumbelEpsilonProvider epsilonProvider = new CounterBasedGumbelEpsilonProvider(4711, 1.0);
+
+		Map<String, ScoringFunctionFactory> variants = new LinkedHashMap<>();
+		variants.put("charyparNagel (baseline)", charyparNagel);
+		variants.put("+ rain", person -> {
+			SumScoringFunction sum = (SumScoringFunction) charyparNagel.createNewScoringFunction(person);
+			sum.addScoringFunction(new RainScoring());
+			return sum;
+		});
+		variants.put("+ extreme time penalty", person -> {
+			SumScoringFunction sum = (SumScoringFunction) charyparNagel.createNewScoringFunction(person);
+			sum.addScoringFunction(new ExtremeTimePenaltyScoring());
+			return sum;
+		});
+		variants.put("+ kindergarten", person -> {
+			SumScoringFunction sum = (SumScoringFunction) charyparNagel.createNewScoringFunction(person);
+			sum.addScoringFunction(new KindergartenActivityScoring(person.getId(), carArrivals));
+			return sum;
+		});
+		variants.put("+ epsilon mode", person -> {
+			SumScoringFunction sum = (SumScoringFunction) charyparNagel.createNewScoringFunction(person);
+			sum.addScoringFunction(new EpsilonModeScoring(person.getId(), epsilonProvider));
+			return sum;
+		});
+		variants.put("open times", new CharyparNagelOpenTimesScoringFunctionFactory(scenario));
+
+		for (Map.Entry<String, ScoringFunctionFactory> entry : variants.entrySet()) {
+			benchmark(entry.getKey(), entry.getValue(), logs, numberOfCalls);
+		}
+	}
+
+	private static void benchmark(String name, ScoringFunctionFactory factory, Map<Person, ScoringFunctionCallLog> logs,
+			int numberOfCalls) {
+		final int repetitions = Math.max(1, MIN_REPLAYS_PER_ROUND / Math.max(1, numberOfCalls));
+		final List<ScoringFunction> scoringFunctions = new ArrayList<>(logs.size());
+
+		double replayNanos = 0.;
+		double finishNanos = 0.;
+		long allocatedBytes = 0;
+		double checksum = 0.;
+
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			long replayTime = 0;
+			long finishTime = 0;
+			long allocatedAtStart = allocatedBytes();
+
+			for (int repetition = 0; repetition < repetitions; repetition++) {
+				scoringFunctions.clear();
+
+				long start = System.nanoTime();
+				for (Map.Entry<Person, ScoringFunctionCallLog> entry : logs.entrySet()) {
+					ScoringFunction scoringFunction = factory.createNewScoringFunction(entry.getKey());
+					entry.getValue().replay(scoringFunction);
+					scoringFunctions.add(scoringFunction);
+				}
+				long replayed = System.nanoTime();
+				for (ScoringFunction scoringFunction : scoringFunctions) {
+					scoringFunction.finish();
+					checksum += scoringFunction.getScore();
+				}
+				long finished = System.nanoTime();
+
+				replayTime += replayed - start;
+				finishTime += finished - replayed;
+			}
+
+			// the first rounds are for warming up the JIT
+			if (round >= WARMUP_ROUNDS) {
+				replayNanos += replayTime;
+				finishNanos += finishTime;
+				allocatedBytes += allocatedBytes() - allocatedAtStart;
+			}
+		}
+
+		boolean allocationKnown = allocatedBytes() >= 0;
+		double calls = (double) numberOfCalls * repetitions * ROUNDS;
+		double persons = (double) logs.size() * repetitions * ROUNDS;
+		System.out.println(String.format("%-28s %8.1f ns/call %8.1f bytes/call %8.1f ns/person for finish (checksum %.1f)", name,
+				replayNanos / calls, allocationKnown ? allocatedBytes / calls : Double.NaN, finishNanos / persons, checksum));
+	}
+
+	/**
+	 * @return the bytes allocated so far by the current thread, or a negative number if the JVM does not tell
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,59 @@
+package org.matsim.codeexamples.scoring.aaAddToScoring;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+/**
+ * Same idea as {@link RunAddToScoringExample}, but the rain comes from a {@link WeatherRaster}, and the {@link WeatherExposureEngine}
+ * throws one score event per wet leg.  Real data would be read with {@link WeatherRaster#read(String)}; here, a rain front is made
+ * up that moves over the equil network from west to east, starting at 7:30.
+ */
+public class RunWeatherExposureExample {
+
+	public static void main(String[] args) {
+		final Scenario scenario;
+		if (args == null || args.length == 0 || args[0] == null) {
+			scenario = ScenarioUtils.loadScenario(ConfigUtils.loadConfig("scenarios/equil/example5-config.xml"));
+		} else {
+			scenario = ScenarioUtils.loadScenario(ConfigUtils.loadConfig(args));
+		}
+
+		// 1 km cells covering the equil network, 15 min time bins for one day:
+		final WeatherRaster raster = new WeatherRaster(-21000., -11000., 1000., 27, 18, 15. * 60., 96);
+		final int start = 30; // 7:30
+		for (int timeBin = start; timeBin < 96; timeBin++) {
+			// the front moves by 2 km per time bin, and it rains 2 mm/h behind it:
+			for (int column = 0; column < Math.min(27, 2 * (timeBin - start + 1)); column++) {
+				for (int row = 0; row < 18; row++) {
+					raster.setValue(timeBin, row * 27 + column, 2.f);
+				}
+			}
+		}
+
+		Controler controler = new Controler(scenario);
+		controler.addOverridingModule(new AbstractModule() {
+			@Override
+			public void install() {
+				addEventHandlerBinding().toProvider(new Provider<WeatherExposureEngine>() {
+					@Inject
+					EventsManager eventsManager;
+
+					@Override
+					public WeatherExposureEngine get() {
+						// minus one util per minute in rain of 1 mm/h:
+						return new WeatherExposureEngine(eventsManager, scenario.getNetwork(), raster, -1. / 60., "rain");
+					}
+				}).in(Singleton.class);
+			}
+		});
+		controler.run();
+	}
+}
@@ -0,0 +1,125 @@
+package org.matsim.codeexamples.scoring.aaAddToScoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonScoreEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleLeavesTrafficEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.Arrays;
+
+/**
+ * Alternative to the {@link RunAddToScoringExample.RainEngine}: instead of checking each link entry against a hard-coded link and time
+ * window, and throwing two events per wet link, the weather comes from a {@link WeatherRaster}.  Every link is mapped to its raster
+ * cell once at startup.  While driving, the exposure (value of the cell integrated over the time spent on the link) is added up per person,
+ * in arrays indexed by {@link Id#index()}, and is turned into one {@link PersonScoreEvent} per leg when the vehicle leaves traffic.
+ * The core scoring adds those to the score, so no extra scoring function is needed.
+ */
+public final class WeatherExposureEngine implements VehicleEntersTrafficEventHandler, LinkEnterEventHandler, LinkLeaveEventHandler,
+		VehicleLeavesTrafficEventHandler {
+
+	private final EventsManager eventsManager;
+	private final WeatherRaster raster;
+	private final double scorePerExposure;
+	private final String kind;
+
+	private final int[] cellByLinkIndex;
+
+	// by vehicle index:
+	private int[] driverIndexByVehicle = new int[0];
+	private double[] linkEnterTimeByVehicle = new double[0];
+
+	// by person index:
+	private double[] exposureByPerson = new double[0];
+
+	/**
+	 * @param scorePerExposure score change per unit of raster value and second, i.e. normally negative
+	 * @param kind goes into the score events, e.g. "rain"
+	 */
+	public WeatherExposureEngine(EventsManager eventsManager, Network network, WeatherRaster raster, double scorePerExposure,
+			String kind) {
+		this.eventsManager = eventsManager;
+		this.raster = raster;
+		this.scorePerExposure = scorePerExposure;
+		this.kind = kind;
+
+		this.cellByLinkIndex = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(cellByLinkIndex, -1);
+		for (Link link : network.getLinks().values()) {
+			cellByLinkIndex[link.getId().index()] = raster.getCell(link.getCoord());
+		}
+	}
+
+	@Override
+	public void reset(int iteration) {
+		Arrays.fill(exposureByPerson, 0.);
+	}
+
+	@Override
+	public void handleEvent(VehicleEntersTrafficEvent event) {
+		int vehicleIndex = ensureVehicleCapacity(event.getVehicleId());
+		int personIndex = ensurePersonCapacity(event.getPersonId());
+		driverIndexByVehicle[vehicleIndex] = personIndex;
+		// (the vehicle starts at the end of the departure link, and the remainder of that link counts as exposure)
+		linkEnterTimeByVehicle[vehicleIndex] = event.getTime();
+	}
+
+	@Override
+	public void handleEvent(LinkEnterEvent event) {
+		linkEnterTimeByVehicle[event.getVehicleId().index()] = event.getTime();
+	}
+
+	@Override
+	public void handleEvent(LinkLeaveEvent event) {
+		addExposure(event.getVehicleId(), event.getLinkId(), event.getTime());
+	}
+
+	@Override
+	public void handleEvent(VehicleLeavesTrafficEvent event) {
+		addExposure(event.getVehicleId(), event.getLinkId(), event.getTime());
+
+		int personIndex = driverIndexByVehicle[event.getVehicleId().index()];
+		double exposure = exposureByPerson[personIndex];
+		if (exposure > 0.) {
+			exposureByPerson[personIndex] = 0.;
+			eventsManager.processEvent(new PersonScoreEvent(event.getTime(), event.getPersonId(), scorePerExposure * exposure, kind));
+		}
+	}
+
+	private void addExposure(Id<Vehicle> vehicleId, Id<Link> linkId, double now) {
+		int vehicleIndex = vehicleId.index();
+		double enterTime = linkEnterTimeByVehicle[vehicleIndex];
+		int cell = linkId.index() < cellByLinkIndex.length ? cellByLinkIndex[linkId.index()] : -1;
+		// (a slow link traversal may span several time bins, each of which counts with its own value)
+		exposureByPerson[driverIndexByVehicle[vehicleIndex]] += raster.getIntegral(cell, enterTime, now);
+	}
+
+	private int ensureVehicleCapacity(Id<Vehicle> vehicleId) {
+		int index = vehicleId.index();
+		if (index >= driverIndexByVehicle.length) {
+			int newLength = Math.max(index + 1, Math.max(Id.getNumberOfIds(Vehicle.class), 2 * driverIndexByVehicle.length));
+			driverIndexByVehicle = Arrays.copyOf(driverIndexByVehicle, newLength);
+			linkEnterTimeByVehicle = Arrays.copyOf(linkEnterTimeByVehicle, newLength);
+		}
+		return index;
+	}
+
+	private int ensurePersonCapacity(Id<Person> personId) {
+		int index = personId.index();
+		if (index >= exposureByPerson.length) {
+			int newLength = Math.max(index + 1, Math.max(Id.getNumberOfIds(Person.class), 2 * exposureByPerson.length));
+			exposureByPerson = Arrays.copyOf(exposureByPerson, newLength);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,110 @@
+package org.matsim.codeexamples.scoring.aaAddToScoring;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A gridded, time-binned weather field, e.g. rain intensity per 1 km cell and per 15 min, held in one primitive array.
+ * <p>
+ * The text format is: a header line <code>minX;minY;cellSize;numberOfColumns;numberOfRows;timeBinSize;numberOfTimeBins</code>,
+ * then one line <code>timeBin;row;column;value</code> per cell that is not zero.  Cells outside the grid, and times after the last
+ * bin, have value zero.
+ */
+public final class WeatherRaster {
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int numberOfColumns;
+	private final int numberOfRows;
+	private final double timeBinSize;
+	private final int numberOfTimeBins;
+
+	// [timeBin][row][column], flattened:
+	private final float[] values;
+
+	public WeatherRaster(double minX, double minY, double cellSize, int numberOfColumns, int numberOfRows, double timeBinSize,
+			int numberOfTimeBins) {
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = cellSize;
+		this.numberOfColumns = numberOfColumns;
+		this.numberOfRows = numberOfRows;
+		this.timeBinSize = timeBinSize;
+		this.numberOfTimeBins = numberOfTimeBins;
+		this.values = new float[Math.multiplyExact(Math.multiplyExact(numberOfTimeBins, numberOfRows), numberOfColumns)];
+	}
+
+	public static WeatherRaster read(String filename) {
+		try (BufferedReader reader = IOUtils.getBufferedReader(filename)) {
+			String[] header = reader.readLine().split(";");
+			WeatherRaster raster = new WeatherRaster(Double.parseDouble(header[0]), Double.parseDouble(header[1]),
+					Double.parseDouble(header[2]), Integer.parseInt(header[3]), Integer.parseInt(header[4]),
+					Double.parseDouble(header[5]), Integer.parseInt(header[6]));
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				String[] parts = line.split(";");
+				raster.setValue(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]) * raster.numberOfColumns
+						+ Integer.parseInt(parts[2]), Float.parseFloat(parts[3]));
+			}
+			return raster;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return the cell index of the coordinate, or -1 if it is outside the grid.  Meant to be called once per link at startup.
+	 */
+	public int getCell(Coord coord) {
+		int column = (int) Math.floor((coord.getX() - minX) / cellSize);
+		int row = (int) Math.floor((coord.getY() - minY) / cellSize);
+		if (column < 0 || column >= numberOfColumns || row < 0 || row >= numberOfRows) {
+			return -1;
+		}
+		return row * numberOfColumns + column;
+	}
+
+	public void setValue(int timeBin, int cell, float value) {
+		values[timeBin * numberOfRows * numberOfColumns + cell] = value;
+	}
+
+	public double getValue(int cell, double time) {
+		if (cell < 0 || time < 0.) {
+			return 0.;
+		}
+		int timeBin = (int) (time / timeBinSize);
+		if (timeBin >= numberOfTimeBins) {
+			return 0.;
+		}
+		return values[timeBin * numberOfRows * numberOfColumns + cell];
+	}
+
+	/**
+	 * @return the integral of the value of the cell over the time interval, i.e. the sum of value times seconds over all time bins
+	 * that the interval overlaps
+	 */
+	public double getIntegral(int cell, double fromTime, double toTime) {
+		double start = Math.max(fromTime, 0.);
+		double end = Math.min(toTime, numberOfTimeBins * timeBinSize);
+		if (cell < 0 || start >= end) {
+			return 0.;
+		}
+		double integral = 0.;
+		int timeBin = Math.min((int) (start / timeBinSize), numberOfTimeBins - 1);
+		while (start < end) {
+			double binEnd = Math.min((timeBin + 1) * timeBinSize, end);
+			integral += values[timeBin * numberOfRows * numberOfColumns + cell] * (binEnd - start);
+			start = binEnd;
+			timeBin++;
+		}
+		return integral;
+	}
+}
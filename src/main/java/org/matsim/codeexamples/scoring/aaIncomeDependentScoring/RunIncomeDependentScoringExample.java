@@ -1,11 +1,14 @@
 package org.matsim.codeexamples.scoring.aaIncomeDependentScoring;
 
 import com.google.inject.Inject;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.codeexamples.scoring.individualizedScoringParameters.InterningScoringParametersForPerson;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
@@ -23,6 +26,7 @@ import org.matsim.core.scoring.functions.*;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.examples.ExamplesUtils;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -35,6 +39,21 @@ class RunIncomeDependentScoringExample{
 	
 	static final String NET_INCOME_PER_MONTH="netIncomePerMonth" ;
 
+	// Width of the income buckets.  Persons in the same subpopulation and bucket share one parameters object.  With e.g. 100., there
+	// are only ~40 distinct parameter sets for this population, instead of one per person.  It is 0 (= exact income, i.e. every person
+	// has its own parameters, and there is no memory gain) here only because RunIncomeDependentScoringExampleTest compares the scores
+	// with reference output that was computed with exact incomes; bucketing changes the marginal utility of money, and thus the scores.
+	// In a real application, use a bucket width that is small compared to the income differences that matter.
+	static final double INCOME_BUCKET_WIDTH = 0. ;
+
+	private static double getBucketedIncome( Person person ){
+		final var income = (Double) person.getAttributes().getAttribute( NET_INCOME_PER_MONTH );
+		if ( INCOME_BUCKET_WIDTH <= 0. ){
+			return income;
+		}
+		return (Math.floor( income / INCOME_BUCKET_WIDTH ) + 0.5) * INCOME_BUCKET_WIDTH ;
+	}
+
 	private static class IncomeDependentScoringParametersForPerson implements ScoringParametersForPerson {
 		@Inject private Scenario scenario;
 		@Override public ScoringParameters getScoringParameters( Person person ){
@@ -42,8 +61,9 @@ class RunIncomeDependentScoringExample{
 			final var builder = new ScoringParameters.Builder( scenario, person );
 			// (this builder is potentially rather expensive when there are many persons and many activity types (e.g. with different durations).  I think that this can be fixed.
 			// Thus keeping it here in this illustrative example.  kai, jun'22)
+			// (The interning decorator in main() calls this only once per distinct parameter key.)
 
-			final var income = (Double) person.getAttributes().getAttribute( NET_INCOME_PER_MONTH );
+			final var income = getBucketedIncome( person );
 			builder.setMarginalUtilityOfMoney( 2500. / income );
 			// (from 500 + rnd * 4000 we know that the average income will be 500. + 2000. = 2500.  Otherwise, this needs to be obtained in a different way.  kai, jun'22)
 
@@ -81,7 +101,12 @@ class RunIncomeDependentScoringExample{
 
 		controler.addOverridingModule( new AbstractModule(){
 			@Override public void install(){
-				this.bind( ScoringParametersForPerson.class ).to( IncomeDependentScoringParametersForPerson.class );
+				this.bind( IncomeDependentScoringParametersForPerson.class );
+			}
+			@Provides @Singleton ScoringParametersForPerson provideScoringParametersForPerson( IncomeDependentScoringParametersForPerson delegate ){
+				// the key needs to contain everything that the delegate looks at:
+				return new InterningScoringParametersForPerson( delegate,
+						person -> Arrays.asList( PopulationUtils.getSubpopulation( person ), getBucketedIncome( person ) ) );
 			}
 		} );
 
@@ -115,6 +140,12 @@ class RunIncomeDependentScoringExample{
 		});
 		*/
 		controler.run();
+
+		final var parametersForPerson = controler.getInjector().getInstance( ScoringParametersForPerson.class );
+		if ( parametersForPerson instanceof InterningScoringParametersForPerson ){
+			log.info( ((InterningScoringParametersForPerson) parametersForPerson).getNumberOfParameterSets() + " distinct scoring parameter sets for "
+					+ scenario.getPopulation().getPersons().size() + " persons" );
+		}
 	}
 
 //	private static Map<String,Map<String,ActivityUtilityParameters>> createActivityParametersBySubpopulation( PlanCalcScoreConfigGroup scoringConfig ){
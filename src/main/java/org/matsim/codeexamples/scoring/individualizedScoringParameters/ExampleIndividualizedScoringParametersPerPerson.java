@@ -1,7 +1,6 @@
 package org.matsim.codeexamples.scoring.individualizedScoringParameters;
 
 import com.google.inject.Inject;
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
@@ -10,18 +9,15 @@ import org.matsim.core.scoring.functions.ModeUtilityParameters;
 import org.matsim.core.scoring.functions.ScoringParameters;
 import org.matsim.core.scoring.functions.ScoringParametersForPerson;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
+ * Computes the parameters anew at every call.  Since they only depend on the subpopulation, they are shared between persons by
+ * wrapping this into an {@link InterningScoringParametersForPerson}, see {@link RunIndividualizedScoringExample}.
+ *
  * @author thibautd
  */
 public class ExampleIndividualizedScoringParametersPerPerson implements ScoringParametersForPerson {
 	private final Scenario scenario;
 
-	// For avoiding re-generating the parameters at each call, we store them in a map once created.
-	private Map<Id<Person>,ScoringParameters> cache = new HashMap<>();
-
 	@Inject
 	public ExampleIndividualizedScoringParametersPerPerson( final Scenario scenario ) {
 		this.scenario = scenario;
@@ -29,8 +25,6 @@ public class ExampleIndividualizedScoringParametersPerPerson implements ScoringP
 
 	@Override
 	public ScoringParameters getScoringParameters(Person person) {
-		if ( cache.containsKey( person.getId() ) ) return cache.get( person.getId() );
-
 		final ScoringParameters.Builder builder = new ScoringParameters.Builder(scenario, person);
 
 		// tune the following. Here hard-coded for legibility, but should be computed/read from person attributes.
@@ -48,8 +42,6 @@ public class ExampleIndividualizedScoringParametersPerPerson implements ScoringP
 		// the design of the above has changed with Tilmanns re-design of the income-dependent activity parameters; there does not seem to be
 		// a formulation that works both for 13.x and 14.x.  kai, jun'21
 
-		final ScoringParameters parameters = builder.build();
-		cache.put( person.getId() , parameters );
-		return parameters;
+		return builder.build();
 	}
 }
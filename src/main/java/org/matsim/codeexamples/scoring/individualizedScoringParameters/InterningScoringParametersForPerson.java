@@ -0,0 +1,58 @@
+package org.matsim.codeexamples.scoring.individualizedScoringParameters;
+
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Decorates a {@link ScoringParametersForPerson} such that persons with the same parameter key share one
+ * {@link ScoringParameters} object.  The key has to capture everything that the delegate looks at, e.g. the subpopulation and an
+ * income bucket; the delegate is then called once per distinct key, with the first person that has that key.
+ * <p></p>
+ * Memory is thus proportional to the number of distinct parameter sets and not to the number of persons.  The parameters are
+ * kept in a {@link ConcurrentHashMap}, so lookups of existing keys do not lock, and scoring may run in parallel.
+ */
+public final class InterningScoringParametersForPerson implements ScoringParametersForPerson {
+	private final ScoringParametersForPerson delegate;
+	private final Function<Person, ?> parameterKey;
+
+	private final ConcurrentMap<Object, ScoringParameters> parametersByKey = new ConcurrentHashMap<>();
+
+	/**
+	 * @param parameterKey must return objects with proper <code>equals</code> and <code>hashCode</code>, and never <code>null</code>
+	 */
+	public InterningScoringParametersForPerson( ScoringParametersForPerson delegate, Function<Person, ?> parameterKey ) {
+		this.delegate = delegate;
+		this.parameterKey = parameterKey;
+	}
+
+	@Override
+	public ScoringParameters getScoringParameters( Person person ) {
+		final Object key = parameterKey.apply( person );
+		// (plain get first: computeIfAbsent may lock the bin even if the key is present)
+		final ScoringParameters parameters = parametersByKey.get( key );
+		if ( parameters != null ) {
+			return parameters;
+		}
+		return parametersByKey.computeIfAbsent( key, k -> delegate.getScoringParameters( person ) );
+	}
+
+	public int getNumberOfParameterSets() {
+		return parametersByKey.size();
+	}
+
+	/**
+	 * Key for delegates whose parameters only depend on the subpopulation of the person.
+	 */
+	public static Function<Person, ?> bySubpopulation() {
+		// (a list since the subpopulation may be null, which a concurrent map does not accept as key)
+		return person -> Collections.singletonList( PopulationUtils.getSubpopulation( person ) );
+	}
+
+}
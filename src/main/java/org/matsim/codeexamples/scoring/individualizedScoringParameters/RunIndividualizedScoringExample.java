@@ -1,5 +1,8 @@
 package org.matsim.codeexamples.scoring.individualizedScoringParameters;
 
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import org.matsim.api.core.v01.Scenario;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.AbstractModule;
@@ -25,7 +28,11 @@ public class RunIndividualizedScoringExample{
 		final Controler controler = new Controler( config );
 		controler.addOverridingModule( new AbstractModule(){
 			@Override public void install(){
-				bind( ScoringParametersForPerson.class ).to(ExampleIndividualizedScoringParametersPerPerson.class );
+			}
+			@Provides @Singleton ScoringParametersForPerson provideScoringParametersForPerson( Scenario scenario ){
+				// (persons with the same subpopulation share one parameters object; this is also safe when scoring in parallel)
+				return new InterningScoringParametersForPerson( new ExampleIndividualizedScoringParametersPerPerson( scenario ),
+						InterningScoringParametersForPerson.bySubpopulation() );
 			}
 		} );
 		controler.run();
@@ -0,0 +1,158 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.scoring.kindergartenActivityScoring;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.handler.ActivityStartEventHandler;
+import org.matsim.api.core.v01.events.handler.PersonArrivalEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+/**
+ * Records when persons have arrived with a given mode at one of a set of target links or facilities during the current
+ * iteration.  For a link, the arrival event itself counts; for a facility, the arrival with the mode has to be followed by an
+ * activity start at that facility.
+ * <p></p>
+ * Links, facilities and persons are addressed by their {@link Id#index()}, so all checks are O(1) and do not compare ids.  The
+ * arrival times are only written by the events thread, and only read by the scoring functions in their
+ * {@link ArrivalModeAtFacilityScoring#finish() finish()}, i.e. after the mobsim, when all events have been processed.  Reading
+ * does not modify anything, so any number of scoring threads may read.  See {@link ArrivalModeAtFacilityScoring}.
+ */
+public final class ArrivalModeAtFacilityRecorder implements PersonArrivalEventHandler, ActivityStartEventHandler {
+	private static final double[] NO_ARRIVALS = new double[0];
+
+	private final String mode;
+	private final BitSet targetLinks = new BitSet();
+	private final BitSet targetFacilities = new BitSet();
+
+	// time of the last arrival of every person if it was with the mode, else NaN; only needed for the facility targets:
+	private double[] lastArrivalWithMode = new double[0];
+
+	// arrival times at the targets, in the order of the events, by person index:
+	private double[][] arrivalTimes = new double[0][];
+	private int[] numberOfArrivals = new int[0];
+
+	public ArrivalModeAtFacilityRecorder( String mode, Collection<Id<Link>> targetLinkIds,
+						      Collection<Id<ActivityFacility>> targetFacilityIds ) {
+		this.mode = mode;
+		for ( Id<Link> linkId : targetLinkIds ) {
+			targetLinks.set( linkId.index() );
+		}
+		for ( Id<ActivityFacility> facilityId : targetFacilityIds ) {
+			targetFacilities.set( facilityId.index() );
+		}
+	}
+
+	@Override
+	public void reset( int iteration ) {
+		final int numberOfPersons = Id.getNumberOfIds( Person.class );
+		lastArrivalWithMode = new double[numberOfPersons];
+		Arrays.fill( lastArrivalWithMode, Double.NaN );
+		arrivalTimes = new double[numberOfPersons][];
+		numberOfArrivals = new int[numberOfPersons];
+	}
+
+	@Override
+	public void handleEvent( PersonArrivalEvent event ) {
+		final int personIndex = event.getPersonId().index();
+		ensureCapacity( personIndex );
+		if ( !event.getLegMode().equals( mode ) ) {
+			lastArrivalWithMode[personIndex] = Double.NaN;
+			return;
+		}
+		lastArrivalWithMode[personIndex] = event.getTime();
+		if ( targetLinks.get( event.getLinkId().index() ) ) {
+			recordArrival( personIndex, event.getTime() );
+		}
+	}
+
+	@Override
+	public void handleEvent( ActivityStartEvent event ) {
+		final Id<ActivityFacility> facilityId = event.getFacilityId();
+		if ( facilityId == null || !targetFacilities.get( facilityId.index() ) ) {
+			return;
+		}
+		final int personIndex = event.getPersonId().index();
+		ensureCapacity( personIndex );
+		if ( !Double.isNaN( lastArrivalWithMode[personIndex] ) ) {
+			recordArrival( personIndex, lastArrivalWithMode[personIndex] );
+			// (an arrival only counts once, even if it is both at a target link and followed by a target facility)
+			lastArrivalWithMode[personIndex] = Double.NaN;
+		}
+	}
+
+	/**
+	 * @return whether the given link or facility (either may be <code>null</code>) is one of the targets
+	 */
+	public boolean isTarget( Id<Link> linkId, Id<ActivityFacility> facilityId ) {
+		return (linkId != null && targetLinks.get( linkId.index() ))
+				       || (facilityId != null && targetFacilities.get( facilityId.index() ));
+	}
+
+	/**
+	 * @return the times at which the person has arrived with the mode at one of the targets in the current iteration, in
+	 * ascending order.  The array must not be modified.
+	 */
+	double[] getArrivalTimes( Id<Person> personId ) {
+		final int personIndex = personId.index();
+		if ( personIndex >= numberOfArrivals.length || numberOfArrivals[personIndex] == 0 ) {
+			return NO_ARRIVALS;
+		}
+		return arrivalTimes[personIndex].length == numberOfArrivals[personIndex] ? arrivalTimes[personIndex]
+				       : Arrays.copyOf( arrivalTimes[personIndex], numberOfArrivals[personIndex] );
+	}
+
+	/**
+	 * @return whether the person has arrived with the mode at one of the targets in the current iteration
+	 */
+	public boolean hasArrived( Id<Person> personId ) {
+		return getArrivalTimes( personId ).length > 0;
+	}
+
+	private void recordArrival( int personIndex, double time ) {
+		double[] times = arrivalTimes[personIndex];
+		if ( times == null ) {
+			times = arrivalTimes[personIndex] = new double[1];
+		} else if ( numberOfArrivals[personIndex] == times.length ) {
+			times = arrivalTimes[personIndex] = Arrays.copyOf( times, 2 * times.length );
+		}
+		times[numberOfArrivals[personIndex]++] = time;
+	}
+
+	private void ensureCapacity( int personIndex ) {
+		// (persons created after the last reset; rare)
+		if ( personIndex >= numberOfArrivals.length ) {
+			final int oldLength = numberOfArrivals.length;
+			final int newLength = Math.max( personIndex + 1, 2 * oldLength );
+			lastArrivalWithMode = Arrays.copyOf( lastArrivalWithMode, newLength );
+			Arrays.fill( lastArrivalWithMode, oldLength, newLength, Double.NaN );
+			arrivalTimes = Arrays.copyOf( arrivalTimes, newLength );
+			numberOfArrivals = Arrays.copyOf( numberOfArrivals, newLength );
+		}
+	}
+
+}
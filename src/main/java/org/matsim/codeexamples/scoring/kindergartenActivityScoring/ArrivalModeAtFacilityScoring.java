@@ -0,0 +1,107 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.scoring.kindergartenActivityScoring;
+
+import java.util.Arrays;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.StageActivityTypeIdentifier;
+import org.matsim.core.scoring.SumScoringFunction.ActivityScoring;
+
+/**
+ * Penalizes a person for every activity of a given type at one of the targets of an {@link ArrivalModeAtFacilityRecorder} that
+ * was preceded by an arrival there with the recorder's mode.  As in the original kindergarten scoring, an arrival is used up by
+ * the penalty: several arrivals before one activity give one penalty, and an arrival after the activity has ended does not count
+ * for it.  First and last activities, and stage activities such as "pt interaction", are not scored.
+ * <p></p>
+ * The matching activities are only collected while scoring; the penalty is computed in {@link #finish()}, when all events have
+ * been recorded.  This only reads from the recorder, so scoring functions of different persons may be evaluated in parallel,
+ * and it does not depend on whether the recorder has seen the arrival before the activity is handed to the scoring.
+ */
+public class ArrivalModeAtFacilityScoring implements ActivityScoring {
+
+	private final Id<Person> personId;
+	private final ArrivalModeAtFacilityRecorder recorder;
+	private final String activityTypePrefix;
+	private final double penalty;
+
+	// end times of the matching activities, in the order in which they were handled:
+	private double[] activityEndTimes = new double[0];
+	private int numberOfActivities = 0;
+	private double score = 0.;
+
+	/**
+	 * @param penalty is subtracted from the score, i.e. should be positive
+	 */
+	public ArrivalModeAtFacilityScoring( Id<Person> personId, ArrivalModeAtFacilityRecorder recorder, String activityTypePrefix,
+						     double penalty ) {
+		this.personId = personId;
+		this.recorder = recorder;
+		this.activityTypePrefix = activityTypePrefix;
+		this.penalty = penalty;
+	}
+
+	@Override
+	public void handleFirstActivity( Activity act ) {
+	}
+
+	@Override
+	public void handleActivity( Activity act ) {
+		if ( StageActivityTypeIdentifier.isStageActivity( act.getType() ) || !act.getType().startsWith( activityTypePrefix ) ) {
+			return;
+		}
+		if ( recorder.isTarget( act.getLinkId(), act.getFacilityId() ) ) {
+			if ( numberOfActivities == activityEndTimes.length ) {
+				activityEndTimes = Arrays.copyOf( activityEndTimes, Math.max( 2, 2 * numberOfActivities ) );
+			}
+			activityEndTimes[numberOfActivities++] = act.getEndTime().orElse( Double.POSITIVE_INFINITY );
+		}
+	}
+
+	@Override
+	public void handleLastActivity( Activity act ) {
+	}
+
+	@Override
+	public void finish() {
+		if ( numberOfActivities == 0 ) {
+			return;
+		}
+		final double[] arrivalTimes = recorder.getArrivalTimes( personId );
+		int nextArrival = 0;
+		for ( int ii = 0; ii < numberOfActivities; ii++ ) {
+			if ( nextArrival < arrivalTimes.length && arrivalTimes[nextArrival] <= activityEndTimes[ii] ) {
+				score -= penalty;
+				// the penalty uses up all arrivals up to the end of this activity:
+				while ( nextArrival < arrivalTimes.length && arrivalTimes[nextArrival] <= activityEndTimes[ii] ) {
+					nextArrival++;
+				}
+			}
+		}
+	}
+
+	@Override
+	public double getScore() {
+		return score;
+	}
+
+}
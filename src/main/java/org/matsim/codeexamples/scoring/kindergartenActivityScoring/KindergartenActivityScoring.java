@@ -19,78 +19,18 @@
 package org.matsim.codeexamples.scoring.kindergartenActivityScoring;
 
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.core.scoring.SumScoringFunction.ActivityScoring;
 
-public class KindergartenActivityScoring implements ActivityScoring {
+/**
+ * Penalizes bringing the kids to the kindergarten by car, by 3000 per kindergarten activity after a car arrival at the
+ * kindergarten link.  Originally, this removed the person from a set shared with the arrival handler, which breaks as soon as
+ * scoring runs in parallel; now it is a configuration of the generic {@link ArrivalModeAtFacilityScoring}, which has the same
+ * semantics but only reads from the recorder.
+ */
+public class KindergartenActivityScoring extends ArrivalModeAtFacilityScoring {
 
-	private double score;
-	
-	KindergartenArrivalHandler handler;
-	Id<Person> personId;
-	public KindergartenActivityScoring(Id<Person> personId, KindergartenArrivalHandler handler) {
-		this.handler = handler;
-		this.personId = personId;
+	public KindergartenActivityScoring(Id<Person> personId, ArrivalModeAtFacilityRecorder carArrivalsAtKindergarten) {
+		super(personId, carArrivalsAtKindergarten, "kindergarten", 3000.);
 	}
-	
-	
-	@Override
-	public void handleActivity(Activity act) {
-		if (act.getType().equals("pt interaction")) return;
-		if (act.getType().startsWith("kindergarten")){
-			if (act.getLinkId().equals(handler.kindergartenLink)){
-				if (handler.arrivedOnLinkByCar.contains(personId)){
-					this.score -= 3000.;
-					handler.arrivedOnLinkByCar.remove(personId);
-					System.out.println(personId + " arrived by car");
-
-				}
-			}
-		}
-	}
-
-
-
-	/* (non-Javadoc)
-	 * @see org.matsim.core.scoring.SumScoringFunction.BasicScoring#getScore()
-	 */
-	@Override
-	public double getScore() {
-		// TODO Auto-generated method stub
-		return this.score;
-	}
-
-	
-	/* (non-Javadoc)
-	 * @see org.matsim.core.scoring.SumScoringFunction.BasicScoring#finish()
-	 */
-	@Override
-	public void finish() {
-		// TODO Auto-generated method stub
-		
-	}
-
-	/* (non-Javadoc)
-	 * @see org.matsim.core.scoring.SumScoringFunction.ActivityScoring#handleFirstActivity(org.matsim.api.core.v01.population.Activity)
-	 */
-	@Override
-	public void handleFirstActivity(Activity act) {
-		// TODO Auto-generated method stub
-		
-	}
-
-
-	/* (non-Javadoc)
-	 * @see org.matsim.core.scoring.SumScoringFunction.ActivityScoring#handleLastActivity(org.matsim.api.core.v01.population.Activity)
-	 */
-	@Override
-	public void handleLastActivity(Activity act) {
-		// TODO Auto-generated method stub
-		
-	}
-	
-	
-
 
 }
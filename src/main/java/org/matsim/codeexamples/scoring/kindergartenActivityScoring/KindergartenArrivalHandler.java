@@ -18,39 +18,26 @@
  * *********************************************************************** */
 package org.matsim.codeexamples.scoring.kindergartenActivityScoring;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.events.ActivityStartEvent;
-import org.matsim.api.core.v01.events.PersonArrivalEvent;
 import org.matsim.api.core.v01.events.handler.ActivityStartEventHandler;
-import org.matsim.api.core.v01.events.handler.PersonArrivalEventHandler;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.api.core.v01.population.Person;
 
-public class KindergartenArrivalHandler  implements PersonArrivalEventHandler, ActivityStartEventHandler {
+/**
+ * Counts the kids in the kindergarten.  Who arrived there by car is recorded by an {@link ArrivalModeAtFacilityRecorder}.
+ */
+public class KindergartenArrivalHandler  implements ActivityStartEventHandler {
+
+	static final Id<Link> KINDERGARTEN_LINK = Id.createLinkId(8142);
 
-	Id<Link> kindergartenLink = Id.createLinkId(8142);
-	Set<Id<Person>> arrivedOnLinkByCar = new HashSet<>();
+	Id<Link> kindergartenLink = KINDERGARTEN_LINK;
 	int kinder = 0;
 
 	@Override
 	public void reset(int iteration) {
-		arrivedOnLinkByCar = new HashSet<>();
 		kinder = 0;
 	}
 
-	@Override
-	public void handleEvent(PersonArrivalEvent event) {
-		if (event.getLinkId().equals(kindergartenLink)){
-			if (event.getLegMode().equals(TransportMode.car)){
-				this.arrivedOnLinkByCar.add(event.getPersonId());
-			}
-		}
-	}
-
 	@Override
 	public void handleEvent(ActivityStartEvent event) {
 		
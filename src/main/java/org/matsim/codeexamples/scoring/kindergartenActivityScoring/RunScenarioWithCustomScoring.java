@@ -21,6 +21,7 @@ package org.matsim.codeexamples.scoring.kindergartenActivityScoring;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
@@ -37,6 +38,9 @@ import org.matsim.core.scoring.functions.CharyparNagelAgentStuckScoring;
 import org.matsim.core.scoring.functions.CharyparNagelLegScoring;
 import org.matsim.core.scoring.functions.CharyparNagelMoneyScoring;
 import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.codeexamples.scoring.parallelScoring.ParallelScoringFunctionFactory;
+
+import java.util.Collections;
 
 
 public class RunScenarioWithCustomScoring {
@@ -53,12 +57,15 @@ public class RunScenarioWithCustomScoring {
 		// This loads the scenario
 		final Scenario scenario = ScenarioUtils.loadScenario(config) ;
 		final KindergartenArrivalHandler kindergartenArrivalHandler = new KindergartenArrivalHandler();
+		final ArrivalModeAtFacilityRecorder carArrivalsAtKindergarten = new ArrivalModeAtFacilityRecorder(TransportMode.car,
+				Collections.singleton(KindergartenArrivalHandler.KINDERGARTEN_LINK), Collections.emptySet());
 		
 		Controler controler = new Controler( scenario ) ;
 		controler.addOverridingModule(new AbstractModule() {
 			@Override
 			public void install() {
-				addEventHandlerBinding().toInstance(kindergartenArrivalHandler);				
+				addEventHandlerBinding().toInstance(kindergartenArrivalHandler);
+				addEventHandlerBinding().toInstance(carArrivalsAtKindergarten);				
 			}
 		});;
 		
@@ -70,7 +77,8 @@ public class RunScenarioWithCustomScoring {
 			}
 		});
 		
-		controler.setScoringFunctionFactory(new ScoringFunctionFactory() {
+		// (the scoring functions of different persons share no mutable state, so they can be evaluated in parallel)
+		final ParallelScoringFunctionFactory scoringFunctionFactory = new ParallelScoringFunctionFactory(new ScoringFunctionFactory() {
 
 			@Override
 			public ScoringFunction createNewScoringFunction(Person person) {
@@ -80,7 +88,7 @@ public class RunScenarioWithCustomScoring {
 				// with the default MATSim scoring based on utility parameters in the config file.
 				final ScoringParameters params =
 						new ScoringParameters.Builder(scenario, person).build();
-				sumScoringFunction.addScoringFunction(new KindergartenActivityScoring(person.getId(), kindergartenArrivalHandler));
+				sumScoringFunction.addScoringFunction(new KindergartenActivityScoring(person.getId(), carArrivalsAtKindergarten));
 				sumScoringFunction.addScoringFunction(new CharyparNagelLegScoring(params, scenario.getNetwork()));
 				sumScoringFunction.addScoringFunction(new CharyparNagelMoneyScoring(params));
 				sumScoringFunction.addScoringFunction(new CharyparNagelAgentStuckScoring(params));
@@ -88,7 +96,9 @@ public class RunScenarioWithCustomScoring {
 							
 			}
 
-		});
+		}, config.global().getNumberOfThreads());
+		controler.setScoringFunctionFactory(scoringFunctionFactory);
+		controler.addControlerListener(scoringFunctionFactory);
 		
 		controler.run();
 
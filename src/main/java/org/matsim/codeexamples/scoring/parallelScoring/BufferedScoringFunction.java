@@ -0,0 +1,93 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+
+package org.matsim.codeexamples.scoring.parallelScoring;
+
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.scoring.ScoringFunction;
+
+/**
+ * The scoring function handed out by the {@link ParallelScoringFunctionFactory}: records its input during the mobsim, and is
+ * evaluated together with all others once all of them are finished, i.e. after the mobsim.  Recording is an array append, so the
+ * events thread is not slowed down by the scoring itself.
+ * <p></p>
+ * Until it is evaluated, {@link #getScore()} returns the last evaluated score, i.e. 0.  This means that the partial scores which
+ * the scoring infrastructure reads during the mobsim are not available with deferred scoring.
+ */
+final class BufferedScoringFunction extends ScoringFunctionCallLog {
+	private final ParallelScoringFunctionFactory factory;
+	private final Person person;
+
+	private volatile boolean finished = false;
+	// set once evaluated; kept for explainScore(...):
+	private volatile ScoringFunction evaluated = null;
+	private double score = 0.;
+
+	BufferedScoringFunction( ParallelScoringFunctionFactory factory, Person person ) {
+		this.factory = factory;
+		this.person = person;
+	}
+
+	@Override public void finish() {
+		if ( finished ) {
+			return;
+		}
+		finished = true;
+		// (the last one to be finished triggers the parallel evaluation of all of them)
+		factory.finished( this );
+	}
+
+	@Override public double getScore() {
+		if ( finished && evaluated == null ) {
+			// (only if not all scoring functions have been finished; then the finished ones are evaluated now)
+			factory.evaluatePending();
+		}
+		return score;
+	}
+
+	@Override public void explainScore( StringBuilder out ) {
+		final ScoringFunction delegate = evaluated;
+		if ( delegate != null ) {
+			delegate.explainScore( out );
+		}
+	}
+
+	boolean isFinished() {
+		return finished;
+	}
+
+	Person getPerson() {
+		return person;
+	}
+
+	/**
+	 * Replays the log into the actual scoring function, and keeps its score.  Runs on a worker thread.
+	 */
+	void evaluate( ScoringFunction delegate ) {
+		replay( delegate );
+		delegate.finish();
+		score = delegate.getScore();
+
+		// the log is not needed any more:
+		clear();
+		evaluated = delegate;
+	}
+
+}
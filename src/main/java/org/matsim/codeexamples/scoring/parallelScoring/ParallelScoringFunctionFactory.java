@@ -0,0 +1,150 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+
+package org.matsim.codeexamples.scoring.parallelScoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.scoring.ScoringFunction;
+import org.matsim.core.scoring.ScoringFunctionFactory;
+import org.matsim.core.scoring.SumScoringFunction;
+
+/**
+ * Moves the scoring off the events thread, and spreads it over several threads at the end of the iteration.
+ * <p></p>
+ * The scoring functions handed out by this factory only record what they are given during the mobsim (activities, legs, trips,
+ * events, money, ...).  When the last of them is {@link ScoringFunction#finish() finished}, which the scoring infrastructure does
+ * for all persons after the mobsim, the scoring functions of all persons are created by the delegate factory (typically a
+ * {@link SumScoringFunction} assembly), one after the other on the calling thread, and then fed with the recorded log, in chunks
+ * of persons on a fork-join pool.  The delegate factory is thus never called concurrently, and may keep caches in plain maps (as
+ * the default <code>SubpopulationScoringParameters</code> does).  The final scores
+ * are thus the same as with the delegate alone; partial scores during the mobsim are not available (see
+ * {@link BufferedScoringFunction}).
+ * <p></p>
+ * Memory: the log holds references to the recorded activities, legs, trips and events of the person until the end of the
+ * iteration, plus 17 bytes per recorded call.  The activities and legs are kept by the experienced plans anyway, but the events
+ * (a handful per trip) would otherwise be garbage right away.  The delegate scoring functions are kept after evaluation, as with
+ * the delegate alone, so that the scores can be explained.  The factory has to be registered as controler listener: at the end of
+ * every iteration, it drops the scoring functions that have never been finished, with a warning, so that they do not pile up.
+ * <p></p>
+ * This requires that the scoring functions of different persons, once created, do not share mutable state; information collected
+ * from the events should be read-only for them, as with the arrival recorder of the kindergarten scoring example.
+ */
+public final class ParallelScoringFunctionFactory implements ScoringFunctionFactory, IterationEndsListener {
+	private static final Logger log = LogManager.getLogger( ParallelScoringFunctionFactory.class );
+
+	private static final int CHUNK_SIZE = 256;
+
+	private final ScoringFunctionFactory delegate;
+	private final int numberOfThreads;
+
+	private final List<BufferedScoringFunction> pending = new ArrayList<>();
+	private int numberOfFinished = 0;
+	private ForkJoinPool pool;
+
+	public ParallelScoringFunctionFactory( ScoringFunctionFactory delegate, int numberOfThreads ) {
+		this.delegate = delegate;
+		this.numberOfThreads = Math.max( 1, numberOfThreads );
+	}
+
+	@Override
+	public ScoringFunction createNewScoringFunction( Person person ) {
+		BufferedScoringFunction scoringFunction = new BufferedScoringFunction( this, person );
+		synchronized ( this ) {
+			pending.add( scoringFunction );
+		}
+		return scoringFunction;
+	}
+
+	synchronized void finished( BufferedScoringFunction scoringFunction ) {
+		numberOfFinished++;
+		if ( numberOfFinished == pending.size() ) {
+			evaluatePending();
+		}
+	}
+
+	/**
+	 * Evaluates all scoring functions that are finished but have not been evaluated yet.  Normally called when the last pending
+	 * scoring function is finished; otherwise by the first {@link ScoringFunction#getScore()} of a finished scoring function.
+	 */
+	synchronized void evaluatePending() {
+		final List<BufferedScoringFunction> finished = new ArrayList<>();
+		final List<BufferedScoringFunction> stillRecording = new ArrayList<>();
+		for ( BufferedScoringFunction function : pending ) {
+			(function.isFinished() ? finished : stillRecording).add( function );
+		}
+		if ( finished.isEmpty() ) {
+			return;
+		}
+		pending.clear();
+		pending.addAll( stillRecording );
+		numberOfFinished = 0;
+		final BufferedScoringFunction[] functions = finished.toArray( new BufferedScoringFunction[0] );
+
+		final long start = System.nanoTime();
+
+		// (the delegate factory need not be thread-safe, so only the replay is parallel)
+		final ScoringFunction[] delegates = new ScoringFunction[functions.length];
+		for ( int ii = 0; ii < functions.length; ii++ ) {
+			delegates[ii] = delegate.createNewScoringFunction( functions[ii].getPerson() );
+		}
+
+		final int numberOfChunks = (functions.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		// parallel streams started from within a fork-join pool run in that pool:
+		getPool().submit( () -> IntStream.range( 0, numberOfChunks ).parallel().forEach( chunk -> {
+			final int end = Math.min( functions.length, (chunk + 1) * CHUNK_SIZE );
+			for ( int ii = chunk * CHUNK_SIZE; ii < end; ii++ ) {
+				functions[ii].evaluate( delegates[ii] );
+			}
+		} ) ).join();
+
+		log.info( "scored " + functions.length + " persons in " + (System.nanoTime() - start) / 1000000 + " ms using "
+					  + numberOfThreads + " threads." );
+	}
+
+	@Override
+	public synchronized void notifyIterationEnds( IterationEndsEvent event ) {
+		evaluatePending();
+		if ( !pending.isEmpty() ) {
+			log.warn( pending.size() + " scoring functions were not finished in iteration " + event.getIteration()
+						  + "; they are dropped without being scored." );
+			pending.clear();
+			numberOfFinished = 0;
+		}
+	}
+
+	private ForkJoinPool getPool() {
+		if ( pool == null ) {
+			// (the workers of a fork-join pool are daemon threads, so the pool does not need to be shut down)
+			pool = new ForkJoinPool( numberOfThreads );
+		}
+		return pool;
+	}
+
+}
@@ -0,0 +1,71 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+
+package org.matsim.codeexamples.scoring.parallelScoring;
+
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.GlobalConfigGroup;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.scoring.ScoringFunctionFactory;
+import org.matsim.core.scoring.functions.CharyparNagelScoringFunctionFactory;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.examples.ExamplesUtils;
+
+/**
+ * Runs the default scoring through the {@link ParallelScoringFunctionFactory}, i.e. the events are only recorded during the mobsim,
+ * and the scoring is done at the end of the iteration, with <code>global.numberOfThreads</code> threads.
+ */
+public final class RunParallelScoringExample {
+
+	public static void main( String... args ) {
+		final Config config;
+		if ( args==null || args.length==0 || args[0]==null ){
+			config = ConfigUtils.loadConfig( IOUtils.extendUrl( ExamplesUtils.getTestScenarioURL( "equil" ), "config.xml" ) );
+			config.controler().setOutputDirectory( "output/parallelScoring/" );
+			config.controler().setOverwriteFileSetting( OutputDirectoryHierarchy.OverwriteFileSetting.deleteDirectoryIfExists );
+			config.controler().setLastIteration( 2 );
+		} else {
+			config = ConfigUtils.loadConfig( args );
+		}
+
+		final Controler controler = new Controler( config );
+		controler.addOverridingModule( new AbstractModule(){
+			@Override public void install(){
+				bind( CharyparNagelScoringFunctionFactory.class );
+				bind( ScoringFunctionFactory.class ).to( ParallelScoringFunctionFactory.class );
+				// (drops scoring functions that were never finished at the end of the iteration)
+				addControlerListenerBinding().to( ParallelScoringFunctionFactory.class );
+			}
+			@Provides @Singleton ParallelScoringFunctionFactory provideScoringFunctionFactory( CharyparNagelScoringFunctionFactory delegate,
+																		 GlobalConfigGroup globalConfig ){
+				// any scoring function factory can be wrapped, as long as the scoring functions of different persons do not share
+				// mutable state:
+				return new ParallelScoringFunctionFactory( delegate, globalConfig.getNumberOfThreads() );
+			}
+		} );
+		controler.run();
+	}
+
+}
@@ -0,0 +1,159 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+
+package org.matsim.codeexamples.scoring.parallelScoring;
+
+import java.util.Arrays;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scoring.ScoringFunction;
+
+/**
+ * Records everything that the scoring infrastructure hands to the scoring function of one person into a log (three parallel
+ * arrays), so that it can be played back into other scoring functions later, see {@link #replay(ScoringFunction)}.  Recording is an
+ * array append.  Note that the log keeps the recorded {@link Activity}, {@link Leg}, trip and {@link Event} objects alive until
+ * it is {@link #clear() cleared}: only the kind of call and the numbers are held in primitive arrays, the arguments of the other
+ * calls are held as references.
+ * <p></p>
+ * Used by the {@link ParallelScoringFunctionFactory}, and for benchmarking scoring functions against recorded input.
+ */
+public class ScoringFunctionCallLog implements ScoringFunction {
+	private static final byte ACTIVITY = 0;
+	private static final byte LEG = 1;
+	private static final byte TRIP = 2;
+	private static final byte EVENT = 3;
+	private static final byte STUCK = 4;
+	private static final byte MONEY = 5;
+	private static final byte SCORE = 6;
+
+	// one entry per call, with either an object or a number as argument
+	private byte[] kinds = new byte[16];
+	private Object[] objects = new Object[16];
+	private double[] values = new double[16];
+	private int size = 0;
+
+	private void append( byte kind, Object object, double value ) {
+		if ( kinds == null ) {
+			throw new IllegalStateException( "the log has been cleared; nothing can be recorded after that" );
+		}
+		if ( size == kinds.length ) {
+			int newLength = 2 * size;
+			kinds = Arrays.copyOf( kinds, newLength );
+			objects = Arrays.copyOf( objects, newLength );
+			values = Arrays.copyOf( values, newLength );
+		}
+		kinds[size] = kind;
+		objects[size] = object;
+		values[size] = value;
+		size++;
+	}
+
+	@Override public void handleActivity( Activity activity ) {
+		append( ACTIVITY, activity, 0. );
+	}
+
+	@Override public void handleLeg( Leg leg ) {
+		append( LEG, leg, 0. );
+	}
+
+	@Override public void handleTrip( TripStructureUtils.Trip trip ) {
+		append( TRIP, trip, 0. );
+	}
+
+	@Override public void handleEvent( Event event ) {
+		append( EVENT, event, 0. );
+	}
+
+	@Override public void agentStuck( double time ) {
+		append( STUCK, null, time );
+	}
+
+	@Override public void addMoney( double amount ) {
+		append( MONEY, null, amount );
+	}
+
+	@Override public void addScore( double amount ) {
+		append( SCORE, null, amount );
+	}
+
+	@Override public void finish() {
+	}
+
+	/**
+	 * A log has no score of its own, and returns zero; see {@link #replay(ScoringFunction)}.
+	 */
+	@Override public double getScore() {
+		return 0.;
+	}
+
+	/**
+	 * @return the number of recorded calls
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Plays the log back into the given scoring function, in the original order.  Does not call {@link ScoringFunction#finish()}.
+	 */
+	public void replay( ScoringFunction delegate ) {
+		for ( int ii = 0; ii < size; ii++ ) {
+			switch ( kinds[ii] ) {
+				case ACTIVITY:
+					delegate.handleActivity( (Activity) objects[ii] );
+					break;
+				case LEG:
+					delegate.handleLeg( (Leg) objects[ii] );
+					break;
+				case TRIP:
+					delegate.handleTrip( (TripStructureUtils.Trip) objects[ii] );
+					break;
+				case EVENT:
+					delegate.handleEvent( (Event) objects[ii] );
+					break;
+				case STUCK:
+					delegate.agentStuck( values[ii] );
+					break;
+				case MONEY:
+					delegate.addMoney( values[ii] );
+					break;
+				case SCORE:
+					delegate.addScore( values[ii] );
+					break;
+				default:
+					throw new IllegalStateException( "unknown log entry " + kinds[ii] );
+			}
+		}
+	}
+
+	/**
+	 * Releases the memory of the log.
+	 */
+	protected void clear() {
+		kinds = null;
+		objects = null;
+		values = null;
+		size = 0;
+	}
+
+}
@@ -0,0 +1,58 @@
+package org.matsim.codeexamples.scoring.pseudoRandomErrors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.CounterBasedGumbelEpsilonProvider;
+import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.EpsilonProvider;
+import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.GumbelEpsilonProvider;
+
+/**
+ * Compares the cost of a single epsilon draw of the SHA-512 based {@link GumbelEpsilonProvider} and of the
+ * {@link CounterBasedGumbelEpsilonProvider}. This is a plain timing loop with warm-up rounds (the code examples do not
+ * depend on JMH), so the numbers are indicative only.
+ */
+public class RunEpsilonProviderBenchmark {
+	private static final String[] MODES = { "car", "pt", "walk", "bike" };
+
+	static public void main(String[] args) {
+		int numberOfPersons = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int tripsPerPerson = 4;
+
+		List<Id<Person>> personIds = new ArrayList<>(numberOfPersons);
+		for (int i = 0; i < numberOfPersons; i++) {
+			personIds.add(Id.createPersonId(i));
+		}
+
+		benchmark("sha512", new GumbelEpsilonProvider(1234, 1.0), personIds, tripsPerPerson);
+		benchmark("counter-based", new CounterBasedGumbelEpsilonProvider(1234, 1.0), personIds, tripsPerPerson);
+	}
+
+	private static void benchmark(String name, EpsilonProvider provider, List<Id<Person>> personIds,
+			int tripsPerPerson) {
+		long draws = (long) personIds.size() * tripsPerPerson * MODES.length;
+
+		for (int round = 0; round < 10; round++) {
+			long start = System.nanoTime();
+			double checksum = 0.0;
+
+			for (Id<Person> personId : personIds) {
+				for (int tripIndex = 0; tripIndex < tripsPerPerson; tripIndex++) {
+					for (String mode : MODES) {
+						checksum += provider.getEpsilon(personId, tripIndex, mode);
+					}
+				}
+			}
+
+			double nanosPerDraw = (double) (System.nanoTime() - start) / draws;
+
+			// the first rounds are for warming up the JIT
+			if (round >= 5) {
+				System.out.println(String.format("%s: %.1f ns/draw (mean epsilon %.4f)", name, nanosPerDraw,
+						checksum / draws));
+			}
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package org.matsim.codeexamples.scoring.pseudoRandomErrors;
 
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Random;
@@ -18,9 +19,11 @@ import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.api.core.v01.population.PopulationFactory;
 import org.matsim.codeexamples.scoring.pseudoRandomErrors.replanning.RandomModeModule;
+import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.CounterBasedGumbelEpsilonProvider;
 import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.EpsilonModeScoring;
 import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.EpsilonProvider;
 import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.GumbelEpsilonProvider;
+import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.MappedEpsilonProvider;
 import org.matsim.core.config.CommandLine;
 import org.matsim.core.config.CommandLine.ConfigurationException;
 import org.matsim.core.config.Config;
@@ -51,6 +54,7 @@ public class RunPseudoRandomExperiment {
 				.allowOptions("selection-strategy", "innovation-rate", "innovation-strategy") //
 				.allowOptions("car-score", "pt-score") //
 				.allowOptions("use-epsilons", "population-size") //
+				.allowOptions("epsilon-generator", "epsilon-table") //
 				.build();
 
 		// CONFIG PART
@@ -180,11 +184,38 @@ public class RunPseudoRandomExperiment {
 		controller.addOverridingModule(new RandomModeModule());
 
 		if (cmd.getOption("use-epsilons").map(Boolean::parseBoolean).orElse(false)) {
+			// "sha512" (the default) reproduces the numbers of the paper; "counter-based" has the same distribution, but is much
+			// faster and thread-safe, so that one instance is shared by all scoring functions.  It gives different draws, and thus
+			// different results, so it has to be asked for.
+			String epsilonGenerator = cmd.getOption("epsilon-generator").orElse("sha512");
+
+			// optionally, the epsilons are computed once into a memory-mapped file, which is reused by later iterations
+			// and runs (the table is filled in parallel, so it needs the thread-safe counter-based generator)
+			String epsilonTable = cmd.getOption("epsilon-table").orElse(null);
+
+			if (epsilonTable != null && !epsilonGenerator.equals("counter-based")) {
+				throw new IllegalStateException("An epsilon table can only be used with the counter-based generator (--epsilon-generator counter-based)");
+			}
+
 			controller.addOverridingModule(new AbstractModule() {
 				@Override
 				public void install() {
 					bind(CharyparNagelScoringFunctionFactory.class);
-					bind(EpsilonProvider.class).to(GumbelEpsilonProvider.class);
+
+					switch (epsilonGenerator) {
+					case "sha512":
+						bind(EpsilonProvider.class).to(GumbelEpsilonProvider.class);
+						break;
+					case "counter-based":
+						if (epsilonTable != null) {
+							bind(EpsilonProvider.class).to(MappedEpsilonProvider.class);
+						} else {
+							bind(EpsilonProvider.class).to(CounterBasedGumbelEpsilonProvider.class);
+						}
+						break;
+					default:
+						throw new IllegalStateException("Unknown epsilon generator: " + epsilonGenerator);
+					}
 				}
 
 				@Provides
@@ -207,6 +238,20 @@ public class RunPseudoRandomExperiment {
 				public GumbelEpsilonProvider provideGumbelEpsilonProvider(GlobalConfigGroup config) {
 					return new GumbelEpsilonProvider(config.getRandomSeed(), 1.0);
 				}
+
+				@Provides
+				@Singleton
+				public CounterBasedGumbelEpsilonProvider provideCounterBasedGumbelEpsilonProvider(GlobalConfigGroup config) {
+					return new CounterBasedGumbelEpsilonProvider(config.getRandomSeed(), 1.0);
+				}
+
+				@Provides
+				@Singleton
+				public MappedEpsilonProvider provideMappedEpsilonProvider(Population population,
+						CounterBasedGumbelEpsilonProvider delegate, GlobalConfigGroup config) {
+					return new MappedEpsilonProvider(Paths.get(epsilonTable), population, Arrays.asList("car", "pt"),
+							delegate, config.getRandomSeed());
+				}
 			});
 
 		}
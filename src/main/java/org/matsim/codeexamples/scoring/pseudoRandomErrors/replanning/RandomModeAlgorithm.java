@@ -1,25 +1,39 @@
 package org.matsim.codeexamples.scoring.pseudoRandomErrors.replanning;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Random;
-
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.PlanElement;
-import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.codeexamples.utils.CounterBasedRandom;
 import org.matsim.core.population.algorithms.PlanAlgorithm;
 
+/**
+ * Assigns a random mode out of the candidate modes to every leg.
+ * 
+ * The random draw for a leg is a function of (global seed, iteration, person index, leg index) only, see
+ * {@link CounterBasedRandom}. Thus, the result is the same regardless of the number of threads and of which thread handles
+ * which plan, and nothing is allocated per plan.
+ */
 public class RandomModeAlgorithm implements PlanAlgorithm {
+	private final String[] modes;
+	private final long randomSeed;
+	private final int iteration;
+
+	public RandomModeAlgorithm(String[] modes, long randomSeed, int iteration) {
+		this.modes = modes;
+		this.randomSeed = randomSeed;
+		this.iteration = iteration;
+	}
+
 	@Override
 	public void run(Plan plan) {
-		Random random = MatsimRandom.getLocalInstance();
-		List<String> modes = Arrays.asList("car", "pt");
+		final int personIndex = plan.getPerson().getId().index();
+		int legIndex = 0;
 
 		for (PlanElement element : plan.getPlanElements()) {
 			if (element instanceof Leg) {
 				Leg leg = (Leg) element;
-				leg.setMode(modes.get(random.nextInt(modes.size())));
+				long hash = CounterBasedRandom.hash(randomSeed, iteration, personIndex, legIndex++);
+				leg.setMode(modes[CounterBasedRandom.nextInt(hash, modes.length)]);
 			}
 		}
 	}
@@ -3,6 +3,7 @@ package org.matsim.codeexamples.scoring.pseudoRandomErrors.replanning;
 import javax.inject.Inject;
 import javax.inject.Provider;
 
+import org.matsim.core.config.groups.ChangeModeConfigGroup;
 import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.core.replanning.PlanStrategy;
 import org.matsim.core.replanning.PlanStrategyImpl;
@@ -15,15 +16,18 @@ import org.matsim.facilities.ActivityFacilities;
 public class RandomModeProvider implements Provider<PlanStrategy> {
 	private Provider<TripRouter> tripRouterProvider;
 	private GlobalConfigGroup globalConfigGroup;
+	private ChangeModeConfigGroup changeModeConfigGroup;
 	private ActivityFacilities facilities;
 	private TimeInterpretation timeInterpretation;
 
 	@Inject
 	public RandomModeProvider(Provider<TripRouter> tripRouterProvider, GlobalConfigGroup globalConfigGroup,
-			ActivityFacilities facilities, TimeInterpretation timeInterpretation) {
+			ChangeModeConfigGroup changeModeConfigGroup, ActivityFacilities facilities,
+			TimeInterpretation timeInterpretation) {
 		this.tripRouterProvider = tripRouterProvider;
 		this.facilities = facilities;
 		this.globalConfigGroup = globalConfigGroup;
+		this.changeModeConfigGroup = changeModeConfigGroup;
 		this.timeInterpretation = timeInterpretation;
 	}
 
@@ -31,7 +35,7 @@ public class RandomModeProvider implements Provider<PlanStrategy> {
 	public PlanStrategy get() {
 		PlanStrategyImpl.Builder builder = new PlanStrategyImpl.Builder(new RandomPlanSelector<>());
 
-		builder.addStrategyModule(new RandomModeStrategyModule(globalConfigGroup));
+		builder.addStrategyModule(new RandomModeStrategyModule(globalConfigGroup, changeModeConfigGroup));
 		builder.addStrategyModule(new ReRoute(facilities, tripRouterProvider, globalConfigGroup, timeInterpretation));
 
 		return builder.build();
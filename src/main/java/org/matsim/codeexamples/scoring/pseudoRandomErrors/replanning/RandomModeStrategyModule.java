@@ -1,16 +1,32 @@
 package org.matsim.codeexamples.scoring.pseudoRandomErrors.replanning;
 
+import org.matsim.core.config.groups.ChangeModeConfigGroup;
 import org.matsim.core.config.groups.GlobalConfigGroup;
 import org.matsim.core.population.algorithms.PlanAlgorithm;
 import org.matsim.core.replanning.modules.AbstractMultithreadedModule;
 
 public class RandomModeStrategyModule extends AbstractMultithreadedModule {
-	public RandomModeStrategyModule(GlobalConfigGroup globalConfigGroup) {
+	private final String[] modes;
+	private final long randomSeed;
+
+	public RandomModeStrategyModule(GlobalConfigGroup globalConfigGroup, ChangeModeConfigGroup changeModeConfigGroup) {
 		super(globalConfigGroup);
+		this.randomSeed = globalConfigGroup.getRandomSeed();
+
+		// The candidate modes are resolved once. Interning them means that all legs share the same String instances.
+		String[] configuredModes = changeModeConfigGroup.getModes();
+		this.modes = new String[configuredModes.length];
+		for (int i = 0; i < configuredModes.length; i++) {
+			this.modes[i] = configuredModes[i].intern();
+		}
+
+		if (modes.length == 0) {
+			throw new IllegalStateException("No candidate modes given in " + ChangeModeConfigGroup.CONFIG_MODULE);
+		}
 	}
 
 	@Override
 	public PlanAlgorithm getPlanAlgoInstance() {
-		return new RandomModeAlgorithm();
+		return new RandomModeAlgorithm(modes, randomSeed, getReplanningContext().getIteration());
 	}
 }
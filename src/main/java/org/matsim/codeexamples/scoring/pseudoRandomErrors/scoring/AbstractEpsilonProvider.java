@@ -8,6 +8,11 @@ import java.security.NoSuchAlgorithmException;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 
+/**
+ * Derives the uniform draw from a SHA-512 digest of (seed, person, trip index, alternative). This is the approach of the
+ * paper, kept to reproduce its numbers. It is slow and the digest is not thread-safe, so every scoring function needs its
+ * own instance; otherwise use {@link CounterBasedEpsilonProvider}.
+ */
 public abstract class AbstractEpsilonProvider implements EpsilonProvider {
 	private final MessageDigest digest;
 	private final double maximumValue;
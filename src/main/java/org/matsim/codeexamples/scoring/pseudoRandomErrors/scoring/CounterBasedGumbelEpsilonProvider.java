@@ -0,0 +1,18 @@
+package org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+
+public class CounterBasedGumbelEpsilonProvider extends CounterBasedEpsilonProvider {
+	private final double scale;
+
+	public CounterBasedGumbelEpsilonProvider(long randomSeed, double scale) {
+		super(randomSeed);
+		this.scale = scale;
+	}
+
+	public double getEpsilon(Id<Person> personId, int tripIndex, Object alternative) {
+		double u = getUniformEpsilon(personId, tripIndex, alternative);
+		return -scale * Math.log(-Math.log(u));
+	}
+}
@@ -0,0 +1,228 @@
+package org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.codeexamples.utils.CounterBasedRandom;
+import org.matsim.core.router.TripStructureUtils;
+
+/**
+ * Serves the epsilons from a table that is computed once and kept in a memory-mapped file, so that later iterations, later
+ * runs and other JVMs of the same experiment read them without any computation. The table has one <code>float</code> per
+ * (person, trip index, alternative).
+ * <p>
+ * The rows are the persons sorted by id (and not {@link Id#index()}, which depends on the order in which a JVM creates the
+ * ids). Sharing the table between runs and JVMs is only sound if the delegate's draws do not depend on that order either;
+ * {@link CounterBasedEpsilonProvider} hashes the id string for this reason. The header of the file holds a fingerprint of
+ * the random seed, the person ids, the alternatives and the number of trips; in addition, all entries of a few dozen rows
+ * spread over the table are compared with the delegate (which catches e.g. a different scale). If anything does not match,
+ * the table is computed anew. The file is written under a temporary name and then moved into place, so that a JVM never
+ * maps a half-written table.
+ * <p>
+ * Draws that are not in the table (persons added later, more trips than at startup, unknown alternatives) are passed on
+ * to the delegate. The delegate has to be thread-safe, since the table is filled in parallel; see
+ * {@link CounterBasedEpsilonProvider}.
+ * <p>
+ * Epsilons are stored with <code>float</code> precision, which is plenty for error terms of this kind, but it means that the
+ * scores, and thus possibly the choices, differ slightly from a run with the same delegate and no table.  Do not mix runs with
+ * and without the table in one comparison.
+ */
+public class MappedEpsilonProvider implements EpsilonProvider {
+	private static final Logger logger = LogManager.getLogger(MappedEpsilonProvider.class);
+
+	private static final int MAGIC = 0x45505332; // "EPS2"
+	private static final int SPOT_CHECK_ROWS = 64;
+	private static final int HEADER_BYTES = 32;
+
+	private final EpsilonProvider delegate;
+
+	private final int[] rowByPersonIndex;
+	private final Map<Object, Integer> alternativeIndices = new HashMap<>();
+	private final int tripsPerPerson;
+	private final int numberOfAlternatives;
+
+	private final FloatBuffer table;
+
+	/**
+	 * @param randomSeed the seed of the delegate; only goes into the fingerprint of the file
+	 */
+	public MappedEpsilonProvider(Path path, Population population, List<?> alternatives, EpsilonProvider delegate,
+			long randomSeed) {
+		this.delegate = delegate;
+		this.numberOfAlternatives = alternatives.size();
+
+		for (Object alternative : alternatives) {
+			alternativeIndices.put(alternative, alternativeIndices.size());
+		}
+
+		@SuppressWarnings("unchecked")
+		Id<Person>[] personIds = population.getPersons().keySet().toArray(new Id[0]);
+		Arrays.sort(personIds);
+
+		this.rowByPersonIndex = new int[Id.getNumberOfIds(Person.class)];
+		Arrays.fill(rowByPersonIndex, -1);
+		for (int row = 0; row < personIds.length; row++) {
+			rowByPersonIndex[personIds[row].index()] = row;
+		}
+
+		int maximumNumberOfTrips = 0;
+		for (Person person : population.getPersons().values()) {
+			for (Plan plan : person.getPlans()) {
+				maximumNumberOfTrips = Math.max(maximumNumberOfTrips, TripStructureUtils.getTrips(plan).size());
+			}
+		}
+		this.tripsPerPerson = maximumNumberOfTrips;
+
+		long numberOfEntries = (long) personIds.length * tripsPerPerson * numberOfAlternatives;
+		if (HEADER_BYTES + 4 * numberOfEntries > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Epsilon table with " + numberOfEntries + " entries does not fit into one mapping");
+		}
+
+		long fingerprint = fingerprint(randomSeed, personIds, alternatives, tripsPerPerson);
+
+		try {
+			FloatBuffer existing = map(path, fingerprint, (int) numberOfEntries);
+
+			if (existing != null && matchesDelegate(existing, personIds, alternatives)) {
+				logger.info("Using precomputed epsilon table " + path);
+				this.table = existing;
+			} else {
+				long start = System.nanoTime();
+				write(path, fingerprint, personIds, alternatives);
+				this.table = map(path, fingerprint, (int) numberOfEntries);
+				logger.info(String.format("Wrote epsilon table %s with %d entries in %.1f s", path, numberOfEntries,
+						(System.nanoTime() - start) * 1e-9));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public double getEpsilon(Id<Person> personId, int tripIndex, Object alternative) {
+		int personIndex = personId.index();
+		Integer alternativeIndex = alternativeIndices.get(alternative);
+
+		if (personIndex < rowByPersonIndex.length && rowByPersonIndex[personIndex] >= 0 && tripIndex < tripsPerPerson
+				&& alternativeIndex != null) {
+			return table.get(entry(rowByPersonIndex[personIndex], tripIndex, alternativeIndex));
+		}
+
+		return delegate.getEpsilon(personId, tripIndex, alternative);
+	}
+
+	private int entry(int row, int tripIndex, int alternativeIndex) {
+		return (row * tripsPerPerson + tripIndex) * numberOfAlternatives + alternativeIndex;
+	}
+
+	/**
+	 * @return the mapped table, or <code>null</code> if there is no file or it belongs to a different setup
+	 */
+	private static FloatBuffer map(Path path, long fingerprint, int numberOfEntries) throws IOException {
+		if (!Files.exists(path) || Files.size(path) != HEADER_BYTES + 4L * numberOfEntries) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// the mapping remains valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buffer.getInt(0) != MAGIC || buffer.getLong(8) != fingerprint) {
+				return null;
+			}
+
+			buffer.position(HEADER_BYTES);
+			return buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		}
+	}
+
+	private boolean matchesDelegate(FloatBuffer existing, Id<Person>[] personIds, List<?> alternatives) {
+		if (personIds.length == 0 || tripsPerPerson == 0) {
+			return true;
+		}
+
+		// spot checks of complete rows, spread evenly from the first to the last; catches e.g. a different scale of the delegate
+		int checkedRows = Math.min(SPOT_CHECK_ROWS, personIds.length);
+		for (int ii = 0; ii < checkedRows; ii++) {
+			int row = checkedRows == 1 ? 0 : (int) ((long) ii * (personIds.length - 1) / (checkedRows - 1));
+			for (int tripIndex = 0; tripIndex < tripsPerPerson; tripIndex++) {
+				for (int a = 0; a < numberOfAlternatives; a++) {
+					float expected = (float) delegate.getEpsilon(personIds[row], tripIndex, alternatives.get(a));
+					if (Float.floatToIntBits(existing.get(entry(row, tripIndex, a))) != Float.floatToIntBits(expected)) {
+						return false;
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private void write(Path path, long fingerprint, Id<Person>[] personIds, List<?> alternatives) throws IOException {
+		Path temporaryPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+		int numberOfEntries = personIds.length * tripsPerPerson * numberOfAlternatives;
+
+		try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + 4L * numberOfEntries);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, tripsPerPerson);
+			buffer.putLong(8, fingerprint);
+			buffer.putInt(16, personIds.length);
+			buffer.putInt(20, numberOfAlternatives);
+
+			buffer.position(HEADER_BYTES);
+			FloatBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+			// every row is written by exactly one thread, with absolute puts only
+			IntStream.range(0, personIds.length).parallel().forEach(row -> {
+				for (int tripIndex = 0; tripIndex < tripsPerPerson; tripIndex++) {
+					for (int a = 0; a < numberOfAlternatives; a++) {
+						data.put(entry(row, tripIndex, a),
+								(float) delegate.getEpsilon(personIds[row], tripIndex, alternatives.get(a)));
+					}
+				}
+			});
+
+			buffer.force();
+		}
+
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static long fingerprint(long randomSeed, Id<Person>[] personIds, List<?> alternatives, int tripsPerPerson) {
+		long hash = CounterBasedRandom.mix(CounterBasedRandom.mix(randomSeed) ^ tripsPerPerson);
+
+		for (Id<Person> personId : personIds) {
+			hash = CounterBasedRandom.mix(hash ^ CounterBasedRandom.hash(personId.toString()));
+		}
+
+		for (Object alternative : alternatives) {
+			hash = CounterBasedRandom.mix(hash ^ alternative.hashCode());
+		}
+
+		return hash;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ *  *********************************************************************** *
+ *  * project: org.matsim.*
+ *  * IterationExperience.java
+ *  *                                                                         *
+ *  * *********************************************************************** *
+ *  *                                                                         *
+ *  * copyright       : (C) 2023 by the members listed in the COPYING, *
+ *  *                   LICENSE and WARRANTY file.                            *
+ *  * email           : info at matsim dot org                                *
+ *  *                                                                         *
+ *  * *********************************************************************** *
+ *  *                                                                         *
+ *  *   This program is free software; you can redistribute it and/or modify  *
+ *  *   it under the terms of the GNU General Public License as published by  *
+ *  *   the Free Software Foundation; either version 2 of the License, or     *
+ *  *   (at your option) any later version.                                   *
+ *  *   See also COPYING, LICENSE and WARRANTY file                           *
+ *  *                                                                         *
+ *  * ***********************************************************************
+ */
+
+package org.matsim.codeexamples.strategies.multiThreadedPlanStrategy;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+
+import java.util.Arrays;
+
+/**
+ * What happened to every person in one iteration, as compact primitive records: for every person, the time-ordered sequence
+ * of (time, event type, link) of the events that concern this person.
+ * <p></p>
+ * The records are stored in CSR layout: all records of all persons are in one set of arrays, ordered by person, and
+ * <code>offsets[p]</code> .. <code>offsets[p+1]</code> is the range of person <code>p</code>, where <code>p</code> is
+ * {@link Id#index()} of the person id.  So a plan algorithm only touches the records of its own person, instead of iterating
+ * over all events of the iteration.
+ * <p></p>
+ * Instances are immutable and can be read concurrently by any number of threads.  They are created by the
+ * {@link IterationExperienceCollector}.
+ */
+public final class IterationExperience {
+
+	/**
+	 * Receives the records of one person, in time order.
+	 */
+	public interface RecordVisitor {
+		/**
+		 * @param linkId <code>null</code> if the event does not refer to a link
+		 */
+		void visit( double time, String eventType, Id<Link> linkId );
+	}
+
+	static final IterationExperience EMPTY = new IterationExperience( new int[1], new double[0], new short[0], new int[0], new String[0], -1 );
+
+	private final int[] offsets;
+	private final double[] times;
+	private final short[] types;
+	private final int[] linkIndices;
+	private final String[] typeNames;
+	private final int iteration;
+
+	IterationExperience( int[] offsets, double[] times, short[] types, int[] linkIndices, String[] typeNames, int iteration ) {
+		this.offsets = offsets;
+		this.times = times;
+		this.types = types;
+		this.linkIndices = linkIndices;
+		this.typeNames = typeNames;
+		this.iteration = iteration;
+	}
+
+	/**
+	 * @return the iteration in which the events were collected, or -1 if there is no experience yet
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	public int getNumberOfRecords( Id<Person> personId ) {
+		final int pp = personId.index();
+		return pp + 1 < offsets.length ? offsets[pp + 1] - offsets[pp] : 0;
+	}
+
+	public void forEachRecord( Id<Person> personId, RecordVisitor visitor ) {
+		final int pp = personId.index();
+		if ( pp + 1 >= offsets.length ) {
+			return;
+		}
+		for ( int rr = offsets[pp]; rr < offsets[pp + 1]; rr++ ) {
+			final int linkIndex = linkIndices[rr];
+			visitor.visit( times[rr], typeNames[types[rr]], linkIndex < 0 ? null : Id.get( linkIndex, Link.class ) );
+		}
+	}
+
+	/**
+	 * Collects the records in event order and turns them into an {@link IterationExperience}.  Single-threaded.
+	 */
+	static final class Builder {
+		private int size = 0;
+		private int[] persons = new int[1024];
+		private double[] times = new double[1024];
+		private short[] types = new short[1024];
+		private int[] linkIndices = new int[1024];
+
+		void add( int personIndex, double time, short type, int linkIndex ) {
+			if ( size == persons.length ) {
+				final int newLength = size * 2;
+				persons = Arrays.copyOf( persons, newLength );
+				times = Arrays.copyOf( times, newLength );
+				types = Arrays.copyOf( types, newLength );
+				linkIndices = Arrays.copyOf( linkIndices, newLength );
+			}
+			persons[size] = personIndex;
+			times[size] = time;
+			types[size] = type;
+			linkIndices[size] = linkIndex;
+			size++;
+		}
+
+		/**
+		 * Stable counting sort by person, so that the records of each person remain in event (= time) order.
+		 */
+		IterationExperience build( String[] typeNames, int iteration ) {
+			final int numberOfPersons = Id.getNumberOfIds( Person.class );
+			final int[] offsets = new int[numberOfPersons + 1];
+			for ( int rr = 0; rr < size; rr++ ) {
+				offsets[persons[rr] + 1]++;
+			}
+			for ( int pp = 0; pp < numberOfPersons; pp++ ) {
+				offsets[pp + 1] += offsets[pp];
+			}
+			final int[] next = Arrays.copyOf( offsets, numberOfPersons );
+			final double[] sortedTimes = new double[size];
+			final short[] sortedTypes = new short[size];
+			final int[] sortedLinks = new int[size];
+			for ( int rr = 0; rr < size; rr++ ) {
+				final int pos = next[persons[rr]]++;
+				sortedTimes[pos] = times[rr];
+				sortedTypes[pos] = types[rr];
+				sortedLinks[pos] = linkIndices[rr];
+			}
+			return new IterationExperience( offsets, sortedTimes, sortedTypes, sortedLinks, typeNames, iteration );
+		}
+
+		void clear() {
+			size = 0;
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ *  *********************************************************************** *
+ *  * project: org.matsim.*
+ *  * IterationExperienceCollector.java
+ *  *                                                                         *
+ *  * *********************************************************************** *
+ *  *                                                                         *
+ *  * copyright       : (C) 2023 by the members listed in the COPYING, *
+ *  *                   LICENSE and WARRANTY file.                            *
+ *  * email           : info at matsim dot org                                *
+ *  *                                                                         *
+ *  * *********************************************************************** *
+ *  *                                                                         *
+ *  *   This program is free software; you can redistribute it and/or modify  *
+ *  *   it under the terms of the GNU General Public License as published by  *
+ *  *   the Free Software Foundation; either version 2 of the License, or     *
+ *  *   (at your option) any later version.                                   *
+ *  *   See also COPYING, LICENSE and WARRANTY file                           *
+ *  *                                                                         *
+ *  * ***********************************************************************
+ */
+
+package org.matsim.codeexamples.strategies.multiThreadedPlanStrategy;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.HasLinkId;
+import org.matsim.api.core.v01.events.HasPersonId;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.events.handler.BasicEventHandler;
+
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the events of an iteration into an {@link IterationExperience.Builder}, and compacts them at the end of the
+ * iteration into an immutable {@link IterationExperience}, which is then available to the plan algorithms of the next
+ * replanning via {@link #getExperience()}.
+ * <p></p>
+ * Link events only carry the vehicle; they are attributed to the driver from the last {@link VehicleEntersTrafficEvent}.
+ * <p></p>
+ * Install with {@link #module()}.
+ */
+@Singleton
+public final class IterationExperienceCollector implements BasicEventHandler, IterationEndsListener {
+
+	private final IterationExperience.Builder builder = new IterationExperience.Builder();
+	private final Map<String, Short> typeCodes = new HashMap<>();
+	private final List<String> typeNames = new ArrayList<>();
+	private int[] driverByVehicleIndex = new int[0];
+
+	private volatile IterationExperience experience = IterationExperience.EMPTY;
+
+	public static AbstractModule module() {
+		return new AbstractModule() {
+			@Override
+			public void install() {
+				bind( IterationExperienceCollector.class ).asEagerSingleton();
+				addEventHandlerBinding().to( IterationExperienceCollector.class );
+				addControlerListenerBinding().to( IterationExperienceCollector.class );
+			}
+		};
+	}
+
+	/**
+	 * @return the experience of the last completed iteration.  Safe to call from any thread; the returned object never changes.
+	 */
+	public IterationExperience getExperience() {
+		return experience;
+	}
+
+	@Override
+	public void handleEvent( Event event ) {
+		final int personIndex;
+		if ( event instanceof HasPersonId && ((HasPersonId) event).getPersonId() != null ) {
+			personIndex = ((HasPersonId) event).getPersonId().index();
+			if ( event instanceof VehicleEntersTrafficEvent ) {
+				setDriver( ((VehicleEntersTrafficEvent) event).getVehicleId().index(), personIndex );
+			}
+		} else if ( event instanceof LinkEnterEvent ) {
+			personIndex = getDriver( ((LinkEnterEvent) event).getVehicleId().index() );
+		} else if ( event instanceof LinkLeaveEvent ) {
+			personIndex = getDriver( ((LinkLeaveEvent) event).getVehicleId().index() );
+		} else {
+			return;
+		}
+		if ( personIndex < 0 ) {
+			return;
+		}
+		final int linkIndex = event instanceof HasLinkId && ((HasLinkId) event).getLinkId() != null ? ((HasLinkId) event).getLinkId().index() : -1;
+		builder.add( personIndex, event.getTime(), getTypeCode( event.getEventType() ), linkIndex );
+
+		if ( event instanceof VehicleLeavesTrafficEvent ) {
+			setDriver( ((VehicleLeavesTrafficEvent) event).getVehicleId().index(), -1 );
+		}
+	}
+
+	@Override
+	public void reset( int iteration ) {
+		builder.clear();
+	}
+
+	@Override
+	public void notifyIterationEnds( IterationEndsEvent event ) {
+		this.experience = builder.build( typeNames.toArray( new String[0] ), event.getIteration() );
+		builder.clear();
+		Arrays.fill( driverByVehicleIndex, -1 );
+	}
+
+	private short getTypeCode( String eventType ) {
+		Short code = typeCodes.get( eventType );
+		if ( code == null ) {
+			code = (short) typeNames.size();
+			typeCodes.put( eventType, code );
+			typeNames.add( eventType );
+		}
+		return code;
+	}
+
+	private void setDriver( int vehicleIndex, int personIndex ) {
+		if ( vehicleIndex >= driverByVehicleIndex.length ) {
+			final int oldLength = driverByVehicleIndex.length;
+			driverByVehicleIndex = Arrays.copyOf( driverByVehicleIndex, Math.max( vehicleIndex + 1, 2 * oldLength ) );
+			Arrays.fill( driverByVehicleIndex, oldLength, driverByVehicleIndex.length, -1 );
+		}
+		driverByVehicleIndex[vehicleIndex] = personIndex;
+	}
+
+	private int getDriver( int vehicleIndex ) {
+		return vehicleIndex < driverByVehicleIndex.length ? driverByVehicleIndex[vehicleIndex] : -1;
+	}
+
+}
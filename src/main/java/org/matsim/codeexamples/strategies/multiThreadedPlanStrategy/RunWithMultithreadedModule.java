@@ -22,12 +22,10 @@
 
 package org.matsim.codeexamples.strategies.multiThreadedPlanStrategy;
 
-import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
-import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.population.algorithms.PlanAlgorithm;
 import org.matsim.core.replanning.PlanStrategy;
 import org.matsim.core.replanning.PlanStrategyImpl;
@@ -37,8 +35,6 @@ import org.matsim.core.router.TripRouter;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
-import java.util.ArrayList;
-import java.util.List;
 
 public class RunWithMultithreadedModule {
 
@@ -47,34 +43,21 @@ public class RunWithMultithreadedModule {
 		controler.addOverridingModule(new AbstractModule() {
 			@Override
 			public void install() {
+				install(IterationExperienceCollector.module());
 				addPlanStrategyBinding("myStrategy").toProvider(new javax.inject.Provider<>() {
+					@Inject
+					private IterationExperienceCollector experienceCollector;
+
 					@Override
 					public PlanStrategy get() {
 
 // This method is called exactly once by the framework. The PlanStrategy
 // which we return here will live as long as the Controler.
 
-// Adding an EventHandler which observes the simulation. In this example,
-// it simply collects the Events.
-						final List<Event> collectedInformationAboutSimulation = new ArrayList<>();
-						controler.getEvents().addHandler(new BasicEventHandler() {
-							@Override
-							public void handleEvent(final Event event) {
-// Events don't arrive in parallel, so my observer can use
-// an unsynchronized data structure (in this case, the ArrayList).
-								collectedInformationAboutSimulation.add(event);
-							}
-
-							@Override
-							public void reset(int iteration) {
-// This EventHandler lives as long as the Controler lives, so
-// it needs to clear its memory if the idea is that it
-// knows only about one iteration.
-// (No conceptual problem though with collecting information
-// from more iterations).
-								collectedInformationAboutSimulation.clear();
-							}
-						});
+// The events of the simulation are observed by the IterationExperienceCollector
+// (installed above).  At the end of each iteration, it compacts them into an
+// immutable IterationExperience, with the records of each person stored
+// contiguously.
 
 						return new PlanStrategyImpl.Builder(new RandomPlanSelector<>())
 								.addStrategyModule(new AbstractMultithreadedModule(controler.getConfig().global()) {
@@ -85,10 +68,15 @@ public class RunWithMultithreadedModule {
 									@Override
 									public PlanAlgorithm getPlanAlgoInstance() {
 										return new PlanAlgorithm() {
-// This method is called n times if the framework wants to run n threads.
+// This method is called n times if the framework wants to run n threads,
+// at the beginning of every replanning.
 
 											final TripRouter tripRouter = tripRouterProvider.get();
 
+// The experience of the last iteration.  The object is immutable, so all
+// threads can read it without synchronization.
+											final IterationExperience experience = experienceCollector.getExperience();
+
 											@Override
 											public void run(Plan plan) {
 // Modify the plan. If I want a completely new plan, I need to clear the
@@ -98,11 +86,11 @@ public class RunWithMultithreadedModule {
 
 // Now I use my observed data from the simulation.
 // THIS is the bit where thread-safety comes into play.
-// I can iterate over this List for the reason that
-// ArrayList is thread-safe for reading.
-												for (Event event : collectedInformationAboutSimulation) {
-// doSomethingWithPlanAndEvent(plan, event);
-												}
+// I only visit the records of my own person, not all events of the
+// iteration, and the experience is safe for concurrent reads.
+												experience.forEachRecord(plan.getPerson().getId(), (time, eventType, linkId) -> {
+// doSomethingWithPlanAndRecord(plan, time, eventType, linkId);
+												});
 
 // Everything I use here must be prepared to be
 // called by me in parallel.
@@ -123,6 +111,32 @@ public class RunWithMultithreadedModule {
 								.build();
 					}
 				});
+
+// If the cost per plan is very skewed, the static partitioning of the plans
+// to the threads of AbstractMultithreadedModule leaves threads idle.  The
+// WorkStealingPlanStrategyModule is a drop-in alternative which hands out
+// the plans in small batches to a work-stealing pool:
+				addPlanStrategyBinding("myWorkStealingStrategy").toProvider(new javax.inject.Provider<>() {
+					@Inject
+					private Provider<TripRouter> tripRouterProvider;
+
+					@Override
+					public PlanStrategy get() {
+						return new PlanStrategyImpl.Builder(new RandomPlanSelector<>())
+								.addStrategyModule(new WorkStealingPlanStrategyModule(controler.getConfig().global()) {
+									@Override
+									public PlanAlgorithm getPlanAlgoInstance() {
+// Called once per worker thread, so the tripRouter is again only used by
+// one thread.
+										final TripRouter tripRouter = tripRouterProvider.get();
+										return plan -> {
+// doSomethingWith(plan, tripRouter)
+										};
+									}
+								})
+								.build();
+					}
+				});
 			}
 		});
 	}
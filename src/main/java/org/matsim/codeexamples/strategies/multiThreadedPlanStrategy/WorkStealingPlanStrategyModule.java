@@ -0,0 +1,210 @@
+/*
+ *  *********************************************************************** *
+ *  * project: org.matsim.*
+ *  * WorkStealingPlanStrategyModule.java
+ *  *                                                                         *
+ *  * *********************************************************************** *
+ *  *                                                                         *
+ *  * copyright       : (C) 2023 by the members listed in the COPYING, *
+ *  *                   LICENSE and WARRANTY file.                            *
+ *  * email           : info at matsim dot org                                *
+ *  *                                                                         *
+ *  * *********************************************************************** *
+ *  *                                                                         *
+ *  *   This program is free software; you can redistribute it and/or modify  *
+ *  *   it under the terms of the GNU General Public License as published by  *
+ *  *   the Free Software Foundation; either version 2 of the License, or     *
+ *  *   (at your option) any later version.                                   *
+ *  *   See also COPYING, LICENSE and WARRANTY file                           *
+ *  *                                                                         *
+ *  * ***********************************************************************
+ */
+
+package org.matsim.codeexamples.strategies.multiThreadedPlanStrategy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.replanning.PlanStrategyModule;
+import org.matsim.core.config.groups.GlobalConfigGroup;
+import org.matsim.core.population.algorithms.PlanAlgorithm;
+import org.matsim.core.replanning.ReplanningContext;
+import org.matsim.core.replanning.modules.AbstractMultithreadedModule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Alternative to {@link AbstractMultithreadedModule} for plan algorithms with very skewed cost per plan (e.g. long multimodal
+ * plans vs. stay-at-home plans).
+ * <p></p>
+ * {@link AbstractMultithreadedModule} distributes the plans round-robin to its threads up front, so a thread that happens to get
+ * the expensive plans finishes last while the others are idle.  This module instead collects the plans and submits them in
+ * small batches to a work-stealing {@link ForkJoinPool}; idle workers take over batches from busy ones.  Every worker thread has
+ * its own {@link PlanAlgorithm} instance (via a thread local), created with {@link #getPlanAlgoInstance()} as in
+ * {@link AbstractMultithreadedModule}.
+ * <p></p>
+ * For algorithms that mostly wait (e.g. for external services), {@link ExecutionMode#VIRTUAL_THREADS} runs every batch on its
+ * own virtual thread.  Since thread locals of virtual threads are not reused, the algorithm instances are then taken from a
+ * pool of <code>numberOfThreads</code> instances, which also bounds the concurrency.  Virtual threads need Java 21; on older
+ * JVMs the module falls back to {@link ExecutionMode#WORK_STEALING}.
+ * <p></p>
+ * After each replanning, the number of plans and the busy time per worker are logged, so the load balance can be checked.
+ */
+public abstract class WorkStealingPlanStrategyModule implements PlanStrategyModule {
+	private static final Logger log = LogManager.getLogger( WorkStealingPlanStrategyModule.class );
+
+	public enum ExecutionMode { WORK_STEALING, VIRTUAL_THREADS }
+
+	private final int numberOfThreads;
+	private final int batchSize;
+	private final ExecutionMode executionMode;
+
+	private List<Plan> plans = new ArrayList<>();
+	private ReplanningContext replanningContext;
+
+	protected WorkStealingPlanStrategyModule( GlobalConfigGroup globalConfigGroup ) {
+		this( globalConfigGroup.getNumberOfThreads(), 16, ExecutionMode.WORK_STEALING );
+	}
+
+	protected WorkStealingPlanStrategyModule( int numberOfThreads, int batchSize, ExecutionMode executionMode ) {
+		this.numberOfThreads = Math.max( 1, numberOfThreads );
+		this.batchSize = Math.max( 1, batchSize );
+		this.executionMode = executionMode;
+	}
+
+	/**
+	 * Called once per worker thread and replanning, on that thread (or, for virtual threads, <code>numberOfThreads</code> times
+	 * up front).  The returned instance is never used by two threads at the same time.
+	 */
+	public abstract PlanAlgorithm getPlanAlgoInstance();
+
+	protected final ReplanningContext getReplanningContext() {
+		return replanningContext;
+	}
+
+	@Override
+	public void prepareReplanning( ReplanningContext replanningContext ) {
+		this.replanningContext = replanningContext;
+		this.plans = new ArrayList<>();
+	}
+
+	@Override
+	public void handlePlan( Plan plan ) {
+		plans.add( plan );
+	}
+
+	@Override
+	public void finishReplanning() {
+		final Map<String, WorkerStats> stats = new ConcurrentHashMap<>();
+		final ExecutorService virtualThreads = executionMode == ExecutionMode.VIRTUAL_THREADS ? createVirtualThreadExecutor() : null;
+		try {
+			if ( virtualThreads != null ) {
+				runOnVirtualThreads( virtualThreads, stats );
+			} else {
+				runWorkStealing( stats );
+			}
+		} catch ( CompletionException e ) {
+			throw new RuntimeException( "Some threads crashed, thus not all plans may have been handled.", e.getCause() );
+		} finally {
+			if ( virtualThreads != null ) {
+				virtualThreads.shutdown();
+			}
+		}
+		logStats( stats );
+		plans = new ArrayList<>();
+		replanningContext = null;
+	}
+
+	private void runWorkStealing( Map<String, WorkerStats> stats ) {
+		final ThreadLocal<PlanAlgorithm> algorithms = ThreadLocal.withInitial( this::getPlanAlgoInstance );
+		final ForkJoinPool pool = new ForkJoinPool( numberOfThreads );
+		try {
+			final List<CompletableFuture<Void>> futures = new ArrayList<>();
+			for ( int start = 0; start < plans.size(); start += batchSize ) {
+				final int from = start;
+				futures.add( CompletableFuture.runAsync( () -> runBatch( algorithms.get(), from, stats, Thread.currentThread().getName() ), pool ) );
+			}
+			CompletableFuture.allOf( futures.toArray( new CompletableFuture[0] ) ).join();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void runOnVirtualThreads( ExecutorService executor, Map<String, WorkerStats> stats ) {
+		final BlockingQueue<PlanAlgorithm> algorithms = new ArrayBlockingQueue<>( numberOfThreads );
+		for ( int ii = 0; ii < numberOfThreads; ii++ ) {
+			algorithms.add( getPlanAlgoInstance() );
+		}
+		final List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for ( int start = 0; start < plans.size(); start += batchSize ) {
+			final int from = start;
+			futures.add( CompletableFuture.runAsync( () -> {
+				final PlanAlgorithm algorithm;
+				try {
+					algorithm = algorithms.take();
+				} catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException( e );
+				}
+				try {
+					runBatch( algorithm, from, stats, "algorithm@" + System.identityHashCode( algorithm ) );
+					// (keyed by the algorithm instance, since these are what limits the concurrency here)
+				} finally {
+					algorithms.add( algorithm );
+				}
+			}, executor ) );
+		}
+		CompletableFuture.allOf( futures.toArray( new CompletableFuture[0] ) ).join();
+	}
+
+	private void runBatch( PlanAlgorithm algorithm, int from, Map<String, WorkerStats> stats, String worker ) {
+		final long start = System.nanoTime();
+		final int to = Math.min( plans.size(), from + batchSize );
+		for ( int ii = from; ii < to; ii++ ) {
+			algorithm.run( plans.get( ii ) );
+		}
+		final WorkerStats workerStats = stats.computeIfAbsent( worker, k -> new WorkerStats() );
+		workerStats.plans.addAndGet( to - from );
+		workerStats.nanos.addAndGet( System.nanoTime() - start );
+	}
+
+	private static void logStats( Map<String, WorkerStats> stats ) {
+		long minNanos = Long.MAX_VALUE;
+		long maxNanos = 0;
+		for ( Map.Entry<String, WorkerStats> entry : stats.entrySet() ) {
+			final long nanos = entry.getValue().nanos.get();
+			log.info( entry.getKey() + ": " + entry.getValue().plans.get() + " plans in " + nanos / 1_000_000 + " ms" );
+			minNanos = Math.min( minNanos, nanos );
+			maxNanos = Math.max( maxNanos, nanos );
+		}
+		if ( !stats.isEmpty() && maxNanos > 0 ) {
+			log.info( "load balance (busy time of least/most busy worker): " + String.format( "%.2f", (double) minNanos / maxNanos ) );
+		}
+	}
+
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+		} catch ( ReflectiveOperationException e ) {
+			log.warn( "virtual threads are not available in this JVM (need Java 21); falling back to " + ExecutionMode.WORK_STEALING );
+			return null;
+		}
+	}
+
+	private static final class WorkerStats {
+		final AtomicLong plans = new AtomicLong();
+		final AtomicLong nanos = new AtomicLong();
+	}
+
+}
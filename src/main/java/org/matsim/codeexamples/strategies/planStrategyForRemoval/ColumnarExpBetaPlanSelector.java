@@ -0,0 +1,107 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.strategies.planStrategyForRemoval;
+
+import java.util.Random;
+
+import org.matsim.api.core.v01.population.HasPlansAndId;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.core.replanning.selectors.PlanSelector;
+
+/**
+ * Draws a plan with probability proportional to <code>exp( beta * score )</code>, reading the scores from the
+ * {@link ColumnarPlanScores} rather than from the {@link Plan} objects.
+ * <p>
+ * The draw is done in a single pass over the row with the Gumbel-max trick: the plan with the largest
+ * <code>beta * score + Gumbel noise</code> has exactly the ExpBeta probability.  This needs neither the max score for numerical
+ * stability nor a second, cumulative pass, and cannot overflow.
+ * <p>
+ * With a positive beta this is a selector (as ExpBeta); a random one of the unscored plans, if any, is then selected first.
+ * With a negative beta it is a selector for removal (bad plans are likely to be removed); unscored plans are then only removed
+ * if a person has nothing but unscored plans (since the strategy manager needs a plan to remove), and the row of the
+ * {@link ColumnarPlanScores} is updated for the removal.
+ * <p>
+ * The JDK Vector API is incubating in the Java version this project is built with and would need extra module flags, so it is
+ * not used; with at most a handful of slots per person there is little to vectorize per row anyway.
+ */
+public final class ColumnarExpBetaPlanSelector implements PlanSelector<Plan, Person> {
+
+	private final ColumnarPlanScores planScores;
+	private final double beta;
+	private final Random random = MatsimRandom.getLocalInstance();
+
+	public ColumnarExpBetaPlanSelector( ColumnarPlanScores planScores, double beta ) {
+		this.planScores = planScores;
+		this.beta = beta;
+	}
+
+	@Override
+	public Plan selectPlan( HasPlansAndId<Plan, Person> person ) {
+		final int nPlans = person.getPlans().size();
+		if ( nPlans == 0 ) {
+			return null;
+		}
+		final boolean forRemoval = beta < 0.;
+		final int offset = planScores.getRowOffset( person );
+		final double[] scores = planScores.getScores();
+
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		// a random one of the unscored plans, drawn by reservoir sampling in the same pass:
+		int unscored = -1;
+		int nUnscored = 0;
+		for ( int ii = 0; ii < nPlans; ii++ ) {
+			final double score = scores[offset + ii];
+			if ( Double.isNaN( score ) ) {
+				nUnscored++;
+				if ( random.nextInt( nUnscored ) == 0 ) {
+					unscored = ii;
+				}
+				continue;
+			}
+			final double value = beta * score - Math.log( -Math.log( nextOpenUniform() ) );
+			if ( value > bestValue ) {
+				bestValue = value;
+				best = ii;
+			}
+		}
+		if ( unscored >= 0 && (!forRemoval || best < 0) ) {
+			// a selector tries unscored plans first (as the RandomUnscoredPlanSelector in ExpBeta); for removal, this is the
+			// fallback if all plans are unscored:
+			best = unscored;
+		}
+		if ( forRemoval ) {
+			// the strategy manager will remove this plan:
+			planScores.removeSlot( person, best );
+		}
+		return person.getPlans().get( best );
+	}
+
+	private double nextOpenUniform() {
+		double u;
+		do {
+			u = random.nextDouble();
+		} while ( u == 0. );
+		return u;
+	}
+
+}
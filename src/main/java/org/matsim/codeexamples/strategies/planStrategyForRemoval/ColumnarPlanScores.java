@@ -0,0 +1,144 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.strategies.planStrategyForRemoval;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.matsim.api.core.v01.population.HasPlansAndId;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+
+/**
+ * The plan scores of all persons as one columnar <code>double[]</code> (person &times; plan slot), kept alongside the population,
+ * so that selectors such as {@link ColumnarExpBetaPlanSelector} can work on primitive arrays instead of walking lists of
+ * {@link Plan} objects.
+ * <p>
+ * Row <code>p</code> belongs to the person with {@link org.matsim.api.core.v01.Id#index()} <code>p</code>; slot <code>i</code> holds
+ * the score of <code>person.getPlans().get(i)</code>, or <code>NaN</code> if that plan has no score.  Updates are incremental:
+ * at the end of every iteration only the slot of the selected (= just scored) plan is refreshed, since the scores of the other
+ * plans do not change; rows whose number of plans does not match (e.g. after innovation added a plan) are rebuilt.  The
+ * selectors keep the rows up to date when they remove plans.
+ * <p>
+ * Not thread-safe; the strategy manager calls the selectors from one thread.
+ */
+@Singleton
+public final class ColumnarPlanScores implements IterationEndsListener {
+
+	private final Population population;
+	private final int slots;
+
+	private double[] scores = new double[0];
+	private int[] counts = new int[0];
+
+	@Inject
+	ColumnarPlanScores( Population population, Config config ) {
+		this.population = population;
+		// (one more than the memory size, since innovation adds a plan before removal kicks in)
+		this.slots = Math.max( 1, config.strategy().getMaxAgentPlanMemorySize() + 1 );
+	}
+
+	@Override
+	public void notifyIterationEnds( IterationEndsEvent event ) {
+		for ( Person person : population.getPersons().values() ) {
+			final int row = ensureRow( person.getId().index() );
+			final List<? extends Plan> plans = person.getPlans();
+			if ( counts[row] != plans.size() ) {
+				syncRow( person );
+				continue;
+			}
+			final Plan selected = person.getSelectedPlan();
+			for ( int ii = 0; ii < plans.size(); ii++ ) {
+				if ( plans.get( ii ) == selected ) {
+					scores[row * slots + ii] = toDouble( selected.getScore() );
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the row offset into {@link #getScores()} for the given person, after checking that the row matches the person's
+	 * plans (and rebuilding it if not)
+	 */
+	int getRowOffset( HasPlansAndId<Plan, Person> person ) {
+		final int row = ensureRow( person.getId().index() );
+		if ( counts[row] != person.getPlans().size() ) {
+			syncRow( person );
+		}
+		return row * slots;
+	}
+
+	double[] getScores() {
+		return scores;
+	}
+
+	/**
+	 * To be called when plan <code>slot</code> is about to be removed from the person's plans: shifts the remaining slots.
+	 */
+	void removeSlot( HasPlansAndId<Plan, Person> person, int slot ) {
+		final int row = person.getId().index();
+		final int offset = row * slots;
+		System.arraycopy( scores, offset + slot + 1, scores, offset + slot, counts[row] - slot - 1 );
+		counts[row]--;
+		scores[offset + counts[row]] = Double.NaN;
+	}
+
+	private void syncRow( HasPlansAndId<Plan, Person> person ) {
+		final int row = person.getId().index();
+		final List<? extends Plan> plans = person.getPlans();
+		if ( plans.size() > slots ) {
+			throw new IllegalStateException( "person " + person.getId() + " has " + plans.size() + " plans, but only " + slots
+					+ " slots are reserved; increase the plan memory size" );
+		}
+		final int offset = row * slots;
+		Arrays.fill( scores, offset, offset + slots, Double.NaN );
+		for ( int ii = 0; ii < plans.size(); ii++ ) {
+			scores[offset + ii] = toDouble( plans.get( ii ).getScore() );
+		}
+		counts[row] = plans.size();
+	}
+
+	private int ensureRow( int row ) {
+		if ( row >= counts.length ) {
+			final int newRows = Math.max( row + 1, 2 * counts.length );
+			final int oldLength = scores.length;
+			scores = Arrays.copyOf( scores, newRows * slots );
+			Arrays.fill( scores, oldLength, scores.length, Double.NaN );
+			// (count -1 means "never synced", so the row is rebuilt on first use)
+			final int oldRows = counts.length;
+			counts = Arrays.copyOf( counts, newRows );
+			Arrays.fill( counts, oldRows, newRows, -1 );
+		}
+		return row;
+	}
+
+	private static double toDouble( Double score ) {
+		return score == null ? Double.NaN : score;
+	}
+
+}
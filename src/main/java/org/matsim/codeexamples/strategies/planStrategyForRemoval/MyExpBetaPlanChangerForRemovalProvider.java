@@ -28,6 +28,11 @@ import org.matsim.core.config.Config;
 import org.matsim.core.replanning.selectors.ExpBetaPlanChanger;
 
 /**
+* For large populations, see {@link ColumnarExpBetaPlanSelector}, which reads the scores from a columnar score array.  Note that
+* it is not a drop-in replacement: the {@link ExpBetaPlanChanger} provided here compares the selected plan with one random other
+* plan and switches with an ExpBeta-like probability, while the columnar selector draws from all plans of the person with
+* probability proportional to <code>exp( beta * score )</code>.
+*
 * @author ikaddoura
 */
 public class MyExpBetaPlanChangerForRemovalProvider implements Provider<ExpBetaPlanChanger<Plan, Person>> {
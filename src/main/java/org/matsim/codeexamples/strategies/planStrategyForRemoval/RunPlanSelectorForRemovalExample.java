@@ -19,11 +19,17 @@
 
 package org.matsim.codeexamples.strategies.planStrategyForRemoval;
 
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.controler.OutputDirectoryHierarchy.OverwriteFileSetting;
+import org.matsim.core.replanning.selectors.PlanSelector;
 
 /**
 * @author ikaddoura
@@ -31,6 +37,7 @@ import org.matsim.core.controler.OutputDirectoryHierarchy.OverwriteFileSetting;
 public class RunPlanSelectorForRemovalExample {
 
 	private static final String SELECTOR_NAME = "selectorName";
+	private static final String COLUMNAR_SELECTOR_NAME = "columnarSelectorName";
 
 	public static void main(String[] args) {
 		
@@ -49,6 +56,17 @@ public class RunPlanSelectorForRemovalExample {
 				if (getConfig().strategy().getPlanSelectorForRemoval().equals(SELECTOR_NAME)) {
 					bindPlanSelectorForRemoval().toProvider(MyExpBetaPlanChangerForRemovalProvider.class);
 				}
+				if (getConfig().strategy().getPlanSelectorForRemoval().equals(COLUMNAR_SELECTOR_NAME)) {
+					// same idea, but working on a columnar score array, for large populations:
+					bind(ColumnarPlanScores.class);
+					addControlerListenerBinding().to(ColumnarPlanScores.class);
+					bindPlanSelectorForRemoval().toProvider(new Provider<PlanSelector<Plan, Person>>() {
+						@Inject ColumnarPlanScores planScores;
+						@Override public PlanSelector<Plan, Person> get() {
+							return new ColumnarExpBetaPlanSelector(planScores, - getConfig().planCalcScore().getBrainExpBeta());
+						}
+					});
+				}
 			}
 		});
 		
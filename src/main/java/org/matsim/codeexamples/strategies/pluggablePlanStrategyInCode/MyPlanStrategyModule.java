@@ -49,7 +49,7 @@ class MyPlanStrategyModule implements PlanStrategyModule, ActivityEndEventHandle
 
 	@Override
 	public void handlePlan(Plan plan) {
-		log.error("calling handlePlan for person.Id: " + plan.getPerson().getId());
+		// (called once per plan, so nothing is logged here; see PlanStrategyModuleTracer for how to look at what happens)
 	}
 
 	@Override
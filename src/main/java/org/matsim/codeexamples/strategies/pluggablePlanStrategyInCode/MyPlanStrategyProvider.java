@@ -7,7 +7,8 @@ import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.replanning.PlanStrategy;
 import org.matsim.core.replanning.PlanStrategyImpl;
 
-import javax.inject.Inject;
+import com.google.inject.Inject;
+
 import javax.inject.Provider;
 
 
@@ -15,6 +16,7 @@ class MyPlanStrategyProvider implements Provider<PlanStrategy> {
 
     private EventsManager eventsManager;
     private Scenario scenario;
+    private PlanStrategyModuleTracer tracer;
     
     private static final Logger log = LogManager.getLogger(MyPlanSelector.class);
 
@@ -24,6 +26,15 @@ class MyPlanStrategyProvider implements Provider<PlanStrategy> {
         this.scenario = scenario;
     }
 
+    /**
+     * Only injected if the tracer is bound (see {@link RunPluggablePlanStrategyInCodeExample}); it has no injectable
+     * constructor, so that it is not silently created (and never drained) elsewhere.
+     */
+    @Inject(optional = true)
+    void setTracer(PlanStrategyModuleTracer tracer) {
+        this.tracer = tracer;
+    }
+
     @Override
 	public PlanStrategy get() {
     	
@@ -42,7 +53,8 @@ class MyPlanStrategyProvider implements Provider<PlanStrategy> {
         // Otherwise, to do something with that plan, one needs to add modules into the strategy.  If there is at least
         // one module added here, then the plan is copied and then modified.
         MyPlanStrategyModule mod = new MyPlanStrategyModule(scenario);
-        builder.addStrategyModule(mod);
+        // (optionally wrapped so that its life cycle is timed; the tracer writes the result into the iteration directory)
+        builder.addStrategyModule(tracer != null ? tracer.wrap(RunPluggablePlanStrategyInCodeExample.STRATEGY_NAME, mod) : mod);
 
         // these modules may, at the same time, be events listeners (so that they can collect information):
         eventsManager.addHandler(mod);
@@ -0,0 +1,180 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.strategies.pluggablePlanStrategyInCode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.replanning.PlanStrategyModule;
+import org.matsim.codeexamples.utils.LogHistogram;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.replanning.ReplanningContext;
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Times the life cycle of {@link PlanStrategyModule}s, i.e. {@link PlanStrategyModule#prepareReplanning(ReplanningContext)},
+ * {@link PlanStrategyModule#handlePlan(Plan)} and {@link PlanStrategyModule#finishReplanning()}.
+ * <p></p>
+ * Modules are wrapped by {@link #wrap(String, PlanStrategyModule)} in the strategy provider.  Nothing is logged while the
+ * plans are handled; each thread that calls the wrapper writes into its own counters, which are only added up at the end
+ * of the iteration.  The result is written to <code>ITERS/it.N/N.strategy_module_timing.csv</code>, one line per strategy
+ * and module, with the plans per second (counting all three phases, since e.g. an {@link
+ * org.matsim.core.replanning.modules.AbstractMultithreadedModule} only collects the plans in handlePlan and does the work
+ * in finishReplanning) and the p99 of handlePlan.
+ * <p></p>
+ * The tracer has to be bound, as a singleton and as controler listener, by the module that wants it (see
+ * {@link RunPluggablePlanStrategyInCodeExample}); otherwise, the counters would never be drained.
+ */
+public final class PlanStrategyModuleTracer implements IterationEndsListener {
+	private static final Logger log = LogManager.getLogger( PlanStrategyModuleTracer.class );
+
+	static final String FILENAME = "strategy_module_timing.csv";
+
+	private final OutputDirectoryHierarchy controlerIO;
+	private final List<TracedPlanStrategyModule> modules = new ArrayList<>();
+
+	// (deliberately no @Inject, so that there is no just-in-time binding)
+	public PlanStrategyModuleTracer( OutputDirectoryHierarchy controlerIO ) {
+		this.controlerIO = controlerIO;
+	}
+
+	/**
+	 * @param strategyName the name under which the strategy is registered; goes into the output
+	 */
+	public synchronized PlanStrategyModule wrap( String strategyName, PlanStrategyModule delegate ) {
+		TracedPlanStrategyModule traced = new TracedPlanStrategyModule( strategyName, delegate );
+		modules.add( traced );
+		return traced;
+	}
+
+	@Override
+	public synchronized void notifyIterationEnds( IterationEndsEvent event ) {
+		String filename = controlerIO.getIterationFilename( event.getIteration(), FILENAME );
+		try ( BufferedWriter writer = IOUtils.getBufferedWriter( filename ) ) {
+			writer.write( "strategy;module;plans;prepare_ms;handle_ms;finish_ms;plans_per_s;handle_p50_us;handle_p99_us;handle_max_us" );
+			writer.newLine();
+			for ( TracedPlanStrategyModule module : modules ) {
+				ThreadCounters sum = module.drain();
+				if ( sum.handle.getCount() == 0 && sum.prepareNanos == 0 ) {
+					continue;
+				}
+				double totalSeconds = (sum.prepareNanos + sum.handleNanos + sum.finishNanos) * 1e-9;
+				double plansPerSecond = totalSeconds > 0. ? sum.handle.getCount() / totalSeconds : 0.;
+				writer.write( String.format( Locale.US, "%s;%s;%d;%.3f;%.3f;%.3f;%.1f;%.3f;%.3f;%.3f",
+						module.strategyName, module.delegate.getClass().getSimpleName(), sum.handle.getCount(),
+						sum.prepareNanos * 1e-6, sum.handleNanos * 1e-6, sum.finishNanos * 1e-6, plansPerSecond,
+						sum.handle.getValueAtQuantile( 0.5 ) * 1e-3, sum.handle.getValueAtQuantile( 0.99 ) * 1e-3,
+						sum.handle.getMax() * 1e-3 ) );
+				writer.newLine();
+			}
+		} catch ( IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+		log.info( "wrote plan strategy module timing to " + filename );
+	}
+
+	/**
+	 * Counters of one thread.  Only that thread writes; {@link TracedPlanStrategyModule#drain()} reads them at the end of the
+	 * iteration, when replanning is long over.
+	 */
+	private static final class ThreadCounters {
+		final LogHistogram handle = new LogHistogram();
+		long handleNanos;
+		long prepareNanos;
+		long finishNanos;
+
+		void add( ThreadCounters other ) {
+			handle.add( other.handle );
+			handleNanos += other.handleNanos;
+			prepareNanos += other.prepareNanos;
+			finishNanos += other.finishNanos;
+		}
+	}
+
+	private static final class TracedPlanStrategyModule implements PlanStrategyModule {
+		private final String strategyName;
+		private final PlanStrategyModule delegate;
+
+		private final ConcurrentLinkedQueue<ThreadCounters> allCounters = new ConcurrentLinkedQueue<>();
+		private volatile ThreadLocal<ThreadCounters> counters = newThreadLocal();
+
+		TracedPlanStrategyModule( String strategyName, PlanStrategyModule delegate ) {
+			this.strategyName = strategyName;
+			this.delegate = delegate;
+		}
+
+		private ThreadLocal<ThreadCounters> newThreadLocal() {
+			return ThreadLocal.withInitial( () -> {
+				ThreadCounters threadCounters = new ThreadCounters();
+				allCounters.add( threadCounters );
+				return threadCounters;
+			} );
+		}
+
+		@Override
+		public void prepareReplanning( ReplanningContext replanningContext ) {
+			long start = System.nanoTime();
+			delegate.prepareReplanning( replanningContext );
+			counters.get().prepareNanos += System.nanoTime() - start;
+		}
+
+		@Override
+		public void handlePlan( Plan plan ) {
+			long start = System.nanoTime();
+			delegate.handlePlan( plan );
+			long duration = System.nanoTime() - start;
+			ThreadCounters threadCounters = counters.get();
+			threadCounters.handleNanos += duration;
+			threadCounters.handle.record( duration );
+		}
+
+		@Override
+		public void finishReplanning() {
+			long start = System.nanoTime();
+			delegate.finishReplanning();
+			counters.get().finishNanos += System.nanoTime() - start;
+		}
+
+		/**
+		 * Adds up the counters of all threads and starts afresh.
+		 */
+		ThreadCounters drain() {
+			ThreadCounters sum = new ThreadCounters();
+			for ( ThreadCounters threadCounters : allCounters ) {
+				sum.add( threadCounters );
+			}
+			allCounters.clear();
+			// (a new thread local, so that threads which have already registered their counters get new ones)
+			counters = newThreadLocal();
+			return sum;
+		}
+	}
+
+}
@@ -19,18 +19,23 @@
 
 package org.matsim.codeexamples.strategies.pluggablePlanStrategyInCode;
 
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.StrategyConfigGroup.StrategySettings;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.OutputDirectoryHierarchy.OverwriteFileSetting;
 import org.matsim.core.controler.OutputDirectoryLogging;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.examples.ExamplesUtils;
 
 public class RunPluggablePlanStrategyInCodeExample {
-	private static final String STRATEGY_NAME = "doSomethingSpecial";
+	static final String STRATEGY_NAME = "doSomethingSpecial";
 
 	public static void main(final String[] args) {
 //		ControlerUtils.initializeOutputLogging();
@@ -64,6 +69,14 @@ public class RunPluggablePlanStrategyInCodeExample {
 			@Override
 			public void install() {
 				addPlanStrategyBinding(STRATEGY_NAME).toProvider(MyPlanStrategyProvider.class);
+				// time the strategy modules, and write the result into the iteration directories:
+				bind(PlanStrategyModuleTracer.class).toProvider(new Provider<PlanStrategyModuleTracer>() {
+					@Inject OutputDirectoryHierarchy controlerIO;
+					@Override public PlanStrategyModuleTracer get() {
+						return new PlanStrategyModuleTracer(controlerIO);
+					}
+				}).in(Singleton.class);
+				addControlerListenerBinding().to(PlanStrategyModuleTracer.class);
 			}
 		});
 		controler.run();
@@ -0,0 +1,60 @@
+package org.matsim.codeexamples.utils;
+
+/**
+ * Stateless, counter-based pseudo-random numbers: a draw is a pure function of its key (e.g. seed, iteration, person index,
+ * trip index), so results do not depend on the order in which draws are made, or on how many threads make them.  There is no
+ * state, so all methods are thread-safe and allocation-free.
+ * <p></p>
+ * The keys are combined with the SplitMix64 finaliser, which is a bijection on 64 bits with good avalanche behavior.
+ * <p></p>
+ * Used by the pseudo-random errors of the scoring examples and by the deterministic population synthesis.
+ */
+public final class CounterBasedRandom {
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private CounterBasedRandom() {
+	}
+
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Chains the given key components into one 64-bit hash.  The order of the components matters.
+	 */
+	public static long hash(long seed, long a, long b, long c) {
+		long h = mix(seed + GOLDEN_GAMMA);
+		h = mix(h ^ (a + GOLDEN_GAMMA));
+		h = mix(h ^ (b + 2 * GOLDEN_GAMMA));
+		return mix(h ^ (c + 3 * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * @return a 64-bit hash of the characters (FNV-1a, then mixed), e.g. of an id.  Unlike {@link
+	 * org.matsim.api.core.v01.Id#index()}, this does not depend on the order in which a JVM creates the ids.
+	 */
+	public static long hash(CharSequence chars) {
+		long h = 0xcbf29ce484222325L;
+		for (int ii = 0; ii < chars.length(); ii++) {
+			h ^= chars.charAt(ii);
+			h *= 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * @return a uniform double in the open interval (0,1), i.e. never exactly 0 or 1, so that it can be fed into logarithms.
+	 */
+	public static double uniform(long hash) {
+		return ((hash >>> 11) + 0.5) * 0x1.0p-53;
+	}
+
+	/**
+	 * @return a uniform int in [0,bound), by multiply-shift (no modulo bias worth mentioning for small bounds).
+	 */
+	public static int nextInt(long hash, int bound) {
+		return (int) (((hash >>> 32) * bound) >>> 32);
+	}
+}
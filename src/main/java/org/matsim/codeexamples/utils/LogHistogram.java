@@ -0,0 +1,108 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2023 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.utils;
+
+/**
+ * A small histogram with logarithmic buckets, in the spirit of HdrHistogram: every power of two is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so percentiles are accurate to about 12% over the whole <code>long</code> range,
+ * with a fixed footprint of a few kB and no allocation when recording.
+ * <p></p>
+ * Used by the mobsim profiler (which only records from the sim thread) and by the plan strategy module tracer.  Not thread-safe;
+ * multi-threaded users keep one histogram per thread and {@link #add(LogHistogram) add} them up at the end.
+ */
+public final class LogHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final long[] counts = new long[64 * SUB_BUCKETS];
+	private long totalCount = 0;
+	private double sum = 0.;
+	private long max = 0;
+
+	public void record( long value ) {
+		if ( value < 0 ) {
+			value = 0;
+		}
+		counts[bucketIndex( value )]++;
+		totalCount++;
+		sum += value;
+		max = Math.max( max, value );
+	}
+
+	public void add( LogHistogram other ) {
+		for ( int ii = 0; ii < counts.length; ii++ ) {
+			counts[ii] += other.counts[ii];
+		}
+		totalCount += other.totalCount;
+		sum += other.sum;
+		max = Math.max( max, other.max );
+	}
+
+	public long getCount() {
+		return totalCount;
+	}
+
+	public double getMean() {
+		return totalCount == 0 ? 0. : sum / totalCount;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @param quantile in [0,1]
+	 * @return the upper bound of the bucket that contains the given quantile (but never more than the recorded maximum)
+	 */
+	public long getValueAtQuantile( double quantile ) {
+		if ( totalCount == 0 ) {
+			return 0;
+		}
+		final long rank = Math.max( 1, (long) Math.ceil( quantile * totalCount ) );
+		long seen = 0;
+		for ( int ii = 0; ii < counts.length; ii++ ) {
+			seen += counts[ii];
+			if ( seen >= rank ) {
+				return Math.min( max, bucketUpperBound( ii ) );
+			}
+		}
+		return max;
+	}
+
+	private static int bucketIndex( long value ) {
+		if ( value < SUB_BUCKETS ) {
+			return (int) value;
+		}
+		final int magnitude = 63 - Long.numberOfLeadingZeros( value );
+		final int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long bucketUpperBound( int index ) {
+		if ( index < SUB_BUCKETS ) {
+			return index;
+		}
+		final int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final long subBucket = index % SUB_BUCKETS;
+		final long width = 1L << (magnitude - SUB_BUCKET_BITS);
+		return (1L << magnitude) + (subBucket + 1) * width - 1;
+	}
+
+}
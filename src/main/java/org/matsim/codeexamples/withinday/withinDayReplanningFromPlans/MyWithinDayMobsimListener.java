@@ -23,39 +23,30 @@ package org.matsim.codeexamples.withinday.withinDayReplanningFromPlans;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 import com.google.inject.Inject;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.PopulationFactory;
-import org.matsim.api.core.v01.population.Population;
-import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
 import org.matsim.core.mobsim.framework.HasPerson;
 import org.matsim.core.mobsim.framework.MobsimAgent;
 import org.matsim.core.mobsim.framework.MobsimDriverAgent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
 import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
 import org.matsim.core.mobsim.framework.listeners.MobsimBeforeSimStepListener;
 import org.matsim.core.mobsim.qsim.agents.WithinDayAgentUtils;
 import org.matsim.core.mobsim.qsim.interfaces.MobsimVehicle;
 import org.matsim.core.mobsim.qsim.interfaces.Netsim;
 import org.matsim.core.mobsim.qsim.interfaces.NetsimLink;
-import org.matsim.core.router.TripRouter;
-import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
-import org.matsim.core.router.util.LeastCostPathCalculator;
-import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
-import org.matsim.core.router.util.TravelDisutility;
-import org.matsim.core.router.util.TravelTime;
 import org.matsim.withinday.utils.EditRoutes;
 
 import javax.inject.Singleton;
@@ -65,18 +56,11 @@ import javax.inject.Singleton;
  *
  */
 @Singleton
-class MyWithinDayMobsimListener implements MobsimBeforeSimStepListener {
+class MyWithinDayMobsimListener implements MobsimBeforeSimStepListener, MobsimBeforeCleanupListener {
     
 	private static final Logger log = LogManager.getLogger("dummy");
 
-	@Inject private Scenario scenario;
-	
-	@Inject private LeastCostPathCalculatorFactory pathCalculatorFactory ;
-	
-	@Inject private Map<String, TravelTime> travelTimes ;
-	@Inject private Map<String, TravelDisutilityFactory> travelDisutilityFactories ;
-
-	private EditRoutes editRoutes;
+	@Inject private WithinDayReplanningExecutor executor;
 
 	@Override
 	public void notifyMobsimBeforeSimStep(@SuppressWarnings("rawtypes") MobsimBeforeSimStepEvent event) {
@@ -84,10 +68,14 @@ class MyWithinDayMobsimListener implements MobsimBeforeSimStepListener {
 		Netsim mobsim = (Netsim) event.getQueueSimulation() ;
 
 		Collection<MobsimAgent> agentsToReplan = getAgentsToReplan(mobsim); 
-				
-		for (MobsimAgent ma : agentsToReplan) {
-			doReplanning(ma, mobsim);
-		}
+
+		// the routing is done in parallel; the plans are modified afterwards on this thread, in agent id order:
+		executor.run( agentsToReplan, (agent, editRoutes) -> doReplanning(agent, mobsim, editRoutes) );
+	}
+
+	@Override
+	public void notifyMobsimBeforeCleanup(@SuppressWarnings("rawtypes") MobsimBeforeCleanupEvent e) {
+		executor.shutdown();
 	}
 	
 	private static List<MobsimAgent> getAgentsToReplan(Netsim mobsim ) {
@@ -115,22 +103,26 @@ class MyWithinDayMobsimListener implements MobsimBeforeSimStepListener {
 
 	}
 
-	private boolean doReplanning(MobsimAgent agent, Netsim mobsim ) {
+	/**
+	 * Runs on a worker thread of the {@link WithinDayReplanningExecutor}.  It therefore only <i>reads</i> the plan, and
+	 * computes the new routes on copies of the legs.  The returned mutation is run later on the sim thread.
+	 */
+	private static Runnable doReplanning(MobsimAgent agent, Netsim mobsim, EditRoutes editRoutes ) {
 		double now = mobsim.getSimTimer().getTimeOfDay() ;
 		
 		Plan plan = WithinDayAgentUtils.getModifiablePlan( agent ) ; 
 
 		if (plan == null) {
 			log.info( " we don't have a modifiable plan; returning ... ") ;
-			return false;
+			return null;
 		}
 		if ( !(WithinDayAgentUtils.getCurrentPlanElement(agent) instanceof Leg) ) {
 			log.info( "agent not on leg; returning ... ") ;
-			return false ;
+			return null ;
 		}
 		if (!((Leg) WithinDayAgentUtils.getCurrentPlanElement(agent)).getMode().equals(TransportMode.car)) {
 			log.info( "not a car leg; can only replan car legs; returning ... ") ;
-			return false;
+			return null;
 		}
 		
 		List<PlanElement> planElements = plan.getPlanElements() ;
@@ -138,47 +130,45 @@ class MyWithinDayMobsimListener implements MobsimBeforeSimStepListener {
 		
 		if ( !(planElements.get(planElementsIndex+1) instanceof Activity || !(planElements.get(planElementsIndex+2) instanceof Leg)) ) {
 			log.error( "this version of withinday replanning cannot deal with plans where legs and acts do not alternate; returning ...") ;
-			return false ;
+			return null ;
 		}
 
 		// now the real work begins. This, as an example, changes the activity (i.e. the destination of the current leg) and then
 		// re-splices the plan
 		
 		Id<Link> newDestinationLinkId = Id.create("22", Link.class) ;
-		Activity newAct = mobsim.getScenario().getPopulation().getFactory().createActivityFromLinkId("w", newDestinationLinkId ) ;
+		PopulationFactory pf = mobsim.getScenario().getPopulation().getFactory() ;
+		Activity newAct = pf.createActivityFromLinkId("w", newDestinationLinkId ) ;
 		newAct.setMaximumDuration(3600);
 		
-		planElements.set( planElementsIndex+1, newAct );
-		
 		// =============================================================================================================
 		// =============================================================================================================
 		// EditRoutes at this point only works for car routes
 
-		// new Route for current Leg.
-		final Leg leg = (Leg) plan.getPlanElements().get(planElementsIndex);
+		// new Route for current Leg.  Computed on a copy, since the sim thread may not see a half-modified route:
+		final Leg leg = (Leg) planElements.get(planElementsIndex);
 		final Person person = ((HasPerson) agent).getPerson();
 		final Integer linkIdx = WithinDayAgentUtils.getCurrentRouteLinkIdIndex(agent);
 
-		if (editRoutes == null) { // init editRoutes (only once)
-			TravelTime travelTime = travelTimes.get( TransportMode.car );
-			TravelDisutility travelDisutility = travelDisutilityFactories.get( TransportMode.car ).createTravelDisutility( travelTimes.get( TransportMode.car ) ) ;
-			LeastCostPathCalculator pathCalculator = pathCalculatorFactory.createPathCalculator(scenario.getNetwork(), travelDisutility, travelTime );
-			editRoutes = new EditRoutes( scenario.getNetwork(), pathCalculator, scenario.getPopulation().getFactory() );
-		}
-
-		editRoutes.relocateCurrentLegRoute(leg, person, linkIdx, newDestinationLinkId, now) ;
+		final Leg newLeg = pf.createLeg( leg.getMode() ) ;
+		newLeg.setRoute( leg.getRoute().clone() );
+		editRoutes.relocateCurrentLegRoute(newLeg, person, linkIdx, newDestinationLinkId, now) ;
 		
 		// the route _from_ the modified activity also needs to be replanned:
-		Leg futureLeg = (Leg) plan.getPlanElements().get(planElementsIndex + 2);
-		editRoutes.relocateFutureLegRoute( futureLeg, newDestinationLinkId, futureLeg.getRoute().getEndLinkId(), person );
+		final Leg futureLeg = (Leg) planElements.get(planElementsIndex + 2);
+		final Leg newFutureLeg = pf.createLeg( futureLeg.getMode() ) ;
+		newFutureLeg.setRoute( futureLeg.getRoute().clone() );
+		editRoutes.relocateFutureLegRoute( newFutureLeg, newDestinationLinkId, futureLeg.getRoute().getEndLinkId(), person );
 
 		// =============================================================================================================
 		// =============================================================================================================
-		
-		// finally reset the cached Values of the PersonAgent - they may have changed!
-		WithinDayAgentUtils.resetCaches(agent);
-		
-		return true;
+
+		// re-splice the plan.  The executor resets the cached values of the PersonAgent afterwards.
+		return () -> {
+			planElements.set( planElementsIndex+1, newAct );
+			leg.setRoute( newLeg.getRoute() );
+			futureLeg.setRoute( newFutureLeg.getRoute() );
+		};
 	}
 
 
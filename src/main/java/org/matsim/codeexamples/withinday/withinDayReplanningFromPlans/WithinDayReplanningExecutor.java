@@ -0,0 +1,130 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * WithinDayReplanningExecutor.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2010 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.codeexamples.withinday.withinDayReplanningFromPlans;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import com.google.inject.Inject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.core.mobsim.framework.MobsimAgent;
+import org.matsim.core.mobsim.qsim.agents.WithinDayAgentUtils;
+import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.withinday.utils.EditRoutes;
+
+import javax.inject.Singleton;
+
+/**
+ * Fans out within-day replanning of many agents to a fork-join pool.
+ * <p></p>
+ * The expensive part (routing) is done by the workers, each of which has its own {@link LeastCostPathCalculator} and
+ * {@link EditRoutes}, since neither of them is thread-safe.  The workers must not touch the agents' plans; instead they
+ * return a {@link Runnable} which mutates the plan.  These mutations, followed by
+ * {@link WithinDayAgentUtils#resetCaches(MobsimAgent)}, are run back on the calling (= sim) thread, in the order of
+ * the agent ids, so that the outcome does not depend on the number of threads or on thread scheduling.
+ * <p></p>
+ * The pool is created lazily and should be shut down at the end of each mobsim run, see {@link #shutdown()}.
+ */
+@Singleton
+class WithinDayReplanningExecutor {
+	private static final Logger log = LogManager.getLogger( WithinDayReplanningExecutor.class );
+
+	/**
+	 * Computes the replanning for one agent.  Is called on a worker thread.
+	 */
+	interface Replanner {
+		/**
+		 * @return the plan mutation to be applied on the sim thread, or <code>null</code> if the agent is not replanned
+		 */
+		Runnable replan( MobsimAgent agent, EditRoutes editRoutes );
+	}
+
+	@Inject private Scenario scenario;
+
+	@Inject private LeastCostPathCalculatorFactory pathCalculatorFactory ;
+
+	@Inject private Map<String, TravelTime> travelTimes ;
+	@Inject private Map<String, TravelDisutilityFactory> travelDisutilityFactories ;
+
+	private ForkJoinPool pool;
+	private ThreadLocal<EditRoutes> editRoutes;
+
+	void run( Collection<? extends MobsimAgent> agentsToReplan, Replanner replanner ) {
+		if ( agentsToReplan.isEmpty() ) {
+			return;
+		}
+		final MobsimAgent[] agents = agentsToReplan.toArray( new MobsimAgent[0] );
+		Arrays.sort( agents, Comparator.comparing( MobsimAgent::getId ) );
+
+		final Runnable[] mutations = new Runnable[agents.length];
+
+		// parallel streams started from within a fork-join pool run in that pool:
+		getPool().submit( () -> IntStream.range( 0, agents.length ).parallel()
+						     .forEach( ii -> mutations[ii] = replanner.replan( agents[ii], editRoutes.get() ) ) ).join();
+
+		int cnt = 0;
+		for ( int ii = 0; ii < agents.length; ii++ ) {
+			if ( mutations[ii] != null ) {
+				mutations[ii].run();
+				// finally reset the cached Values of the PersonAgent - they may have changed!
+				WithinDayAgentUtils.resetCaches( agents[ii] );
+				cnt++;
+			}
+		}
+		log.info( "replanned " + cnt + " of " + agents.length + " agents using " + pool.getParallelism() + " threads." );
+	}
+
+	void shutdown() {
+		if ( pool != null ) {
+			pool.shutdown();
+			pool = null;
+			editRoutes = null;
+		}
+	}
+
+	private ForkJoinPool getPool() {
+		if ( pool == null ) {
+			pool = new ForkJoinPool( Math.max( 1, scenario.getConfig().global().getNumberOfThreads() ) );
+			// (one router per worker thread; the thread locals die together with the pool)
+			editRoutes = ThreadLocal.withInitial( this::createEditRoutes );
+		}
+		return pool;
+	}
+
+	private EditRoutes createEditRoutes() {
+		TravelTime travelTime = travelTimes.get( TransportMode.car );
+		TravelDisutility travelDisutility = travelDisutilityFactories.get( TransportMode.car ).createTravelDisutility( travelTime ) ;
+		LeastCostPathCalculator pathCalculator = pathCalculatorFactory.createPathCalculator( scenario.getNetwork(), travelDisutility, travelTime );
+		return new EditRoutes( scenario.getNetwork(), pathCalculator, scenario.getPopulation().getFactory() );
+	}
+
+}
@@ -9,6 +9,7 @@
  * <b>This package contains:</b><ul>
  * <li>{@link org.matsim.codeexamples.withinday.withinDayReplanningFromPlans.RunWithinDayReplanningFromPlansExample} (very short), which contains the main method.
  * <li>{@link org.matsim.codeexamples.withinday.withinDayReplanningFromPlans.MyWithinDayMobsimListener}, which contains a concrete implementation for withinday replanning of vehicle drivers.
+ * <li>{@link org.matsim.codeexamples.withinday.withinDayReplanningFromPlans.WithinDayReplanningExecutor}, which does the routing for many agents in parallel and then applies the plan changes on the sim thread.
  * </ul>
  * <p></p>
  * Please address yourself to Christoph Dobler for support.
@@ -0,0 +1,62 @@
+package org.matsim.codeexamples.population.binaryPopulation;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.vehicles.VehicleUtils;
+
+public class BinaryPopulationRoundTripTest {
+	@Rule public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testRoundTrip() {
+		Scenario expected = ScenarioUtils.createScenario( ConfigUtils.createConfig() );
+		PopulationFiles.readPopulation( expected, "scenarios/equil/plans2000.xml.gz" );
+		// (some attributes of different types, which the xml file does not have)
+		for ( Person person : expected.getPopulation().getPersons().values() ) {
+			person.getAttributes().putAttribute( "age", 42 );
+			person.getAttributes().putAttribute( "income", 1234.5 );
+			person.getAttributes().putAttribute( "subpopulation", "persons" );
+			// (a type that needs an attribute converter)
+			VehicleUtils.insertVehicleIdsIntoAttributes( person, Map.of( TransportMode.car, Id.createVehicleId( person.getId().toString() ) ) );
+			for ( Leg leg : TripStructureUtils.getLegs( person.getSelectedPlan() ) ) {
+				if ( leg.getRoute() instanceof NetworkRoute ) {
+					((NetworkRoute) leg.getRoute()).setTravelCost( 12.5 );
+				}
+			}
+		}
+
+		String binaryFile = utils.getOutputDirectory() + "plans2000" + BinaryPopulationFormat.EXTENSION + ".gz";
+		PopulationFiles.writePopulation( expected.getPopulation(), binaryFile );
+
+		Scenario actual = ScenarioUtils.createScenario( ConfigUtils.createConfig() );
+		PopulationFiles.readPopulation( actual, binaryFile );
+
+		Assert.assertEquals( expected.getPopulation().getPersons().size(), actual.getPopulation().getPersons().size() );
+		Assert.assertTrue( PopulationUtils.comparePopulations( expected.getPopulation(), actual.getPopulation() ) );
+		for ( Person person : actual.getPopulation().getPersons().values() ) {
+			Assert.assertEquals( 42, person.getAttributes().getAttribute( "age" ) );
+			Assert.assertEquals( 1234.5, person.getAttributes().getAttribute( "income" ) );
+			Assert.assertEquals( "persons", person.getAttributes().getAttribute( "subpopulation" ) );
+			Assert.assertEquals( Id.createVehicleId( person.getId().toString() ), VehicleUtils.getVehicleIds( person ).get( TransportMode.car ) );
+			for ( Leg leg : TripStructureUtils.getLegs( person.getSelectedPlan() ) ) {
+				if ( leg.getRoute() instanceof NetworkRoute ) {
+					Assert.assertEquals( 12.5, ((NetworkRoute) leg.getRoute()).getTravelCost(), 0. );
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package org.matsim.codeexamples.programming.multipleSubpopulations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.HasPlansAndId;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.StrategyConfigGroup.StrategySettings;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy.OverwriteFileSetting;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.replanning.PlanStrategy;
+import org.matsim.core.replanning.ReplanningContext;
+import org.matsim.core.replanning.strategies.DefaultPlanStrategiesModule.DefaultSelector;
+import org.matsim.core.replanning.strategies.DefaultPlanStrategiesModule.DefaultStrategy;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class SubpopulationReplanningSchedulerTest {
+
+	@Rule public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testDelegatesAreFinishedOnceAfterTheLastGroup() {
+		final SubpopulationReplanningScheduler scheduler = new SubpopulationReplanningScheduler( 2, 10. );
+		final List<CountingPlanStrategy> delegates = new ArrayList<>();
+		final List<SubpopulationReplanningScheduler.ScheduledPlanStrategy> strategies = new ArrayList<>();
+		for ( int ii = 0; ii < 3; ii++ ) {
+			CountingPlanStrategy delegate = new CountingPlanStrategy();
+			delegates.add( delegate );
+			strategies.add( new SubpopulationReplanningScheduler.ScheduledPlanStrategy( "group" + ii, delegate, scheduler ) );
+		}
+
+		for ( int iteration = 0; iteration < 2; iteration++ ) {
+			for ( SubpopulationReplanningScheduler.ScheduledPlanStrategy strategy : strategies ) {
+				strategy.init( null );
+			}
+			for ( SubpopulationReplanningScheduler.ScheduledPlanStrategy strategy : strategies ) {
+				strategy.run( PopulationUtils.getFactory().createPerson( Id.createPersonId( "person" ) ) );
+			}
+			strategies.get( 0 ).finish();
+			strategies.get( 1 ).finish();
+			for ( CountingPlanStrategy delegate : delegates ) {
+				Assert.assertEquals( "finished before the last group", iteration, delegate.finished.get() );
+			}
+			strategies.get( 2 ).finish();
+			for ( CountingPlanStrategy delegate : delegates ) {
+				Assert.assertEquals( iteration + 1, delegate.finished.get() );
+				Assert.assertEquals( iteration + 1, delegate.persons.get() );
+			}
+		}
+	}
+
+	@Test
+	public void testReplanningThroughTheScheduler() {
+		Config config = ConfigUtils.loadConfig( "scenarios/equil-extended/config-with-subpopulation.xml" );
+		config.controler().setOutputDirectory( utils.getOutputDirectory() );
+		config.controler().setOverwriteFileSetting( OverwriteFileSetting.deleteDirectoryIfExists );
+		config.controler().setLastIteration( 1 );
+		for ( String subpopulation : new String[]{ "time", "reroute" } ) {
+			String strategy = subpopulation.equals( "time" ) ? DefaultStrategy.TimeAllocationMutator : DefaultStrategy.ReRoute;
+			config.strategy().addStrategySettings( new StrategySettings().setStrategyName( strategy ).setSubpopulation( subpopulation ).setWeight( 0.2 ) );
+			config.strategy().addStrategySettings( new StrategySettings().setStrategyName( DefaultSelector.ChangeExpBeta ).setSubpopulation( subpopulation ).setWeight( 0.8 ) );
+		}
+
+		// (one thread per group, and a budget of two, so that both groups are finished concurrently)
+		config.global().setNumberOfThreads( 1 );
+		Controler controler = new Controler( config );
+		SubpopulationReplanningScheduler.install( controler, Set.of( DefaultStrategy.TimeAllocationMutator, DefaultStrategy.ReRoute ), 2 );
+		controler.run();
+
+		// the innovative strategies have added plans in both subpopulations:
+		for ( String subpopulation : new String[]{ "time", "reroute" } ) {
+			long replanned = controler.getScenario().getPopulation().getPersons().values().stream()
+					.filter( person -> subpopulation.equals( PopulationUtils.getSubpopulation( person ) ) )
+					.filter( person -> person.getPlans().size() > 1 )
+					.count();
+			Assert.assertTrue( "no person of subpopulation " + subpopulation + " was replanned", replanned > 0 );
+		}
+	}
+
+	private static final class CountingPlanStrategy implements PlanStrategy {
+		final AtomicInteger persons = new AtomicInteger();
+		final AtomicInteger finished = new AtomicInteger();
+
+		@Override public void init( ReplanningContext replanningContext ) {
+		}
+
+		@Override public void run( HasPlansAndId<Plan, Person> person ) {
+			persons.incrementAndGet();
+		}
+
+		@Override public void finish() {
+			finished.incrementAndGet();
+		}
+	}
+}
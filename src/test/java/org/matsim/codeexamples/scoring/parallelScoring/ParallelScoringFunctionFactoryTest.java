@@ -0,0 +1,77 @@
+package org.matsim.codeexamples.scoring.parallelScoring;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.scoring.ScoringFunction;
+import org.matsim.core.scoring.SumScoringFunction;
+
+public class ParallelScoringFunctionFactoryTest {
+
+	@Test
+	public void testScoresAreOnlyEvaluatedOnceAllAreFinished() {
+		ParallelScoringFunctionFactory factory = new ParallelScoringFunctionFactory( person -> {
+			SumScoringFunction sum = new SumScoringFunction();
+			sum.addScoringFunction( new SumScoringFunction.MoneyScoring(){
+				private double score = 0.;
+				@Override public void addMoney( double amount ) {
+					score += amount;
+				}
+				@Override public void finish() {
+				}
+				@Override public double getScore() {
+					return score;
+				}
+			} );
+			return sum;
+		}, 4 );
+
+		List<ScoringFunction> functions = new ArrayList<>();
+		for ( int ii = 0; ii < 1000; ii++ ) {
+			functions.add( factory.createNewScoringFunction( PopulationUtils.getFactory().createPerson( Id.createPersonId( ii ) ) ) );
+		}
+
+		// during the mobsim, the scoring infrastructure reads (partial) scores between the calls:
+		for ( int ii = 0; ii < functions.size(); ii++ ) {
+			functions.get( ii ).addMoney( ii );
+			Assert.assertEquals( 0., functions.get( ii ).getScore(), 0. );
+			functions.get( ii ).addMoney( 1. );
+		}
+
+		// after the mobsim, all are finished, and then the scores are read:
+		for ( ScoringFunction function : functions ) {
+			Assert.assertEquals( 0., function.getScore(), 0. );
+			function.finish();
+		}
+		for ( int ii = 0; ii < functions.size(); ii++ ) {
+			Assert.assertEquals( ii + 1., functions.get( ii ).getScore(), 0. );
+		}
+	}
+
+	@Test
+	public void testDelegateFactoryIsOnlyCalledFromTheFinishingThread() {
+		// (like SubpopulationScoringParameters, the delegate factory keeps a cache in a plain collection)
+		final Set<Thread> creatingThreads = new HashSet<>();
+		ParallelScoringFunctionFactory factory = new ParallelScoringFunctionFactory( person -> {
+			creatingThreads.add( Thread.currentThread() );
+			return new SumScoringFunction();
+		}, 4 );
+
+		List<ScoringFunction> functions = new ArrayList<>();
+		for ( int ii = 0; ii < 1000; ii++ ) {
+			functions.add( factory.createNewScoringFunction( PopulationUtils.getFactory().createPerson( Id.createPersonId( ii ) ) ) );
+		}
+		for ( ScoringFunction function : functions ) {
+			function.finish();
+		}
+
+		Assert.assertEquals( Set.of( Thread.currentThread() ), creatingThreads );
+	}
+}
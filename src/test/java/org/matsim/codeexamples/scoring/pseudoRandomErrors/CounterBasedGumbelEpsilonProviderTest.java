@@ -0,0 +1,164 @@
+package org.matsim.codeexamples.scoring.pseudoRandomErrors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.codeexamples.scoring.pseudoRandomErrors.scoring.CounterBasedGumbelEpsilonProvider;
+
+/**
+ * Statistical checks of the {@link CounterBasedGumbelEpsilonProvider}: the draws should be standard Gumbel distributed, not
+ * correlated across trips, alternatives or seeds, and independent of the order and the thread in which they are made.
+ */
+public class CounterBasedGumbelEpsilonProviderTest {
+	private static final String[] MODES = { "car", "pt", "walk", "bike", "ride" };
+	private static final int NUMBER_OF_PERSONS = 50000;
+	private static final int TRIPS_PER_PERSON = 4;
+
+	private static final double EULER_GAMMA = 0.5772156649;
+
+	private static List<Id<Person>> personIds;
+
+	@BeforeClass
+	public static void createPersonIds() {
+		personIds = new ArrayList<>(NUMBER_OF_PERSONS);
+		for (int i = 0; i < NUMBER_OF_PERSONS; i++) {
+			personIds.add(Id.createPersonId("epsilonTest_" + i));
+		}
+	}
+
+	private static double[] drawAll(CounterBasedGumbelEpsilonProvider provider) {
+		double[] draws = new double[NUMBER_OF_PERSONS * TRIPS_PER_PERSON * MODES.length];
+		int k = 0;
+		for (Id<Person> personId : personIds) {
+			for (int tripIndex = 0; tripIndex < TRIPS_PER_PERSON; tripIndex++) {
+				for (String mode : MODES) {
+					draws[k++] = provider.getEpsilon(personId, tripIndex, mode);
+				}
+			}
+		}
+		return draws;
+	}
+
+	@Test
+	public void testDeterminism() {
+		double[] first = drawAll(new CounterBasedGumbelEpsilonProvider(1234, 1.0));
+		double[] second = drawAll(new CounterBasedGumbelEpsilonProvider(1234, 1.0));
+		Assert.assertArrayEquals(first, second, 0.0);
+	}
+
+	@Test
+	public void testUniformityOfCdf() {
+		// mapped through the Gumbel CDF, the draws must be uniform on (0,1); chi-square test with 100 bins
+		double[] draws = drawAll(new CounterBasedGumbelEpsilonProvider(1234, 1.0));
+		int bins = 100;
+		long[] counts = new long[bins];
+
+		for (double epsilon : draws) {
+			double u = Math.exp(-Math.exp(-epsilon));
+			Assert.assertTrue(u > 0.0 && u < 1.0);
+			counts[Math.min(bins - 1, (int) (u * bins))]++;
+		}
+
+		double expected = (double) draws.length / bins;
+		double chiSquare = 0.0;
+		for (long count : counts) {
+			chiSquare += (count - expected) * (count - expected) / expected;
+		}
+
+		// 99.9% quantile of the chi-square distribution with 99 degrees of freedom
+		Assert.assertTrue("chi-square = " + chiSquare, chiSquare < 148.2);
+	}
+
+	@Test
+	public void testGumbelMoments() {
+		double scale = 2.0;
+		double[] draws = drawAll(new CounterBasedGumbelEpsilonProvider(1234, scale));
+
+		double mean = 0.0;
+		for (double epsilon : draws) {
+			mean += epsilon;
+		}
+		mean /= draws.length;
+
+		double variance = 0.0;
+		for (double epsilon : draws) {
+			variance += (epsilon - mean) * (epsilon - mean);
+		}
+		variance /= draws.length - 1;
+
+		Assert.assertEquals(scale * EULER_GAMMA, mean, 0.01);
+		Assert.assertEquals(scale * scale * Math.PI * Math.PI / 6.0, variance, 0.05);
+	}
+
+	@Test
+	public void testNoCorrelationAcrossTripsAndModes() {
+		CounterBasedGumbelEpsilonProvider provider = new CounterBasedGumbelEpsilonProvider(1234, 1.0);
+		CounterBasedGumbelEpsilonProvider otherSeed = new CounterBasedGumbelEpsilonProvider(1235, 1.0);
+
+		double[] base = new double[NUMBER_OF_PERSONS];
+		double[] nextTrip = new double[NUMBER_OF_PERSONS];
+		double[] otherMode = new double[NUMBER_OF_PERSONS];
+		double[] nextPersonSameSeed = new double[NUMBER_OF_PERSONS];
+		double[] sameKeyOtherSeed = new double[NUMBER_OF_PERSONS];
+
+		for (int i = 0; i < NUMBER_OF_PERSONS; i++) {
+			Id<Person> personId = personIds.get(i);
+			base[i] = provider.getEpsilon(personId, 0, "car");
+			nextTrip[i] = provider.getEpsilon(personId, 1, "car");
+			otherMode[i] = provider.getEpsilon(personId, 0, "pt");
+			nextPersonSameSeed[i] = provider.getEpsilon(personIds.get((i + 1) % NUMBER_OF_PERSONS), 0, "car");
+			sameKeyOtherSeed[i] = otherSeed.getEpsilon(personId, 0, "car");
+		}
+
+		// standard error of the correlation coefficient is about 1 / sqrt(50000) = 0.0045
+		Assert.assertEquals(0.0, correlation(base, nextTrip), 0.02);
+		Assert.assertEquals(0.0, correlation(base, otherMode), 0.02);
+		Assert.assertEquals(0.0, correlation(base, nextPersonSameSeed), 0.02);
+		Assert.assertEquals(0.0, correlation(base, sameKeyOtherSeed), 0.02);
+	}
+
+	@Test
+	public void testThreadSafety() {
+		// one shared instance, queried in parallel and in a different order, must give the same numbers
+		CounterBasedGumbelEpsilonProvider provider = new CounterBasedGumbelEpsilonProvider(1234, 1.0);
+		double[] sequential = drawAll(provider);
+		double[] parallel = new double[sequential.length];
+
+		int drawsPerPerson = TRIPS_PER_PERSON * MODES.length;
+		IntStream.range(0, parallel.length).parallel().map(k -> parallel.length - 1 - k).forEach(k -> {
+			int personIndex = k / drawsPerPerson;
+			int tripIndex = (k % drawsPerPerson) / MODES.length;
+			String mode = MODES[k % MODES.length];
+			parallel[k] = provider.getEpsilon(personIds.get(personIndex), tripIndex, mode);
+		});
+
+		Assert.assertArrayEquals(sequential, parallel, 0.0);
+	}
+
+	private static double correlation(double[] x, double[] y) {
+		double meanX = 0.0;
+		double meanY = 0.0;
+		for (int i = 0; i < x.length; i++) {
+			meanX += x[i];
+			meanY += y[i];
+		}
+		meanX /= x.length;
+		meanY /= y.length;
+
+		double covariance = 0.0;
+		double varianceX = 0.0;
+		double varianceY = 0.0;
+		for (int i = 0; i < x.length; i++) {
+			covariance += (x[i] - meanX) * (y[i] - meanY);
+			varianceX += (x[i] - meanX) * (x[i] - meanX);
+			varianceY += (y[i] - meanY) * (y[i] - meanY);
+		}
+		return covariance / Math.sqrt(varianceX * varianceY);
+	}
+}